@@ -3,6 +3,8 @@ import java.net.*;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.Queue;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -19,7 +21,70 @@ public class RaceConditionWebServer {
     private static final ReentrantLock pessimisticLock = new ReentrantLock();
     private static final AtomicInteger version = new AtomicInteger(0);
     private static final List<ParticipantResult> lastResults = Collections.synchronizedList(new ArrayList<>());
-    private static final List<String> logs = Collections.synchronizedList(new ArrayList<>());
+    // 참가자 스레드들이 동시에 남기므로 락 없는 큐에 쌓고, 콘솔 출력은 AsyncConsole 스레드가 맡는다
+    private static final Queue<String> logs = new ConcurrentLinkedQueue<>();
+    private static final AsyncConsole console = new AsyncConsole(8192);
+
+    /**
+     * 비동기 콘솔 출력. 호출 스레드는 메시지를 ArrayBlockingQueue 에 넣기만 하고, 백그라운드 스레드가 쌓인 만큼 꺼내 한 번에 찍는다.
+     * 큐가 가득 차면 기다리지 않고 버린 뒤 개수를 센다. 버린 개수는 시뮬레이션 결과와 종료할 때 찍는다.
+     */
+    static class AsyncConsole {
+        private final BlockingQueue<String> messages;
+        private final AtomicLong dropped = new AtomicLong();
+
+        AsyncConsole(int capacity) {
+            this.messages = new ArrayBlockingQueue<>(capacity);
+            Thread consumer = new Thread(this::consume, "async-console");
+            consumer.setDaemon(true);
+            consumer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "async-console-flush"));
+        }
+
+        void println(String message) {
+            if (!messages.offer(message)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        long dropped() {
+            return dropped.get();
+        }
+
+        private void consume() {
+            try {
+                while (true) {
+                    String first = messages.take();
+                    StringBuilder batch = new StringBuilder(first).append(System.lineSeparator());
+                    print(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void drain() {
+            StringBuilder batch = new StringBuilder();
+            long count = dropped.get();
+            if (count > 0) {
+                batch.append("⚠️ 콘솔 큐가 가득 차 로그 ").append(count).append("줄을 버렸습니다").append(System.lineSeparator());
+            }
+            print(batch);
+        }
+
+        // 이미 받은 batch 뒤에 큐에 쌓인 것을 모두 붙여 한 번에 쓴다
+        private synchronized void print(StringBuilder batch) {
+            List<String> pending = new ArrayList<>();
+            messages.drainTo(pending);
+            for (String message : pending) {
+                batch.append(message).append(System.lineSeparator());
+            }
+            if (batch.length() > 0) {
+                System.out.print(batch);
+                System.out.flush();
+            }
+        }
+    }
     
     // 참가자 결과 클래스
     static class ParticipantResult {
@@ -48,11 +113,44 @@ public class RaceConditionWebServer {
         System.out.println("   - POST /api/pessimistic : 비관적 락 실행");
         System.out.println("   - POST /api/optimistic  : 낙관적 락 실행");
         System.out.println();
+
+        Executor requestExecutor = createRequestExecutor(args);
         
         while (true) {
             Socket clientSocket = serverSocket.accept();
-            new Thread(() -> handleRequest(clientSocket)).start();
+            requestExecutor.execute(() -> handleRequest(clientSocket));
+        }
+    }
+
+    /**
+     * 요청 처리 실행기 선택
+     * --executor=virtual (또는 -Drace.executor=virtual) 이면 JDK 21 가상 스레드로 요청을 처리한다.
+     * 기본값(platform)은 기존처럼 요청마다 플랫폼 스레드를 새로 만든다.
+     */
+    private static Executor createRequestExecutor(String[] args) {
+        String executorType = System.getProperty("race.executor", "platform");
+        for (String arg : args) {
+            if (arg.startsWith("--executor=")) {
+                executorType = arg.substring("--executor=".length());
+            }
+        }
+
+        if ("virtual".equalsIgnoreCase(executorType)) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                System.out.println("🧵 요청 처리: 가상 스레드 (virtual thread per request)");
+                return executor;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(
+                        "가상 스레드는 JDK 21 이상이 필요합니다 (현재: " + System.getProperty("java.version") + ")");
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("가상 스레드 실행기를 만들 수 없습니다", e);
+            }
         }
+
+        System.out.println("🧵 요청 처리: 플랫폼 스레드 (thread per request)");
+        return task -> new Thread(task).start();
     }
     
     private static void handleRequest(Socket clientSocket) {
@@ -61,7 +159,7 @@ public class RaceConditionWebServer {
             PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
             
             String requestLine = in.readLine();
-            System.out.println("📡 " + requestLine);
+            console.println("📡 " + requestLine);
             
             // HTTP 헤더 읽기
             String line;
@@ -138,7 +236,7 @@ public class RaceConditionWebServer {
                 return response;
             } else if ("/api/logs".equals(path)) {
                 String response = getLogsJson();
-                System.out.println("📋 [API] 로그 조회 요청 - " + logs.size() + "개 로그 반환");
+                console.println("📋 [API] 로그 조회 요청 - " + logs.size() + "개 로그 반환");
                 return response;
             } else if ("/api/logs/clear".equals(path)) {
                 clearLogs();
@@ -201,12 +299,12 @@ public class RaceConditionWebServer {
 
     private static void addLog(String message) {
         logs.add(message);
-        System.out.println(message);
+        console.println(message);
     }
 
     private static void clearLogs() {
         logs.clear();
-        System.out.println("🧹 로그가 클리어되었습니다");
+        console.println("🧹 로그가 클리어되었습니다");
     }
 
     private static int countWinners(List<ParticipantResult> results) {
@@ -287,6 +385,10 @@ public class RaceConditionWebServer {
 
         addLog(String.format("📊 [%s] 시뮬레이션 완료 - 결과: %d명 참여, %d명 승리, 쿠폰 %d개 남음",
                testName, lastResults.size(), countWinners(lastResults), atomicCoupons.get()));
+        long droppedLogs = console.dropped();
+        if (droppedLogs > 0) {
+            addLog(String.format("⚠️ 콘솔 큐가 가득 차 지금까지 로그 %d줄을 버렸습니다 (웹 로그에는 남아 있음)", droppedLogs));
+        }
 
         return new ArrayList<>(lastResults);
     }
@@ -585,9 +687,11 @@ public class RaceConditionWebServer {
         json.append("{");
         json.append("\"logs\": [");
 
-        for (int i = 0; i < logs.size(); i++) {
-            if (i > 0) json.append(",");
-            json.append("\"").append(logs.get(i).replace("\"", "\\\"")).append("\"");
+        boolean first = true;
+        for (String log : logs) {
+            if (!first) json.append(",");
+            json.append("\"").append(log.replace("\"", "\\\"")).append("\"");
+            first = false;
         }
         json.append("]}");
 
@@ -1,6 +1,7 @@
 package com.example.racecondition.controller;
 
 import com.example.racecondition.model.Coupon;
+import com.example.racecondition.model.CouponIssuance;
 import com.example.racecondition.model.ParticipantResult;
 import com.example.racecondition.service.CouponService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,12 +11,16 @@ import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/coupon")
 @CrossOrigin(origins = "*") // CORS 허용
 public class CouponController {
     
+    // 참가자마다 스레드 하나를 띄우므로 상한을 둔다
+    private static final int MAX_PARTICIPANTS = 1000;
+    
     @Autowired
     private CouponService couponService;
     
@@ -28,6 +33,14 @@ public class CouponController {
         return ResponseEntity.ok(coupon);
     }
     
+    /**
+     * 참가자별 쿠폰 발급 기록 (발급 장부)
+     */
+    @GetMapping("/issuances")
+    public ResponseEntity<List<CouponIssuance>> getIssuances(@RequestParam("participantId") int participantId) {
+        return ResponseEntity.ok(couponService.getIssuances(participantId));
+    }
+    
     /**
      * 쿠폰 초기화
      */
@@ -39,6 +52,54 @@ public class CouponController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 등록된 쿠폰 발급 방식 목록
+     */
+    @GetMapping("/strategies")
+    public ResponseEntity<List<String>> getStrategies() {
+        return ResponseEntity.ok(couponService.getStrategyNames());
+    }
+    
+    /**
+     * 이름으로 고른 발급 방식으로 시뮬레이션 (race, pessimistic, optimistic, conditional ...)
+     */
+    @PostMapping("/issue/{strategy}")
+    public ResponseEntity<Map<String, Object>> runStrategy(
+            @PathVariable("strategy") String strategy,
+            @RequestParam(value = "participants", defaultValue = "5") int participants,
+            @RequestParam(value = "stock", defaultValue = "2") int stock) {
+        if (participants < 1 || participants > MAX_PARTICIPANTS || stock < 0) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "participants 는 1~" + MAX_PARTICIPANTS + ", stock 은 0 이상이어야 합니다");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        try {
+            long start = System.nanoTime();
+            List<ParticipantResult> results = couponService.runSimulation(strategy, participants, stock);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("type", strategy);
+            response.put("results", results);
+            response.put("finalCouponCount", couponService.getRemainingStock(strategy));
+            response.put("winners", results.stream().filter(ParticipantResult::isSuccess).map(ParticipantResult::getParticipantId).collect(java.util.stream.Collectors.toList()));
+            response.put("elapsedMillis", elapsedMillis);
+            response.put("message", strategy + " 시뮬레이션 완료");
+            
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            errorResponse.put("strategies", couponService.getStrategyNames());
+            return ResponseEntity.badRequest().body(errorResponse);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "시뮬레이션이 중단되었습니다");
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+    
     /**
      * Race Condition 시뮬레이션 (락 없음)
      */
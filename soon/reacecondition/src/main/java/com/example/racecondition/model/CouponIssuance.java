@@ -0,0 +1,59 @@
+package com.example.racecondition.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 발급 장부 한 줄 - 누가 언제 어떤 방식으로 쿠폰을 받았는지.
+ * coupons 의 availableCount 는 남은 수만 알려 주므로, 당첨자와 재시작 뒤 복구는 이 장부로 확인한다.
+ *
+ * 당첨 경로마다 한 줄씩 쌓이므로 싸게 써야 한다. IDENTITY 는 INSERT 를 실행해야 id 를 알 수 있어 Hibernate 가
+ * INSERT 를 하나씩 바로 보내지만, 시퀀스는 allocationSize(50) 만큼 한 번에 받아 두고(pooled 최적화) 메모리에서 나눠 주므로
+ * 여러 줄을 모았다가 hibernate.jdbc.batch_size 단위의 JDBC 배치로 보낼 수 있다.
+ * 참가자별 조회는 participant_id 인덱스로 한다.
+ */
+@Entity
+@Table(name = "coupon_issuances",
+       indexes = @Index(name = "idx_coupon_issuances_participant", columnList = "participant_id"))
+public class CouponIssuance {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_issuance_seq")
+    @SequenceGenerator(name = "coupon_issuance_seq", sequenceName = "coupon_issuances_seq", allocationSize = 50)
+    private Long id;
+    
+    @Column(name = "coupon_id", nullable = false)
+    private Long couponId;
+    
+    @Column(name = "participant_id", nullable = false)
+    private Integer participantId;
+    
+    @Column(name = "issued_at", nullable = false)
+    private LocalDateTime issuedAt;
+    
+    @Column(nullable = false, length = 32)
+    private String strategy;
+    
+    public CouponIssuance() {}
+    
+    public CouponIssuance(Long couponId, Integer participantId, LocalDateTime issuedAt, String strategy) {
+        this.couponId = couponId;
+        this.participantId = participantId;
+        this.issuedAt = issuedAt;
+        this.strategy = strategy;
+    }
+    
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getCouponId() { return couponId; }
+    public void setCouponId(Long couponId) { this.couponId = couponId; }
+    
+    public Integer getParticipantId() { return participantId; }
+    public void setParticipantId(Integer participantId) { this.participantId = participantId; }
+    
+    public LocalDateTime getIssuedAt() { return issuedAt; }
+    public void setIssuedAt(LocalDateTime issuedAt) { this.issuedAt = issuedAt; }
+    
+    public String getStrategy() { return strategy; }
+    public void setStrategy(String strategy) { this.strategy = strategy; }
+}
@@ -0,0 +1,45 @@
+package com.example.racecondition.model;
+
+import javax.persistence.*;
+
+/**
+ * 쿠폰 재고를 나눠 담은 버킷 하나 (sharded 발급 방식).
+ * 재고가 coupons 의 한 행에 몰리면 모든 요청이 그 행의 락을 기다리므로, N 개 행에 나눠 담아 서로 다른 행을 차감하게 한다.
+ */
+@Entity
+@Table(name = "coupon_stock_buckets",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"coupon_id", "bucket_index"}))
+public class CouponStockBucket {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "coupon_id", nullable = false)
+    private Long couponId;
+    
+    @Column(name = "bucket_index", nullable = false)
+    private Integer bucketIndex;
+    
+    @Column(name = "available_count", nullable = false)
+    private Integer availableCount;
+    
+    public CouponStockBucket() {}
+    
+    public CouponStockBucket(Long couponId, Integer bucketIndex, Integer availableCount) {
+        this.couponId = couponId;
+        this.bucketIndex = bucketIndex;
+        this.availableCount = availableCount;
+    }
+    
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getCouponId() { return couponId; }
+    public void setCouponId(Long couponId) { this.couponId = couponId; }
+    
+    public Integer getBucketIndex() { return bucketIndex; }
+    public void setBucketIndex(Integer bucketIndex) { this.bucketIndex = bucketIndex; }
+    
+    public Integer getAvailableCount() { return availableCount; }
+    public void setAvailableCount(Integer availableCount) { this.availableCount = availableCount; }
+}
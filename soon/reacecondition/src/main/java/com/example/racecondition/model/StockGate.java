@@ -0,0 +1,47 @@
+package com.example.racecondition.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 메모리 재고 게이트(memory 발급 방식)가 따로 쓰는 재고 행. 쿠폰마다 하나이고 id 는 쿠폰 id 다.
+ * 다른 방식이 coupons 행을 초기화해도 게이트의 기록은 건드리지 않도록 행을 나눈다.
+ * initialCount 와 preparedAt 은 재시작할 때 발급 장부로 남은 수량을 다시 계산하는 기준이다.
+ */
+@Entity
+@Table(name = "coupon_stock_gates")
+public class StockGate {
+    @Id
+    @Column(name = "coupon_id")
+    private Long couponId;
+    
+    @Column(name = "initial_count", nullable = false)
+    private Integer initialCount;
+    
+    @Column(name = "available_count", nullable = false)
+    private Integer availableCount;
+    
+    @Column(name = "prepared_at", nullable = false)
+    private LocalDateTime preparedAt;
+    
+    public StockGate() {}
+    
+    public StockGate(Long couponId, Integer initialCount, LocalDateTime preparedAt) {
+        this.couponId = couponId;
+        this.initialCount = initialCount;
+        this.availableCount = initialCount;
+        this.preparedAt = preparedAt;
+    }
+    
+    public Long getCouponId() { return couponId; }
+    public void setCouponId(Long couponId) { this.couponId = couponId; }
+    
+    public Integer getInitialCount() { return initialCount; }
+    public void setInitialCount(Integer initialCount) { this.initialCount = initialCount; }
+    
+    public Integer getAvailableCount() { return availableCount; }
+    public void setAvailableCount(Integer availableCount) { this.availableCount = availableCount; }
+    
+    public LocalDateTime getPreparedAt() { return preparedAt; }
+    public void setPreparedAt(LocalDateTime preparedAt) { this.preparedAt = preparedAt; }
+}
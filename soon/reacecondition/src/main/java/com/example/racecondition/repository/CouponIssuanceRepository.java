@@ -0,0 +1,19 @@
+package com.example.racecondition.repository;
+
+import com.example.racecondition.model.CouponIssuance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CouponIssuanceRepository extends JpaRepository<CouponIssuance, Long> {
+    
+    long countByCouponId(Long couponId);
+    
+    // 한 실행(since 이후)에서 strategy 방식으로 나간 쿠폰 수
+    long countByCouponIdAndStrategyAndIssuedAtGreaterThanEqual(Long couponId, String strategy, LocalDateTime since);
+    
+    // idx_coupon_issuances_participant 를 탄다
+    List<CouponIssuance> findByParticipantIdOrderByIssuedAtDesc(Integer participantId);
+}
@@ -3,6 +3,7 @@ package com.example.racecondition.repository;
 import com.example.racecondition.model.Coupon;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import javax.persistence.LockModeType;
@@ -19,4 +20,14 @@ public interface CouponRepository extends JpaRepository<Coupon, Long> {
     // 낙관적 락용 - @Version이 자동으로 처리됨
     @Override
     Optional<Coupon> findById(Long id);
+    
+    // 조건부 차감 - 남아 있을 때만 1 줄이고 바뀐 행 수(0/1)를 돌려준다. 엔티티를 읽지 않고 @Version 도 건드리지 않는다.
+    @Modifying
+    @Query("UPDATE Coupon c SET c.availableCount = c.availableCount - 1 WHERE c.id = :id AND c.availableCount > 0")
+    int decrementIfAvailable(Long id);
+    
+    // 모아 둔 당첨자 수만큼 한 번에 차감 - count 개 이상 남아 있을 때만 줄인다
+    @Modifying
+    @Query("UPDATE Coupon c SET c.availableCount = c.availableCount - :count WHERE c.id = :id AND c.availableCount >= :count")
+    int decrementBy(Long id, Integer count);
 }
\ No newline at end of file
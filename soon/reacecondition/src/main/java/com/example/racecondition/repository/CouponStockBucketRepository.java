@@ -0,0 +1,38 @@
+package com.example.racecondition.repository;
+
+import com.example.racecondition.model.CouponStockBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface CouponStockBucketRepository extends JpaRepository<CouponStockBucket, Long> {
+    
+    List<CouponStockBucket> findByCouponIdOrderByBucketIndex(Long couponId);
+    
+    @Query("SELECT COALESCE(SUM(b.availableCount), 0) FROM CouponStockBucket b WHERE b.couponId = :couponId")
+    long sumAvailable(Long couponId);
+    
+    @Modifying
+    @Query("DELETE FROM CouponStockBucket b WHERE b.couponId = :couponId")
+    int deleteByCouponId(Long couponId);
+    
+    // 버킷 하나에서 조건부 차감 - 남아 있을 때만 1 줄이고 바뀐 행 수(0/1)를 돌려준다
+    @Modifying
+    @Query("UPDATE CouponStockBucket b SET b.availableCount = b.availableCount - 1 "
+         + "WHERE b.couponId = :couponId AND b.bucketIndex = :bucketIndex AND b.availableCount > 0")
+    int decrementIfAvailable(Long couponId, Integer bucketIndex);
+    
+    // 재분배용 - count 개 이상 남아 있을 때만 count 개를 빼낸다
+    @Modifying
+    @Query("UPDATE CouponStockBucket b SET b.availableCount = b.availableCount - :count "
+         + "WHERE b.couponId = :couponId AND b.bucketIndex = :bucketIndex AND b.availableCount >= :count")
+    int takeIfAvailable(Long couponId, Integer bucketIndex, Integer count);
+    
+    @Modifying
+    @Query("UPDATE CouponStockBucket b SET b.availableCount = b.availableCount + :count "
+         + "WHERE b.couponId = :couponId AND b.bucketIndex = :bucketIndex")
+    int add(Long couponId, Integer bucketIndex, Integer count);
+}
@@ -0,0 +1,16 @@
+package com.example.racecondition.repository;
+
+import com.example.racecondition.model.StockGate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StockGateRepository extends JpaRepository<StockGate, Long> {
+    
+    // 모아 둔 당첨자 수만큼 한 번에 차감 - count 개 이상 남아 있을 때만 줄인다
+    @Modifying
+    @Query("UPDATE StockGate g SET g.availableCount = g.availableCount - :count WHERE g.couponId = :couponId AND g.availableCount >= :count")
+    int decrementBy(Long couponId, Integer count);
+}
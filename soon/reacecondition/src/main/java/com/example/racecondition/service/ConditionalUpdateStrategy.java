@@ -0,0 +1,50 @@
+package com.example.racecondition.service;
+
+import com.example.racecondition.model.CouponIssuance;
+import com.example.racecondition.model.ParticipantResult;
+import com.example.racecondition.repository.CouponIssuanceRepository;
+import com.example.racecondition.repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * 4. 조건부 UPDATE - 문장 하나로 확인과 차감을 같이 한다
+ *
+ * UPDATE coupons SET available_count = available_count - 1 WHERE id = ? AND available_count > 0
+ * 을 실행하고 바뀐 행 수(0 또는 1)로 성공을 판단한다. 엔티티를 읽지 않으니 버전 충돌도 재시도도 없고,
+ * 애플리케이션 락 없이 DB 가 행 하나를 잠그는 짧은 순간만 줄을 선다. 남은 수량이 0 이면 WHERE 에 걸려 절대 음수가 되지 않는다.
+ * 당첨되면 같은 트랜잭션에서 발급 장부에 한 줄 적는다.
+ */
+@Component
+public class ConditionalUpdateStrategy implements CouponIssuanceStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(ConditionalUpdateStrategy.class);
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private CouponIssuanceRepository issuanceRepository;
+
+    @Override
+    public String getName() {
+        return "conditional";
+    }
+
+    @Override
+    @Transactional
+    public ParticipantResult issue(int participantId) {
+        if (couponRepository.decrementIfAvailable(COUPON_ID) == 1) {
+            issuanceRepository.save(new CouponIssuance(COUPON_ID, participantId, LocalDateTime.now(), getName()));
+            log.info("🎯 [Conditional] 참가자 {} - 쿠폰 획득!", participantId);
+            return new ParticipantResult(participantId, true, "쿠폰 획득 성공!");
+        }
+        log.info("❌ [Conditional] 참가자 {} - 쿠폰 소진", participantId);
+        return new ParticipantResult(participantId, false, "쿠폰 소진");
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.racecondition.service;
+
+import com.example.racecondition.model.ParticipantResult;
+
+/**
+ * 쿠폰 한 장을 발급하는 방식.
+ *
+ * 구현체는 스프링 빈으로 등록하면 CouponService 가 getName() 으로 찾아 쓰고,
+ * 컨트롤러는 POST /api/coupon/issue/{name} 으로 고른다. issue 는 참가자 스레드 여러 개가 동시에 부른다.
+ */
+public interface CouponIssuanceStrategy {
+
+    /** 데모에 쓰는 쿠폰 id */
+    long COUPON_ID = 1L;
+
+    /**
+     * URL 과 응답의 type 에 쓰는 이름 (race, pessimistic, ...)
+     */
+    String getName();
+
+    /**
+     * 참가자 한 명이 쿠폰 한 장을 요청한다. 실패도 예외 대신 ParticipantResult 로 돌려준다.
+     */
+    ParticipantResult issue(int participantId);
+    
+    /**
+     * 시뮬레이션 직전, 쿠폰 행을 초기화하기 전에 모든 방식에 대해 불린다. 지난 실행에서 아직 DB 에 쓰지 않은 발급을
+     * 여기서 마저 끝내야 초기화한 재고가 지난 실행의 차감에 깎이지 않는다.
+     */
+    default void settle() {
+    }
+    
+    /**
+     * 시뮬레이션 직전, 쿠폰 행을 stock 개로 초기화한 뒤 불린다. 재고를 쿠폰 행 밖에 따로 두는 방식이 여기서 맞춘다.
+     */
+    default void prepare(int stock) {
+    }
+    
+    /**
+     * 이 방식이 따로 들고 있는 남은 재고. 쿠폰 행의 availableCount 를 그대로 쓰면 null.
+     */
+    default Integer remainingStock() {
+        return null;
+    }
+}
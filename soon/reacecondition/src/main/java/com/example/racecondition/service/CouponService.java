@@ -1,301 +1,189 @@
 package com.example.racecondition.service;
 
 import com.example.racecondition.model.Coupon;
+import com.example.racecondition.model.CouponIssuance;
 import com.example.racecondition.model.ParticipantResult;
+import com.example.racecondition.repository.CouponIssuanceRepository;
 import com.example.racecondition.repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class CouponService {
     
+    private static final Logger log = LoggerFactory.getLogger(CouponService.class);
+    
+    public static final int DEFAULT_PARTICIPANTS = 5;
+    public static final int DEFAULT_STOCK = 2;
+    
     @Autowired
     private CouponRepository couponRepository;
     
-    private final ReentrantLock pessimisticLock = new ReentrantLock();
+    @Autowired
+    private CouponIssuanceRepository issuanceRepository;
+    
+    @Autowired
+    private List<CouponIssuanceStrategy> strategyBeans;
+    
+    // 한 번의 시뮬레이션이 띄우는 참가자 스레드 수 상한. 참가자가 더 많으면 나머지는 스레드가 빌 때까지 기다린다.
+    @Value("${racecondition.simulation.max-threads:64}")
+    private int maxThreads;
+    
+    // 이름 → 발급 방식. 등록 순서를 유지해 목록 조회에 그대로 쓴다.
+    private final Map<String, CouponIssuanceStrategy> strategies = new LinkedHashMap<>();
+    
+    @PostConstruct
+    void registerStrategies() {
+        if (maxThreads < 1) {
+            throw new IllegalStateException("racecondition.simulation.max-threads 는 1 이상이어야 합니다: " + maxThreads);
+        }
+        for (CouponIssuanceStrategy strategy : strategyBeans) {
+            if (strategies.put(strategy.getName(), strategy) != null) {
+                throw new IllegalStateException("쿠폰 발급 방식 이름이 겹칩니다: " + strategy.getName());
+            }
+        }
+    }
     
     /**
      * 쿠폰 초기화 (2개로 설정)
      */
     @Transactional
     public void initializeCoupons() {
-        couponRepository.deleteAll();
-        couponRepository.save(new Coupon(2)); // ID=1, 쿠폰 2개
+        initializeCoupons(DEFAULT_STOCK);
     }
     
     /**
-     * 1. Race Condition (락 없음) - 진짜 멀티스레드 문제 발생!
+     * 쿠폰을 stock 개로 초기화한다. 지우고 새로 넣으면 IDENTITY 가 다음 id 를 주므로 같은 행을 다시 채운다.
      */
-    public List<ParticipantResult> runRaceCondition() throws InterruptedException {
-        initializeCoupons();
-        
-        List<ParticipantResult> results = new ArrayList<>();
-        ExecutorService executor = Executors.newFixedThreadPool(5);
-        CountDownLatch startLatch = new CountDownLatch(1); // 동시 시작용
-        CountDownLatch doneLatch = new CountDownLatch(5);  // 완료 대기용
-        
-        // 5명의 참가자가 동시에 쿠폰 요청
-        for (int i = 1; i <= 5; i++) {
-            final int participantId = i;
-            executor.submit(() -> {
-                try {
-                    startLatch.await(); // 모든 스레드가 동시에 시작하도록 대기
-                    ParticipantResult result = tryGetCouponRace(participantId);
-                    synchronized (results) {
-                        results.add(result);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                } finally {
-                    doneLatch.countDown();
-                }
-            });
+    @Transactional
+    public void initializeCoupons(int stock) {
+        Coupon coupon = couponRepository.findById(CouponIssuanceStrategy.COUPON_ID).orElse(null);
+        if (coupon == null) {
+            couponRepository.deleteAll();
+            coupon = new Coupon(stock); // ID=1
         }
-        
-        startLatch.countDown(); // 모든 스레드 동시 시작!
-        doneLatch.await();      // 모든 스레드 완료 대기
-        executor.shutdown();
-        
-        return results;
+        coupon.setAvailableCount(stock);
+        couponRepository.save(coupon);
     }
     
-    @Transactional
-    public ParticipantResult tryGetCouponRace(int participantId) {
-        try {
-            System.out.printf("🔍 [Race] 참가자 %d (스레드: %s) - 쿠폰 확인 시작%n", 
-                            participantId, Thread.currentThread().getName());
-            
-            Coupon coupon = couponRepository.findById(1L).orElse(null);
-            if (coupon == null) {
-                return new ParticipantResult(participantId, false, "쿠폰을 찾을 수 없음");
-            }
-            
-            int currentCount = coupon.getAvailableCount();
-            System.out.printf("📖 [Race] 참가자 %d - 현재 쿠폰 %d개 확인, 처리 시작...%n", 
-                            participantId, currentCount);
-            
-            // 💥 Race Condition 핵심: 모든 스레드가 동시에 이 조건을 통과할 수 있음!
-            if (currentCount > 0) {
-                // 실제 처리 시간 시뮬레이션 (100-300ms)
-                Thread.sleep(100 + (int)(Math.random() * 200));
-                
-                // 💀 여기서 문제! 다른 스레드가 이미 차감했을 수도 있지만 검사하지 않음
-                coupon.setAvailableCount(currentCount - 1);
-                couponRepository.save(coupon);
-                
-                int newCount = coupon.getAvailableCount();
-                System.out.printf("🎯 [Race] 참가자 %d - 쿠폰 획득! (남은 쿠폰: %d)%n", 
-                                participantId, newCount);
-                
-                if (newCount < 0) {
-                    System.out.printf("💀 [Race] 참가자 %d - 심각한 문제! 쿠폰이 음수: %d%n", 
-                                    participantId, newCount);
-                }
-                
-                return new ParticipantResult(participantId, true, 
-                    String.format("쿠폰 획득 성공! (남은 쿠폰: %d)", newCount));
-            }
-            
-        } catch (Exception e) {
-            System.out.printf("❌ [Race] 참가자 %d - 오류: %s%n", participantId, e.getMessage());
-        }
-        
-        return new ParticipantResult(participantId, false, "쿠폰 획득 실패");
+    /**
+     * 등록된 발급 방식 이름들
+     */
+    public List<String> getStrategyNames() {
+        return new ArrayList<>(strategies.keySet());
     }
     
     /**
-     * 2. 비관적 락 (Pessimistic Lock) - 순차적 안전한 접근
+     * 1. Race Condition (락 없음) - 진짜 멀티스레드 문제 발생!
      */
-    public List<ParticipantResult> runPessimisticLock() throws InterruptedException {
-        initializeCoupons();
-        
-        List<ParticipantResult> results = new ArrayList<>();
-        ExecutorService executor = Executors.newFixedThreadPool(5);
-        CountDownLatch startLatch = new CountDownLatch(1);
-        CountDownLatch doneLatch = new CountDownLatch(5);
-        
-        for (int i = 1; i <= 5; i++) {
-            final int participantId = i;
-            executor.submit(() -> {
-                try {
-                    startLatch.await();
-                    ParticipantResult result = tryGetCouponPessimistic(participantId);
-                    synchronized (results) {
-                        results.add(result);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                } finally {
-                    doneLatch.countDown();
-                }
-            });
-        }
-        
-        startLatch.countDown();
-        doneLatch.await();
-        executor.shutdown();
-        
-        return results;
+    public List<ParticipantResult> runRaceCondition() throws InterruptedException {
+        return runSimulation("race", DEFAULT_PARTICIPANTS, DEFAULT_STOCK);
     }
     
-    @Transactional
-    public ParticipantResult tryGetCouponPessimistic(int participantId) {
-        System.out.printf("🔒 [Pessimistic] 참가자 %d - 락 획득 시도...%n", participantId);
-        
-        // 🔒 애플리케이션 레벨 락 + DB 레벨 락 조합
-        pessimisticLock.lock();
-        try {
-            System.out.printf("🔓 [Pessimistic] 참가자 %d - 락 획득 성공! (스레드: %s)%n", 
-                            participantId, Thread.currentThread().getName());
-            
-            // DB 레벨 비관적 락
-            Coupon coupon = couponRepository.findByIdWithPessimisticLock(1L).orElse(null);
-            if (coupon == null) {
-                return new ParticipantResult(participantId, false, "쿠폰을 찾을 수 없음");
-            }
-            
-            if (coupon.getAvailableCount() > 0) {
-                // Critical Section에서 안전한 작업
-                Thread.sleep(200); // 처리 시간 시뮬레이션
-                
-                coupon.setAvailableCount(coupon.getAvailableCount() - 1);
-                couponRepository.save(coupon);
-                
-                System.out.printf("🎯 [Pessimistic] 참가자 %d - 쿠폰 획득! (남은 쿠폰: %d)%n", 
-                                participantId, coupon.getAvailableCount());
-                
-                return new ParticipantResult(participantId, true, 
-                    String.format("쿠폰 획득 성공! (남은 쿠폰: %d)", coupon.getAvailableCount()));
-            } else {
-                System.out.printf("❌ [Pessimistic] 참가자 %d - 쿠폰 없음%n", participantId);
-                return new ParticipantResult(participantId, false, "쿠폰 소진");
-            }
-            
-        } catch (Exception e) {
-            System.out.printf("❌ [Pessimistic] 참가자 %d - 오류: %s%n", participantId, e.getMessage());
-            return new ParticipantResult(participantId, false, "처리 중 오류 발생");
-        } finally {
-            pessimisticLock.unlock();
-            System.out.printf("🔓 [Pessimistic] 참가자 %d - 락 해제%n", participantId);
-        }
+    /**
+     * 2. 비관적 락 (Pessimistic Lock) - 순차적 안전한 접근
+     */
+    public List<ParticipantResult> runPessimisticLock() throws InterruptedException {
+        return runSimulation("pessimistic", DEFAULT_PARTICIPANTS, DEFAULT_STOCK);
     }
     
     /**
      * 3. 낙관적 락 (Optimistic Lock) - 버전 기반 충돌 감지 및 재시도
      */
     public List<ParticipantResult> runOptimisticLock() throws InterruptedException {
-        initializeCoupons();
+        return runSimulation("optimistic", DEFAULT_PARTICIPANTS, DEFAULT_STOCK);
+    }
+    
+    /**
+     * 쿠폰을 stock 개로 초기화하고 참가자 participants 명이 strategyName 방식으로 동시에 요청한다.
+     * 모르는 이름이면 IllegalArgumentException.
+     * 발급 중 예외가 나거나 중단된 참가자도 실패 결과로 남기므로 결과는 항상 participants 개다.
+     * 스레드는 최대 maxThreads 개만 띄우고, 먼저 뜬 스레드들이 시작 신호에 맞춰 함께 출발한다.
+     */
+    public List<ParticipantResult> runSimulation(String strategyName, int participants, int stock)
+            throws InterruptedException {
+        CouponIssuanceStrategy strategy = strategies.get(strategyName);
+        if (strategy == null) {
+            throw new IllegalArgumentException("알 수 없는 발급 방식: " + strategyName);
+        }
+        for (CouponIssuanceStrategy each : strategies.values()) {
+            each.settle();
+        }
+        initializeCoupons(stock);
+        strategy.prepare(stock);
         
         List<ParticipantResult> results = new ArrayList<>();
-        ExecutorService executor = Executors.newFixedThreadPool(5);
-        CountDownLatch startLatch = new CountDownLatch(1);
-        CountDownLatch doneLatch = new CountDownLatch(5);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(participants, maxThreads));
+        CountDownLatch startLatch = new CountDownLatch(1); // 동시 시작용
+        CountDownLatch doneLatch = new CountDownLatch(participants);  // 완료 대기용
         
-        for (int i = 1; i <= 5; i++) {
+        // 참가자들이 동시에 쿠폰 요청
+        for (int i = 1; i <= participants; i++) {
             final int participantId = i;
-            executor.submit(() -> {
+            executor.execute(() -> {
+                ParticipantResult result = null;
                 try {
-                    startLatch.await();
-                    ParticipantResult result = tryGetCouponOptimistic(participantId);
-                    synchronized (results) {
-                        results.add(result);
-                    }
+                    startLatch.await(); // 모든 스레드가 동시에 시작하도록 대기
+                    result = strategy.issue(participantId);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
+                    result = new ParticipantResult(participantId, false, "대기 중 중단됨");
+                } catch (RuntimeException e) {
+                    log.warn("⚠️ [{}] 참가자 {} - 발급 오류: {}", strategyName, participantId, e.toString());
+                    result = new ParticipantResult(participantId, false, "발급 오류: " + e.getMessage());
                 } finally {
+                    // Error 로 끝나도 기다리는 쪽이 멈추지 않게 센다
+                    if (result != null) {
+                        synchronized (results) {
+                            results.add(result);
+                        }
+                    }
                     doneLatch.countDown();
                 }
             });
         }
         
-        startLatch.countDown();
-        doneLatch.await();
-        executor.shutdown();
+        startLatch.countDown(); // 모든 스레드 동시 시작!
+        try {
+            doneLatch.await();  // 모든 스레드 완료 대기
+        } finally {
+            executor.shutdown();
+        }
         
         return results;
     }
     
-    public ParticipantResult tryGetCouponOptimistic(int participantId) {
-        int maxRetries = 3;
-        
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            try {
-                System.out.printf("🔄 [Optimistic] 참가자 %d - 시도 %d/%d (스레드: %s)%n", 
-                                participantId, attempt, maxRetries, Thread.currentThread().getName());
-                
-                return attemptOptimisticCoupon(participantId, attempt);
-                
-            } catch (ObjectOptimisticLockingFailureException e) {
-                System.out.printf("⚠️ [Optimistic] 참가자 %d - 버전 충돌 감지! 재시도 %d/%d%n", 
-                                participantId, attempt, maxRetries);
-                
-                if (attempt < maxRetries) {
-                    try {
-                        // 지수 백오프
-                        Thread.sleep(100 * attempt);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                } else {
-                    System.out.printf("❌ [Optimistic] 참가자 %d - 최대 재시도 횟수 초과%n", participantId);
-                    return new ParticipantResult(participantId, false, 
-                        String.format("최대 재시도 횟수 초과 (%d번 시도)", maxRetries));
-                }
-            } catch (Exception e) {
-                System.out.printf("❌ [Optimistic] 참가자 %d - 오류: %s%n", participantId, e.getMessage());
-                return new ParticipantResult(participantId, false, "처리 중 오류 발생");
-            }
-        }
-        
-        return new ParticipantResult(participantId, false, "재시도 실패");
+    /**
+     * strategyName 방식 기준으로 남은 재고. 따로 재고를 두지 않는 방식이면 쿠폰 행의 값이다.
+     */
+    public int getRemainingStock(String strategyName) {
+        CouponIssuanceStrategy strategy = strategies.get(strategyName);
+        Integer remaining = strategy != null ? strategy.remainingStock() : null;
+        return remaining != null ? remaining : getCouponStatus().getAvailableCount();
     }
     
-    @Transactional
-    public ParticipantResult attemptOptimisticCoupon(int participantId, int attempt) {
-        Coupon coupon = couponRepository.findById(1L).orElse(null);
-        if (coupon == null) {
-            return new ParticipantResult(participantId, false, "쿠폰을 찾을 수 없음");
-        }
-        
-        System.out.printf("📊 [Optimistic] 참가자 %d - 현재 버전: %d, 쿠폰: %d개%n", 
-                        participantId, coupon.getVersion(), coupon.getAvailableCount());
-        
-        if (coupon.getAvailableCount() > 0) {
-            try {
-                // 처리 시간 시뮬레이션
-                Thread.sleep(100);
-                
-                coupon.setAvailableCount(coupon.getAvailableCount() - 1);
-                couponRepository.save(coupon); // @Version이 자동으로 충돌 검사
-                
-                System.out.printf("🎯 [Optimistic] 참가자 %d - 쿠폰 획득! (버전: %d, 남은 쿠폰: %d)%n", 
-                                participantId, coupon.getVersion(), coupon.getAvailableCount());
-                
-                return new ParticipantResult(participantId, true, 
-                    String.format("쿠폰 획득 성공! (시도: %d회, 남은 쿠폰: %d)", attempt, coupon.getAvailableCount()));
-                
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return new ParticipantResult(participantId, false, "처리 중단됨");
-            }
-        } else {
-            System.out.printf("❌ [Optimistic] 참가자 %d - 쿠폰 소진%n", participantId);
-            return new ParticipantResult(participantId, false, "쿠폰 소진");
-        }
+    /**
+     * 참가자가 받은 쿠폰 발급 기록 (최근 것부터)
+     */
+    public List<CouponIssuance> getIssuances(int participantId) {
+        return issuanceRepository.findByParticipantIdOrderByIssuedAtDesc(participantId);
     }
     
     /**
      * 현재 쿠폰 상태 조회
      */
     public Coupon getCouponStatus() {
-        return couponRepository.findById(1L).orElse(new Coupon(0));
+        return couponRepository.findById(CouponIssuanceStrategy.COUPON_ID).orElse(new Coupon(0));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,271 @@
+package com.example.racecondition.service;
+
+import com.example.racecondition.model.Coupon;
+import com.example.racecondition.model.CouponIssuance;
+import com.example.racecondition.model.ParticipantResult;
+import com.example.racecondition.repository.CouponIssuanceRepository;
+import com.example.racecondition.repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 7. 그룹 커밋 (Group Commit) - 요청을 모아 트랜잭션 하나로 처리
+ *
+ * 참가자 스레드는 요청을 대기열에 넣고 CompletableFuture 로 결과를 기다린다. 쓰는 스레드 하나가 첫 요청이 온 뒤
+ * racecondition.group.max-wait-ms 가 지나거나 racecondition.group.max-batch 개가 모이면 그만큼을 한 묶음으로 꺼내
+ * 트랜잭션 하나에서 쿠폰 행을 잠가 읽고, 남은 수량만큼 앞에서부터 당첨시켜 한 번에 차감하고,
+ * 당첨자를 발급 장부에 적는다. 장부 id 는 시퀀스에서 미리 받아 둔 값이라 INSERT 는 커밋 직전에
+ * hibernate.jdbc.batch_size 단위의 JDBC 배치로 나간다. 커밋한 뒤에 Future 들을 완료한다.
+ *
+ * 요청마다 트랜잭션을 여는 대신 묶음마다 한 번이라 요청이 몰릴수록 커밋 수가 줄어든다.
+ * 대신 각 요청은 묶음이 찰 때까지 최대 max-wait-ms 만큼 늦게 응답받는다. 쓰는 스레드가 하나뿐이라 묶음끼리는 겹치지 않는다.
+ *
+ * 참가자는 racecondition.group.claim-timeout-ms 까지만 기다리고, 넘기면 실패로 돌아간다. 그때 아직 대기열에 있던 요청은 빼지만
+ * 쓰는 스레드가 이미 꺼낸 요청은 커밋될 수 있어, 그런 당첨은 경고 로그로 남긴다. 쓰는 스레드가 Error 로 죽거나
+ * 멈춘 뒤에 들어온 요청은 기다리지 않고 바로 실패한다. 새 실행 전에는 settle() 이 처리 중인 묶음을 끝내고 남은 요청을 실패시킨다.
+ */
+@Component
+public class GroupCommitStrategy implements CouponIssuanceStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitStrategy.class);
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private CouponIssuanceRepository issuanceRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${racecondition.group.max-wait-ms:5}")
+    private long maxWaitMillis;
+
+    @Value("${racecondition.group.max-batch:100}")
+    private int maxBatch;
+
+    @Value("${racecondition.group.claim-timeout-ms:5000}")
+    private long claimTimeoutMillis;
+
+    private final BlockingQueue<Claim> queue = new LinkedBlockingQueue<>();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    // 쓰는 스레드가 묶음 하나를 처리하는 동안 잡는다. settle() 은 이걸 잡아 처리 중인 묶음이 끝나길 기다린다.
+    private final ReentrantLock batchLock = new ReentrantLock();
+
+    private static final class Claim {
+        final int participantId;
+        final LocalDateTime requestedAt = LocalDateTime.now();
+        // true 면 당첨, false 면 소진
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Claim(int participantId) {
+            this.participantId = participantId;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "group";
+    }
+
+    @PostConstruct
+    void startWriter() {
+        if (maxBatch < 1) {
+            throw new IllegalStateException("racecondition.group.max-batch 는 1 이상이어야 합니다: " + maxBatch);
+        }
+        running = true;
+        writer = new Thread(this::drainLoop, "coupon-group-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stopWriter() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        // 처리하지 못한 요청은 실패로 돌려준다
+        failQueued("서버 종료 중");
+    }
+
+    /**
+     * 처리 중인 묶음이 커밋되길 기다리고, 아직 대기열에 남은 요청은 실패시킨다.
+     * 지난 실행의 요청이 새로 초기화한 쿠폰 행을 깎지 않게 한다.
+     */
+    @Override
+    public void settle() {
+        batchLock.lock();
+        try {
+            failQueued("새 실행 전까지 처리하지 못함");
+        } finally {
+            batchLock.unlock();
+        }
+    }
+
+    @Override
+    public ParticipantResult issue(int participantId) {
+        Claim claim = new Claim(participantId);
+        queue.add(claim);
+        // 쓰는 스레드가 이미 멈췄으면 꺼낼 스레드가 없다
+        if (!running && queue.remove(claim)) {
+            log.warn("⚠️ [Group] 참가자 {} - 발급 스레드가 멈춰 있음", participantId);
+            return new ParticipantResult(participantId, false, "발급 스레드 중지됨");
+        }
+        try {
+            return toResult(participantId, claim.result.get(claimTimeoutMillis, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ParticipantResult(participantId, false, "대기 중 중단됨");
+        } catch (ExecutionException e) {
+            return toError(participantId, e.getCause());
+        } catch (TimeoutException e) {
+            // 아직 꺼내지 않았으면 빼고, 이미 꺼냈으면 결과를 실패로 못박는다
+            queue.remove(claim);
+            if (!claim.result.completeExceptionally(e)) {
+                // 못박기 직전에 당첨/소진이나 오류가 왔다. 그 결과를 그대로 돌려준다.
+                try {
+                    return toResult(participantId, claim.result.getNow(false));
+                } catch (CompletionException completion) {
+                    return toError(participantId, completion.getCause());
+                }
+            }
+            log.warn("⚠️ [Group] 참가자 {} - {}ms 안에 처리되지 않음", participantId, claimTimeoutMillis);
+            return new ParticipantResult(participantId, false, "대기 시간 초과");
+        }
+    }
+
+    private ParticipantResult toResult(int participantId, boolean won) {
+        if (won) {
+            log.info("🎯 [Group] 참가자 {} - 쿠폰 획득!", participantId);
+            return new ParticipantResult(participantId, true, "쿠폰 획득 성공!");
+        }
+        log.info("❌ [Group] 참가자 {} - 쿠폰 소진", participantId);
+        return new ParticipantResult(participantId, false, "쿠폰 소진");
+    }
+
+    private ParticipantResult toError(int participantId, Throwable cause) {
+        log.warn("⚠️ [Group] 참가자 {} - 발급 오류: {}", participantId, cause.getMessage());
+        return new ParticipantResult(participantId, false, "발급 오류: " + cause.getMessage());
+    }
+
+    private void drainLoop() {
+        List<Claim> batch = new ArrayList<>(maxBatch);
+        try {
+            while (running) {
+                try {
+                    collect(batch);
+                } catch (InterruptedException e) {
+                    // stopWriter 가 깨웠다. 이미 꺼낸 요청은 아래에서 처리한다.
+                    running = false;
+                }
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                batchLock.lock();
+                try {
+                    process(batch);
+                } finally {
+                    batchLock.unlock();
+                }
+                batch.clear();
+            }
+        } finally {
+            // Error 로 죽어도 꺼낸 요청과 남은 요청이 기다리지 않게 한다
+            running = false;
+            for (Claim claim : batch) {
+                claim.result.completeExceptionally(new IllegalStateException("발급 스레드 중지됨"));
+            }
+            failQueued("발급 스레드 중지됨");
+        }
+    }
+
+    private void process(List<Claim> batch) {
+        // 기다리다 시간 초과로 이미 실패한 요청은 당첨시키지 않는다
+        batch.removeIf(claim -> claim.result.isDone());
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            int granted = transactionTemplate.execute(status -> apply(batch));
+            for (int i = 0; i < batch.size(); i++) {
+                Claim claim = batch.get(i);
+                if (!claim.result.complete(i < granted) && i < granted) {
+                    log.warn("⚠️ [Group] 참가자 {} - 시간 초과로 실패를 돌려줬지만 쿠폰은 발급됨", claim.participantId);
+                }
+            }
+            log.debug("📦 [Group] 요청 {}건을 한 트랜잭션으로 처리 (당첨 {})", batch.size(), granted);
+        } catch (RuntimeException e) {
+            // 롤백됐으니 묶음 전체가 실패다
+            for (Claim claim : batch) {
+                claim.result.completeExceptionally(e);
+            }
+            log.warn("⚠️ [Group] 요청 {}건 처리 오류: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void failQueued(String reason) {
+        List<Claim> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Claim claim : left) {
+            claim.result.completeExceptionally(new IllegalStateException(reason));
+        }
+    }
+
+    /**
+     * 첫 요청을 기다린 뒤 maxWaitMillis 동안, 또는 maxBatch 개가 찰 때까지 더 모은다.
+     */
+    private void collect(List<Claim> batch) throws InterruptedException {
+        Claim first = queue.take();
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        while (batch.size() < maxBatch) {
+            long left = deadline - System.nanoTime();
+            Claim next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatch - batch.size());
+        }
+    }
+
+    /**
+     * 쿠폰 행을 잠그고 남은 수량만큼 앞 요청부터 당첨시킨다. 당첨자 수를 돌려준다.
+     */
+    private int apply(List<Claim> batch) {
+        Coupon coupon = couponRepository.findByIdWithPessimisticLock(COUPON_ID).orElse(null);
+        int available = coupon != null ? coupon.getAvailableCount() : 0;
+        int granted = Math.min(available, batch.size());
+        if (granted == 0) {
+            return 0;
+        }
+        couponRepository.decrementBy(COUPON_ID, granted);
+        List<CouponIssuance> rows = new ArrayList<>(granted);
+        for (Claim claim : batch.subList(0, granted)) {
+            rows.add(new CouponIssuance(COUPON_ID, claim.participantId, claim.requestedAt, getName()));
+        }
+        issuanceRepository.saveAll(rows);
+        return granted;
+    }
+}
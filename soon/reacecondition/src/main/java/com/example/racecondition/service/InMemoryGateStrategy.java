@@ -0,0 +1,266 @@
+package com.example.racecondition.service;
+
+import com.example.racecondition.model.CouponIssuance;
+import com.example.racecondition.model.ParticipantResult;
+import com.example.racecondition.model.StockGate;
+import com.example.racecondition.repository.CouponIssuanceRepository;
+import com.example.racecondition.repository.StockGateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 6. 메모리 재고 게이트 (In-Memory Gate) - 당첨 여부는 JVM 안에서, DB 쓰기는 모아서 나중에
+ *
+ * 남은 수량을 AtomicInteger 하나로 들고 compareAndSet 으로 1 씩 뺀다. 발급 여부가 DB 왕복 없이 정해지므로
+ * 재고가 떨어진 뒤의 요청은 DB 에 닿지 않고, 당첨자만 대기열에 쌓인다.
+ * 백그라운드 스레드가 racecondition.memory.flush-interval-ms 마다 대기열을 최대 racecondition.memory.flush-batch-size 개씩 꺼내
+ * 트랜잭션 하나에서 게이트 전용 재고 행(coupon_stock_gates)을 그 수만큼 한 번에 차감하고 발급 장부(coupon_issuances)에 당첨자를 적는다.
+ * 게이트 행은 coupons 행과 따로라 다른 방식이 쿠폰을 초기화해도 늦게 쓰인 당첨자가 그 재고를 깎지 않는다.
+ *
+ * 쓰기에 실패한 묶음은 다음 주기에 다시 쓰되 MAX_FLUSH_ATTEMPTS 번까지만 하고, 게이트 행에 남은 수량이 모자라는 것처럼
+ * 다시 해도 안 되는 실패면 바로 따로 빼서 오류 로그로 남긴다. 빠진 당첨자는 장부에 없으므로 재시작하면 남은 수량으로 돌아간다.
+ *
+ * 재시작하면 게이트 행의 처음 수량에서, 그 행을 준비한 뒤 장부에 memory 방식으로 적힌 당첨자 수를 빼서 게이트를 다시 채운다.
+ * 종료할 때는 대기열을 끝까지 비우고 내려간다. 프로세스가 강제로 죽으면 마지막 주기 안에 당첨된 요청은 장부에 남지 않는다.
+ * 기본 설정(jdbc:h2:mem, ddl-auto=create-drop)에서는 DB 도 재시작 때 비므로 복구는 파일/서버 DB 로 바꿨을 때만 의미가 있다.
+ */
+@Component
+public class InMemoryGateStrategy implements CouponIssuanceStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryGateStrategy.class);
+
+    // 일시적인 오류로 실패한 묶음을 다시 써 보는 횟수
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    @Autowired
+    private StockGateRepository gateRepository;
+
+    @Autowired
+    private CouponIssuanceRepository issuanceRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${racecondition.memory.flush-interval-ms:5}")
+    private long flushIntervalMillis;
+
+    @Value("${racecondition.memory.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    private final AtomicInteger remaining = new AtomicInteger();
+
+    // 당첨됐지만 아직 DB 에 쓰지 않은 요청
+    private final Queue<Claim> pending = new ConcurrentLinkedQueue<>();
+
+    // 꺼냈지만 아직 커밋하지 못한 요청과 그 묶음을 써 본 횟수. flushLock 을 잡고만 만진다.
+    private final List<Claim> batch = new ArrayList<>();
+    private int failedAttempts;
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private ScheduledExecutorService flusher;
+
+    private static final class Claim {
+        final int participantId;
+        final LocalDateTime issuedAt;
+
+        Claim(int participantId, LocalDateTime issuedAt) {
+            this.participantId = participantId;
+            this.issuedAt = issuedAt;
+        }
+    }
+
+    // 게이트 행에 남은 수량이 묶음보다 적다. 다시 써도 같으므로 묶음을 뺀다.
+    private static final class GateExhaustedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        GateExhaustedException(String message) {
+            super(message);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    @PostConstruct
+    void start() {
+        if (flushBatchSize < 1) {
+            throw new IllegalStateException("racecondition.memory.flush-batch-size 는 1 이상이어야 합니다: " + flushBatchSize);
+        }
+        recover();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "coupon-issuance-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushPending,
+            flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        int written = flushPending();
+        log.info("💾 [Memory] 종료 전 당첨자 {}명 기록", written);
+    }
+
+    /**
+     * 게이트 행의 처음 수량에서 그 행을 준비한 뒤 장부에 적힌 memory 당첨자 수를 빼 게이트를 채운다.
+     * 차감과 장부 기록은 한 트랜잭션이라 게이트 행의 availableCount 와 같아야 하고, 다르면 경고를 남기고 장부를 따른다.
+     */
+    private void recover() {
+        StockGate gate = gateRepository.findById(COUPON_ID).orElse(null);
+        if (gate == null) {
+            remaining.set(0);
+            return;
+        }
+        long issued = issuanceRepository.countByCouponIdAndStrategyAndIssuedAtGreaterThanEqual(
+            COUPON_ID, getName(), gate.getPreparedAt());
+        int available = (int) Math.max(0, gate.getInitialCount() - issued);
+        if (available != gate.getAvailableCount()) {
+            log.warn("⚠️ [Memory] 게이트 행({})과 장부 기준 남은 수량({})이 다릅니다. 장부를 따릅니다",
+                            gate.getAvailableCount(), available);
+        }
+        remaining.set(available);
+        log.info("💾 [Memory] 게이트 복구 - 처음 수량 {}, 장부의 당첨자 {}명, 남은 수량 {}",
+                        gate.getInitialCount(), issued, available);
+    }
+
+    /**
+     * 대기열과 실패해 남은 묶음을 모두 정리한다. 그래도 못 쓴 묶음은 다음 실행의 게이트 행을 깎지 않도록 뺀다.
+     */
+    @Override
+    public void settle() {
+        flushLock.lock();
+        try {
+            flushPending();
+            if (!batch.isEmpty()) {
+                setAside("새 실행 전까지 기록하지 못함");
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 지난 실행의 당첨자를 정리하고 게이트 행과 게이트를 stock 개로 새로 맞춘다. 장부는 지우지 않고, 준비한 시각 이후의 줄만 이번 실행으로 센다.
+     */
+    @Override
+    public void prepare(int stock) {
+        flushLock.lock();
+        try {
+            settle();
+            transactionTemplate.executeWithoutResult(status ->
+                gateRepository.save(new StockGate(COUPON_ID, stock, LocalDateTime.now())));
+            remaining.set(stock);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public ParticipantResult issue(int participantId) {
+        int current;
+        do {
+            current = remaining.get();
+            if (current <= 0) {
+                log.info("❌ [Memory] 참가자 {} - 쿠폰 소진", participantId);
+                return new ParticipantResult(participantId, false, "쿠폰 소진");
+            }
+        } while (!remaining.compareAndSet(current, current - 1));
+
+        pending.add(new Claim(participantId, LocalDateTime.now()));
+        log.info("🎯 [Memory] 참가자 {} - 쿠폰 획득! (남은 수량: {})", participantId, current - 1);
+        return new ParticipantResult(participantId, true, "쿠폰 획득 성공!");
+    }
+
+    /**
+     * 게이트 기준 남은 수량. 게이트 행은 다음 기록 주기까지 이보다 클 수 있다.
+     */
+    @Override
+    public Integer remainingStock() {
+        return remaining.get();
+    }
+
+    /**
+     * 대기열이 빌 때까지 flushBatchSize 개씩 트랜잭션 하나로 쓴다. 쓴 당첨자 수를 돌려준다.
+     * 예외를 던지지 않는다. 실패한 묶음은 batch 에 남겨 다음에 다시 쓰거나, 더 해도 안 되면 뺀다.
+     */
+    private int flushPending() {
+        flushLock.lock();
+        try {
+            int written = 0;
+            while (true) {
+                Claim claim;
+                while (batch.size() < flushBatchSize && (claim = pending.poll()) != null) {
+                    batch.add(claim);
+                }
+                if (batch.isEmpty()) {
+                    return written;
+                }
+                try {
+                    transactionTemplate.executeWithoutResult(status -> writeBatch());
+                } catch (GateExhaustedException e) {
+                    setAside(e.getMessage());
+                    continue;
+                } catch (RuntimeException e) {
+                    if (++failedAttempts >= MAX_FLUSH_ATTEMPTS) {
+                        setAside(failedAttempts + "번 실패: " + e.getMessage());
+                        continue;
+                    }
+                    log.warn("⚠️ [Memory] 당첨자 기록 오류 ({}번째, 다음 주기에 다시 씀): {}", failedAttempts, e.getMessage());
+                    return written;
+                }
+                written += batch.size();
+                log.debug("💾 [Memory] 당첨자 {}명 기록", batch.size());
+                batch.clear();
+                failedAttempts = 0;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void writeBatch() {
+        if (gateRepository.decrementBy(COUPON_ID, batch.size()) == 0) {
+            throw new GateExhaustedException("게이트 행에 남은 수량이 당첨자 " + batch.size() + "명보다 적습니다");
+        }
+        List<CouponIssuance> rows = new ArrayList<>(batch.size());
+        for (Claim claim : batch) {
+            rows.add(new CouponIssuance(COUPON_ID, claim.participantId, claim.issuedAt, getName()));
+        }
+        issuanceRepository.saveAll(rows);
+    }
+
+    // 기록을 포기한 묶음. 당첨은 이미 응답했으므로 누가 빠졌는지 오류 로그로 남긴다.
+    private void setAside(String reason) {
+        StringBuilder participants = new StringBuilder();
+        for (Claim claim : batch) {
+            if (participants.length() > 0) participants.append(", ");
+            participants.append(claim.participantId);
+        }
+        log.error("🚨 [Memory] 당첨자 {}명을 장부에 쓰지 못하고 뺍니다 ({}): 참가자 {}",
+                         batch.size(), reason, participants.toString());
+        batch.clear();
+        failedAttempts = 0;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.racecondition.service;
+
+import com.example.racecondition.model.Coupon;
+import com.example.racecondition.model.CouponIssuance;
+import com.example.racecondition.model.ParticipantResult;
+import com.example.racecondition.repository.CouponIssuanceRepository;
+import com.example.racecondition.repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * 3. 낙관적 락 (Optimistic Lock) - 버전 기반 충돌 감지 및 재시도
+ */
+@Component
+public class OptimisticLockStrategy implements CouponIssuanceStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(OptimisticLockStrategy.class);
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private CouponIssuanceRepository issuanceRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    public String getName() {
+        return "optimistic";
+    }
+
+    @Override
+    public ParticipantResult issue(int participantId) {
+        int maxRetries = 3;
+        
+        for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            try {
+                log.info("🔄 [Optimistic] 참가자 {} - 시도 {}/{} (스레드: {})", 
+                                participantId, attempt, maxRetries, Thread.currentThread().getName());
+                
+                return attempt(participantId, attempt);
+                
+            } catch (ObjectOptimisticLockingFailureException e) {
+                log.info("⚠️ [Optimistic] 참가자 {} - 버전 충돌 감지! 재시도 {}/{}", 
+                                participantId, attempt, maxRetries);
+                
+                if (attempt < maxRetries) {
+                    try {
+                        // 지수 백오프
+                        Thread.sleep(100 * attempt);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                } else {
+                    log.info("❌ [Optimistic] 참가자 {} - 최대 재시도 횟수 초과", participantId);
+                    return new ParticipantResult(participantId, false, 
+                        String.format("최대 재시도 횟수 초과 (%d번 시도)", maxRetries));
+                }
+            } catch (Exception e) {
+                log.warn("❌ [Optimistic] 참가자 {} - 오류: {}", participantId, e.getMessage());
+                return new ParticipantResult(participantId, false, "처리 중 오류 발생");
+            }
+        }
+        
+        return new ParticipantResult(participantId, false, "재시도 실패");
+    }
+    
+    // 읽기는 따로 하고, 저장과 발급 장부 기록을 한 트랜잭션에서 한다.
+    // 저장(merge)이 @Version 을 검사하고, 충돌하면 ObjectOptimisticLockingFailureException 을 던지며 장부 기록도 함께 롤백된다.
+    private ParticipantResult attempt(int participantId, int attempt) {
+        Coupon coupon = couponRepository.findById(COUPON_ID).orElse(null);
+        if (coupon == null) {
+            return new ParticipantResult(participantId, false, "쿠폰을 찾을 수 없음");
+        }
+        
+        log.info("📊 [Optimistic] 참가자 {} - 현재 버전: {}, 쿠폰: {}개", 
+                        participantId, coupon.getVersion(), coupon.getAvailableCount());
+        
+        if (coupon.getAvailableCount() > 0) {
+            try {
+                // 처리 시간 시뮬레이션
+                Thread.sleep(100);
+                
+                coupon.setAvailableCount(coupon.getAvailableCount() - 1);
+                Coupon saved = transactionTemplate.execute(status -> {
+                    Coupon merged = couponRepository.saveAndFlush(coupon); // @Version이 자동으로 충돌 검사
+                    issuanceRepository.save(new CouponIssuance(COUPON_ID, participantId, LocalDateTime.now(), getName()));
+                    return merged;
+                });
+                
+                log.info("🎯 [Optimistic] 참가자 {} - 쿠폰 획득! (버전: {}, 남은 쿠폰: {})", 
+                                participantId, saved.getVersion(), saved.getAvailableCount());
+                
+                return new ParticipantResult(participantId, true, 
+                    String.format("쿠폰 획득 성공! (시도: %d회, 남은 쿠폰: %d)", attempt, saved.getAvailableCount()));
+                
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new ParticipantResult(participantId, false, "처리 중단됨");
+            }
+        } else {
+            log.info("❌ [Optimistic] 참가자 {} - 쿠폰 소진", participantId);
+            return new ParticipantResult(participantId, false, "쿠폰 소진");
+        }
+    }
+}
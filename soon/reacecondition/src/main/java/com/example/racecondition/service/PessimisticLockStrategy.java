@@ -0,0 +1,81 @@
+package com.example.racecondition.service;
+
+import com.example.racecondition.model.Coupon;
+import com.example.racecondition.model.CouponIssuance;
+import com.example.racecondition.model.ParticipantResult;
+import com.example.racecondition.repository.CouponIssuanceRepository;
+import com.example.racecondition.repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 2. 비관적 락 (Pessimistic Lock) - 순차적 안전한 접근
+ */
+@Component
+public class PessimisticLockStrategy implements CouponIssuanceStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(PessimisticLockStrategy.class);
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private CouponIssuanceRepository issuanceRepository;
+    
+    private final ReentrantLock pessimisticLock = new ReentrantLock();
+
+    @Override
+    public String getName() {
+        return "pessimistic";
+    }
+
+    @Override
+    @Transactional
+    public ParticipantResult issue(int participantId) {
+        log.info("🔒 [Pessimistic] 참가자 {} - 락 획득 시도...", participantId);
+        
+        // 🔒 애플리케이션 레벨 락 + DB 레벨 락 조합
+        pessimisticLock.lock();
+        try {
+            log.info("🔓 [Pessimistic] 참가자 {} - 락 획득 성공! (스레드: {})", 
+                            participantId, Thread.currentThread().getName());
+            
+            // DB 레벨 비관적 락
+            Coupon coupon = couponRepository.findByIdWithPessimisticLock(COUPON_ID).orElse(null);
+            if (coupon == null) {
+                return new ParticipantResult(participantId, false, "쿠폰을 찾을 수 없음");
+            }
+            
+            if (coupon.getAvailableCount() > 0) {
+                // Critical Section에서 안전한 작업
+                Thread.sleep(200); // 처리 시간 시뮬레이션
+                
+                coupon.setAvailableCount(coupon.getAvailableCount() - 1);
+                couponRepository.save(coupon);
+                issuanceRepository.save(new CouponIssuance(COUPON_ID, participantId, LocalDateTime.now(), getName()));
+                
+                log.info("🎯 [Pessimistic] 참가자 {} - 쿠폰 획득! (남은 쿠폰: {})", 
+                                participantId, coupon.getAvailableCount());
+                
+                return new ParticipantResult(participantId, true, 
+                    String.format("쿠폰 획득 성공! (남은 쿠폰: %d)", coupon.getAvailableCount()));
+            } else {
+                log.info("❌ [Pessimistic] 참가자 {} - 쿠폰 없음", participantId);
+                return new ParticipantResult(participantId, false, "쿠폰 소진");
+            }
+            
+        } catch (Exception e) {
+            log.warn("❌ [Pessimistic] 참가자 {} - 오류: {}", participantId, e.getMessage());
+            return new ParticipantResult(participantId, false, "처리 중 오류 발생");
+        } finally {
+            pessimisticLock.unlock();
+            log.info("🔓 [Pessimistic] 참가자 {} - 락 해제", participantId);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.racecondition.service;
+
+import com.example.racecondition.model.Coupon;
+import com.example.racecondition.model.CouponIssuance;
+import com.example.racecondition.model.ParticipantResult;
+import com.example.racecondition.repository.CouponIssuanceRepository;
+import com.example.racecondition.repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * 1. Race Condition (락 없음) - 진짜 멀티스레드 문제 발생!
+ *
+ * 읽고 잠깐 쉰 뒤 저장한다. 조회와 저장이 각각 따로 커밋되므로 그 사이에 다른 스레드가 끼어든다.
+ * 저장과 발급 장부 기록만 한 트랜잭션으로 묶어, 장부에는 저장에 성공한 당첨자만 남는다.
+ */
+@Component
+public class RaceConditionStrategy implements CouponIssuanceStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(RaceConditionStrategy.class);
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private CouponIssuanceRepository issuanceRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    public String getName() {
+        return "race";
+    }
+
+    @Override
+    public ParticipantResult issue(int participantId) {
+        try {
+            log.info("🔍 [Race] 참가자 {} (스레드: {}) - 쿠폰 확인 시작", 
+                            participantId, Thread.currentThread().getName());
+            
+            Coupon coupon = couponRepository.findById(COUPON_ID).orElse(null);
+            if (coupon == null) {
+                return new ParticipantResult(participantId, false, "쿠폰을 찾을 수 없음");
+            }
+            
+            int currentCount = coupon.getAvailableCount();
+            log.info("📖 [Race] 참가자 {} - 현재 쿠폰 {}개 확인, 처리 시작...", 
+                            participantId, currentCount);
+            
+            // 💥 Race Condition 핵심: 모든 스레드가 동시에 이 조건을 통과할 수 있음!
+            if (currentCount > 0) {
+                // 실제 처리 시간 시뮬레이션 (100-300ms)
+                Thread.sleep(100 + (int)(Math.random() * 200));
+                
+                // 💀 여기서 문제! 다른 스레드가 이미 차감했을 수도 있지만 검사하지 않음
+                coupon.setAvailableCount(currentCount - 1);
+                transactionTemplate.executeWithoutResult(status -> {
+                    couponRepository.save(coupon);
+                    issuanceRepository.save(new CouponIssuance(COUPON_ID, participantId, LocalDateTime.now(), getName()));
+                });
+                
+                int newCount = coupon.getAvailableCount();
+                log.info("🎯 [Race] 참가자 {} - 쿠폰 획득! (남은 쿠폰: {})", 
+                                participantId, newCount);
+                
+                if (newCount < 0) {
+                    log.warn("💀 [Race] 참가자 {} - 심각한 문제! 쿠폰이 음수: {}", 
+                                    participantId, newCount);
+                }
+                
+                return new ParticipantResult(participantId, true, 
+                    String.format("쿠폰 획득 성공! (남은 쿠폰: %d)", newCount));
+            }
+            
+        } catch (Exception e) {
+            log.warn("❌ [Race] 참가자 {} - 오류: {}", participantId, e.getMessage());
+        }
+        
+        return new ParticipantResult(participantId, false, "쿠폰 획득 실패");
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.racecondition.service;
+
+import com.example.racecondition.model.CouponIssuance;
+import com.example.racecondition.model.CouponStockBucket;
+import com.example.racecondition.model.ParticipantResult;
+import com.example.racecondition.repository.CouponIssuanceRepository;
+import com.example.racecondition.repository.CouponStockBucketRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 5. 재고 버킷 나누기 (Sharded Stock) - 행 하나에 몰리는 락을 N 개로 분산
+ *
+ * 재고를 coupon_stock_buckets 의 N 개 행에 나눠 담는다. 참가자 스레드는 자기 스레드 id 로 정해지는 버킷부터
+ * 조건부 UPDATE 로 1 을 빼고, 그 버킷이 비었으면 옆 버킷으로 넘어간다. 차감은 버킷마다 available_count > 0 조건이 붙은
+ * 문장 하나라 합계를 넘겨 발급되는 일은 없고, 서로 다른 버킷을 고른 요청끼리는 락을 기다리지 않는다.
+ *
+ * 요청이 특정 버킷에 몰려 먼저 비면 옆 버킷을 찾아다니느라 문장이 늘어나므로, 백그라운드 스레드가 주기적으로
+ * 가장 많이 남은 버킷에서 가장 적게 남은 버킷으로 재고를 옮긴다. 옮기기는 빼고 더하기를 한 트랜잭션에서 하므로 합계는 그대로다.
+ * 그래서 한 바퀴를 다 돌고도 못 찾았어도 합계가 남아 있으면 다시 돈다. 재분배가 이미 지나간 버킷으로 재고를 옮긴 경우이며,
+ * 합계가 0 일 때만 소진으로 답하므로 재고가 남았는데 소진이라고 하는 일은 없다.
+ * 지난 주기 뒤로 발급이나 준비가 없었으면 버킷이 그대로이므로 조회하지 않고 넘어가, 실행이 없을 때는 DB 에 닿지 않는다.
+ * 버킷 수는 racecondition.stock.buckets, 재분배 주기는 racecondition.stock.rebalance-interval-ms 로 정한다.
+ */
+@Component
+public class ShardedStockStrategy implements CouponIssuanceStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedStockStrategy.class);
+
+    @Autowired
+    private CouponStockBucketRepository bucketRepository;
+
+    @Autowired
+    private CouponIssuanceRepository issuanceRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${racecondition.stock.buckets:8}")
+    private int bucketCount;
+
+    @Value("${racecondition.stock.rebalance-interval-ms:200}")
+    private long rebalanceIntervalMillis;
+
+    private ScheduledExecutorService rebalancer;
+
+    // 마지막 재분배 뒤로 버킷이 바뀌었는지. 발급에 성공하거나 새로 준비하면 켠다.
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    @Override
+    public String getName() {
+        return "sharded";
+    }
+
+    @PostConstruct
+    void startRebalancer() {
+        if (bucketCount < 1) {
+            throw new IllegalStateException("racecondition.stock.buckets 는 1 이상이어야 합니다: " + bucketCount);
+        }
+        rebalancer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "coupon-stock-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebalancer.scheduleWithFixedDelay(this::rebalanceQuietly,
+            rebalanceIntervalMillis, rebalanceIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopRebalancer() {
+        rebalancer.shutdownNow();
+    }
+
+    /**
+     * stock 을 버킷 수로 고르게 나눈다. 나머지는 앞 버킷부터 하나씩 더 준다.
+     */
+    @Override
+    @Transactional
+    public void prepare(int stock) {
+        bucketRepository.deleteByCouponId(COUPON_ID);
+        for (int i = 0; i < bucketCount; i++) {
+            int share = stock / bucketCount + (i < stock % bucketCount ? 1 : 0);
+            bucketRepository.save(new CouponStockBucket(COUPON_ID, i, share));
+        }
+        changed.set(true);
+    }
+
+    @Override
+    @Transactional
+    public ParticipantResult issue(int participantId) {
+        int home = (int) (Thread.currentThread().getId() % bucketCount);
+        while (true) {
+            for (int i = 0; i < bucketCount; i++) {
+                int bucket = (home + i) % bucketCount;
+                if (bucketRepository.decrementIfAvailable(COUPON_ID, bucket) == 1) {
+                    changed.set(true);
+                    issuanceRepository.save(new CouponIssuance(COUPON_ID, participantId, LocalDateTime.now(), getName()));
+                    log.info("🎯 [Sharded] 참가자 {} - 버킷 {} 에서 쿠폰 획득! ({}번째 버킷)",
+                                    participantId, bucket, i + 1);
+                    return new ParticipantResult(participantId, true,
+                        String.format("쿠폰 획득 성공! (버킷 %d)", bucket));
+                }
+            }
+            if (bucketRepository.sumAvailable(COUPON_ID) == 0) {
+                break;
+            }
+        }
+        log.info("❌ [Sharded] 참가자 {} - 쿠폰 소진", participantId);
+        return new ParticipantResult(participantId, false, "쿠폰 소진");
+    }
+
+    @Override
+    public Integer remainingStock() {
+        return (int) bucketRepository.sumAvailable(COUPON_ID);
+    }
+
+    private void rebalanceQuietly() {
+        if (!changed.getAndSet(false)) {
+            return;
+        }
+        try {
+            rebalance();
+        } catch (Exception e) {
+            // 다음 주기에 다시 한다
+            changed.set(true);
+            log.warn("⚠️ [Sharded] 재분배 오류: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 가장 많이 남은 버킷과 가장 적게 남은 버킷의 차이가 1 이하가 될 때까지 절반씩 옮긴다.
+     * 그 사이 발급으로 줄어 옮길 만큼 남지 않았으면 이번 주기는 거기서 멈춘다.
+     */
+    void rebalance() {
+        List<CouponStockBucket> buckets = bucketRepository.findByCouponIdOrderByBucketIndex(COUPON_ID);
+        if (buckets.size() < 2) {
+            return;
+        }
+        int[] counts = new int[buckets.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i).getAvailableCount();
+        }
+        for (int round = 0; round < counts.length; round++) {
+            int fullest = 0;
+            int emptiest = 0;
+            for (int i = 1; i < counts.length; i++) {
+                if (counts[i] > counts[fullest]) fullest = i;
+                if (counts[i] < counts[emptiest]) emptiest = i;
+            }
+            int amount = (counts[fullest] - counts[emptiest]) / 2;
+            if (amount == 0 || !move(buckets.get(fullest).getBucketIndex(), buckets.get(emptiest).getBucketIndex(), amount)) {
+                return;
+            }
+            counts[fullest] -= amount;
+            counts[emptiest] += amount;
+            log.debug("🔀 [Sharded] 버킷 {} → {} 로 {}개 재분배",
+                             buckets.get(fullest).getBucketIndex(), buckets.get(emptiest).getBucketIndex(), amount);
+        }
+    }
+
+    private boolean move(int from, int to, int amount) {
+        Boolean moved = transactionTemplate.execute(status -> {
+            if (bucketRepository.takeIfAvailable(COUPON_ID, from, amount) == 0) {
+                return false;
+            }
+            bucketRepository.add(COUPON_ID, to, amount);
+            return true;
+        });
+        return Boolean.TRUE.equals(moved);
+    }
+}
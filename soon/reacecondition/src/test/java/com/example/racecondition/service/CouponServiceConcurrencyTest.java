@@ -0,0 +1,86 @@
+package com.example.racecondition.service;
+
+import com.example.racecondition.RaceConditionApplication;
+import com.example.racecondition.model.ParticipantResult;
+import com.example.racecondition.repository.CouponIssuanceRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 재고를 지키는 발급 방식들을 실제로 동시에 요청해 당첨자 수와 남은 재고를 확인한다.
+ */
+@SpringBootTest(classes = RaceConditionApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE,
+                properties = "racecondition.stock.rebalance-interval-ms=1")
+class CouponServiceConcurrencyTest {
+
+    @Autowired
+    private CouponService couponService;
+
+    @Autowired
+    private CouponIssuanceRepository issuanceRepository;
+
+    @Autowired
+    private List<CouponIssuanceStrategy> strategies;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"conditional", "sharded", "memory", "group"})
+    @DisplayName("참가자가 재고보다 많으면 재고만큼만 당첨된다")
+    void issuesOnlyStockWhenParticipantsExceedStock(String strategy) throws InterruptedException {
+        assertIssued(strategy, 50, 10);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"conditional", "sharded", "memory", "group"})
+    @DisplayName("참가자가 재고보다 적으면 모두 당첨된다")
+    void issuesToEveryoneWhenStockSuffices(String strategy) throws InterruptedException {
+        assertIssued(strategy, 8, 20);
+    }
+
+    @RepeatedTest(5)
+    @DisplayName("재분배가 계속 돌아도 버킷 나누기는 재고를 남긴 채 소진이라고 답하지 않는다")
+    void shardedSellsOutWhileRebalancing() throws InterruptedException {
+        assertIssued("sharded", 300, 200);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"conditional", "sharded", "memory", "group", "pessimistic", "optimistic"})
+    @DisplayName("당첨자마다 발급 장부에 한 줄씩 남는다")
+    void recordsEveryWinnerInLedger(String strategy) throws InterruptedException {
+        LocalDateTime startedAt = LocalDateTime.now();
+        List<ParticipantResult> results = couponService.runSimulation(strategy, 10, 3);
+        // 메모리 게이트는 주기마다 묶어 쓰므로 남은 대기열을 먼저 기록한다
+        for (CouponIssuanceStrategy each : strategies) {
+            if (each.getName().equals(strategy)) {
+                each.settle();
+            }
+        }
+
+        long winners = results.stream().filter(ParticipantResult::isSuccess).count();
+        long recorded = issuanceRepository.countByCouponIdAndStrategyAndIssuedAtGreaterThanEqual(
+            CouponIssuanceStrategy.COUPON_ID, strategy, startedAt);
+
+        assertEquals(winners, recorded, "장부에 적힌 당첨자 수");
+    }
+
+    private void assertIssued(String strategy, int participants, int stock) throws InterruptedException {
+        List<ParticipantResult> results = couponService.runSimulation(strategy, participants, stock);
+
+        long winners = results.stream().filter(ParticipantResult::isSuccess).count();
+        int remaining = couponService.getRemainingStock(strategy);
+
+        assertEquals(participants, results.size(), "참가자마다 결과가 하나씩 있어야 함");
+        assertEquals(Math.min(stock, participants), winners, "당첨자 수");
+        assertTrue(remaining >= 0, "남은 재고가 음수: " + remaining);
+        assertEquals(stock - winners, remaining, "남은 재고");
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 비동기 로그.
+ *
+ * 호출 스레드는 레벨, 시각, 스레드 이름, printf 형식 문자열과 인자만 링 버퍼 칸에 넣고 돌아간다.
+ * 형식화와 콘솔 쓰기는 백그라운드 스레드 하나가 모아서 배치마다 한 번씩 하므로 System.out 의 락에 요청 스레드가 줄 서지 않는다.
+ *
+ * 링 버퍼는 칸마다 시퀀스를 둔 다중 생산자/단일 소비자 구조라 락이 없고, 칸 객체를 재사용한다.
+ * 가득 차면 기다리지 않고 버린 뒤 개수를 센다. 인자는 나중에 형식화되므로 바뀌지 않는 값만 넘겨야 한다.
+ */
+public final class AsyncLog {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int CAPACITY = 16384;
+    private static final int MAX_BATCH = 512;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private static final AsyncLog INSTANCE = new AsyncLog(CAPACITY, System.out);
+
+    private static final class Slot {
+        volatile long sequence;
+        Level level;
+        long epochMillis;
+        String thread;
+        String format;
+        Object[] args;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+    private final LongAdder dropped = new LongAdder();
+    private final PrintStream out;
+    private final StringBuilder batch = new StringBuilder(64 * 1024);
+    private volatile Level level = Level.INFO;
+
+    private AsyncLog(int capacity, PrintStream out) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i;
+        }
+        this.mask = size - 1;
+        this.out = out;
+
+        Thread consumer = new Thread(this::consume, "async-log");
+        consumer.setDaemon(true);
+        consumer.start();
+        // 종료 직전에 남은 이벤트를 쓴다
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "async-log-flush"));
+    }
+
+    public static AsyncLog get() {
+        return INSTANCE;
+    }
+
+    public static void debug(String format, Object... args) {
+        INSTANCE.log(Level.DEBUG, format, args);
+    }
+
+    public static void info(String format, Object... args) {
+        INSTANCE.log(Level.INFO, format, args);
+    }
+
+    public static void warn(String format, Object... args) {
+        INSTANCE.log(Level.WARN, format, args);
+    }
+
+    public static void error(String format, Object... args) {
+        INSTANCE.log(Level.ERROR, format, args);
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(INSTANCE.level) >= 0;
+    }
+
+    /**
+     * oneIn 번에 한 번꼴로만 남긴다. 카운터 대신 스레드별 난수를 써서 호출 스레드끼리 경합하지 않는다.
+     */
+    public static void sampled(Level level, int oneIn, String format, Object... args) {
+        if (oneIn > 1 && ThreadLocalRandom.current().nextInt(oneIn) != 0) return;
+        INSTANCE.log(level, format, args);
+    }
+
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 마지막 인자가 Throwable 이면 스택 트레이스를 이어 쓴다.
+     */
+    public void log(Level level, String format, Object... args) {
+        if (level.compareTo(this.level) < 0) return;
+
+        long position = tail.get();
+        Slot slot;
+        while (true) {
+            slot = slots[(int) (position & mask)];
+            long difference = slot.sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+                position = tail.get();
+            } else if (difference < 0) {
+                // 소비자가 한 바퀴 뒤처졌다
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        slot.level = level;
+        slot.epochMillis = System.currentTimeMillis();
+        slot.thread = Thread.currentThread().getName();
+        slot.format = format;
+        slot.args = args;
+        slot.sequence = position + 1;
+    }
+
+    private void consume() {
+        while (true) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    // 소비자 스레드와 종료 훅만 부른다
+    private synchronized int drain() {
+        int total = 0;
+        int count;
+        do {
+            count = 0;
+            while (count < MAX_BATCH) {
+                Slot slot = slots[(int) (head & mask)];
+                if (slot.sequence != head + 1) break;
+                append(slot);
+                slot.args = null;
+                slot.sequence = head + slots.length;
+                head++;
+                count++;
+            }
+            if (count > 0) {
+                out.print(batch);
+                out.flush();
+                batch.setLength(0);
+                total += count;
+            }
+        } while (count == MAX_BATCH);
+        return total;
+    }
+
+    private void append(Slot slot) {
+        batch.append(Instant.ofEpochMilli(slot.epochMillis)).append(' ')
+            .append(slot.level).append(' ')
+            .append('[').append(slot.thread).append("] ");
+        Object[] args = slot.args;
+        if (args == null || args.length == 0) {
+            batch.append(slot.format);
+        } else {
+            try {
+                batch.append(String.format(Locale.ROOT, slot.format, args));
+            } catch (IllegalFormatException e) {
+                batch.append(slot.format);
+            }
+        }
+        batch.append(System.lineSeparator());
+
+        if (args != null && args.length > 0 && args[args.length - 1] instanceof Throwable) {
+            StringWriter trace = new StringWriter();
+            ((Throwable) args[args.length - 1]).printStackTrace(new PrintWriter(trace));
+            batch.append(trace);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 첨부 파일 저장소.
+ *
+ * 업로드는 바이너리 메시지 조각이 도착하는 대로 임시 파일(att-<id>.part)에 이어 쓰고, 선언한 크기만큼 다 받으면 att-<id>.bin 으로 옮긴다.
+ * 그래서 업로드 하나가 쥐는 메모리는 세션의 수신 버퍼뿐이다. 내려보낼 때는 FileTransfer 가 파일을 소켓으로 바로 넘긴다.
+ *
+ * 색인은 메모리에만 두므로 시작할 때 디렉터리에 남은 첨부 파일을 지운다. 이 저장소가 만든 att-<id>.bin/.part 이름만 지우므로
+ * attachment-dir 을 다른 파일과 같이 쓰는 디렉터리로 잡아도 다른 파일은 건드리지 않는다. 최근 maxFiles 개만 남기고 오래된 파일부터 지우는데,
+ * 이미 열어 둔 전송은 파일이 지워져도 끝까지 보낸다.
+ */
+public class AttachmentStore {
+    private static final String FILE_PREFIX = "att-";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String PART_SUFFIX = ".part";
+    // id 는 36진수 숫자라 사용자가 보낸 파일 이름이 경로에 섞이지 않는다
+    private static final String FILE_NAME_PATTERN = "att-[0-9a-z]+\\.(bin|part)";
+
+    private final Path directory;
+    private final long maxSize;
+    private final int maxFiles;
+    private final AtomicLong nextId = new AtomicLong(System.currentTimeMillis());
+    // 접근 순서가 아니라 저장 순서. 가장 오래된 것부터 지운다.
+    private final Map<String, Attachment> attachments = new LinkedHashMap<>();
+
+    public static final class Attachment {
+        public final String id;
+        public final String name;
+        public final long size;
+        final Path path;
+
+        Attachment(String id, String name, long size, Path path) {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+            this.path = path;
+        }
+    }
+
+    /**
+     * 진행 중인 업로드 하나. write/complete 는 세션의 읽기 스레드만 부르고, abort 는 어느 스레드에서든 부를 수 있다.
+     */
+    public final class Upload {
+        private final String id;
+        private final String name;
+        private final long size;
+        private final Path part;
+        private final FileChannel channel;
+        private long written;
+        private volatile boolean aborted;
+
+        private Upload(String id, String name, long size) throws IOException {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+            this.part = directory.resolve(FILE_PREFIX + id + PART_SUFFIX);
+            this.channel = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * 받은 조각을 이어 쓴다. 선언한 크기를 넘으면 쓰지 않고 false.
+         */
+        public boolean write(ByteBuffer chunk) throws IOException {
+            if (written + chunk.remaining() > size) {
+                return false;
+            }
+            while (chunk.hasRemaining()) {
+                written += channel.write(chunk);
+            }
+            return true;
+        }
+
+        /**
+         * 메시지가 끝났을 때 부른다. 선언한 크기만큼 받지 못했으면 지우고 null.
+         */
+        public Attachment complete() throws IOException {
+            channel.close();
+            if (written != size) {
+                Files.deleteIfExists(part);
+                return null;
+            }
+            Attachment attachment = new Attachment(id, name, size, directory.resolve(FILE_PREFIX + id + FILE_SUFFIX));
+            Files.move(part, attachment.path, StandardCopyOption.ATOMIC_MOVE);
+            store(attachment);
+            return attachment;
+        }
+
+        /**
+         * 받던 파일을 지운다. 이후 같은 메시지의 조각은 버리면 된다. 여러 번 불러도 된다.
+         */
+        public void abort() {
+            aborted = true;
+            try {
+                channel.close();
+                Files.deleteIfExists(part);
+            } catch (IOException e) {
+                AsyncLog.warn("Attachment abort error: %s", e.getMessage());
+            }
+        }
+    }
+
+    public AttachmentStore(Path directory, long maxSize, int maxFiles) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxFiles = maxFiles;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory)) {
+            for (Path path : stale) {
+                if (Files.isRegularFile(path) && path.getFileName().toString().matches(FILE_NAME_PATTERN)) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 업로드를 시작한다. 크기가 0 이하이거나 maxSize 를 넘으면 IllegalArgumentException.
+     */
+    public Upload begin(String name, long size) throws IOException {
+        if (size <= 0 || size > maxSize) {
+            throw new IllegalArgumentException("Attachment size must be between 1 and " + maxSize + " bytes");
+        }
+        return new Upload(Long.toString(nextId.incrementAndGet(), 36), name, size);
+    }
+
+    public synchronized Attachment find(String id) {
+        return id != null ? attachments.get(id) : null;
+    }
+
+    /**
+     * 내려보낼 전송을 연다. 그 사이 오래돼서 지워졌으면 null.
+     */
+    public static FileTransfer openTransfer(Attachment attachment) throws IOException {
+        try {
+            return new FileTransfer(attachment.path, attachment.size);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private synchronized void store(Attachment attachment) throws IOException {
+        attachments.put(attachment.id, attachment);
+        Iterator<Attachment> oldest = attachments.values().iterator();
+        while (attachments.size() > maxFiles) {
+            Path path = oldest.next().path;
+            oldest.remove();
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 크기 등급별 direct ByteBuffer 풀.
+ *
+ * 요청 크기를 256B, 1KB, 4KB, 16KB, 64KB 중 맞는 등급으로 올려 등급별 빈 목록에서 꺼내고,
+ * 참조가 모두 놓이면(PooledBuffer.release) 다시 넣는다. 빈 목록은 등급마다 maxBytes / 등급 수 만큼만 둔다.
+ * 64KB 보다 큰 요청은 풀 밖의 힙 버퍼로 준다(oversize). 큰 direct 버퍼를 매번 잡고 놓는 비용이 더 크다.
+ *
+ * leakSample 번에 한 번 꺼낸 버퍼는 Cleaner 에 등록해, release 없이 GC 되면 꺼낸 위치와 함께 누수로 보고한다.
+ * 누수된 버퍼는 풀로 돌아오지 않을 뿐 메모리는 GC 가 회수한다.
+ */
+public class BufferPool {
+    private static final int[] SIZE_CLASSES = {256, 1024, 4096, 16384, 65536};
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final SizeClass[] classes = new SizeClass[SIZE_CLASSES.length];
+    private final boolean enabled;
+    private final int leakSample;
+    private final AtomicInteger acquisitions = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder oversize = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    /**
+     * @param enabled    false 면 풀 없이 매번 힙 버퍼를 만든다(비교용)
+     * @param maxBytes   등급별 빈 목록이 붙잡아 둘 수 있는 direct 메모리 합계
+     * @param leakSample N 번에 한 번 누수 추적 (0 이면 끔, 1 이면 전부)
+     */
+    public BufferPool(boolean enabled, long maxBytes, int leakSample) {
+        this.enabled = enabled;
+        this.leakSample = leakSample;
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            int maxIdle = (int) Math.min(Integer.MAX_VALUE, maxBytes / SIZE_CLASSES.length / SIZE_CLASSES[i]);
+            classes[i] = new SizeClass(SIZE_CLASSES[i], maxIdle);
+        }
+    }
+
+    /**
+     * capacity 바이트 이상 들어가는 버퍼를 참조 1 로 꺼낸다. buffer() 는 position 0, limit capacity 이다.
+     */
+    public PooledBuffer acquire(int capacity) {
+        SizeClass sizeClass = enabled ? sizeClassFor(capacity) : null;
+        ByteBuffer buffer;
+        if (sizeClass == null) {
+            oversize.increment();
+            buffer = ByteBuffer.allocate(capacity);
+        } else {
+            buffer = sizeClass.free.poll();
+            if (buffer != null) {
+                sizeClass.idle.decrementAndGet();
+                hits.increment();
+            } else {
+                misses.increment();
+                buffer = ByteBuffer.allocateDirect(sizeClass.size);
+            }
+            buffer.clear().limit(capacity);
+        }
+        outstanding.incrementAndGet();
+
+        PooledBuffer pooled = new PooledBuffer(this, buffer, sizeClass);
+        if (leakSample > 0 && acquisitions.incrementAndGet() % leakSample == 0) {
+            pooled.trackLeak(CLEANER, new LeakReport(this, new Throwable("Buffer acquired here")));
+        }
+        return pooled;
+    }
+
+    void recycle(ByteBuffer buffer, SizeClass sizeClass) {
+        released.increment();
+        outstanding.decrementAndGet();
+        if (sizeClass != null && sizeClass.idle.incrementAndGet() <= sizeClass.maxIdle) {
+            sizeClass.free.offer(buffer);
+        } else if (sizeClass != null) {
+            sizeClass.idle.decrementAndGet();
+        }
+    }
+
+    private SizeClass sizeClassFor(int capacity) {
+        for (SizeClass sizeClass : classes) {
+            if (capacity <= sizeClass.size) return sizeClass;
+        }
+        return null;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long oversize() {
+        return oversize.sum();
+    }
+
+    public long released() {
+        return released.sum();
+    }
+
+    public long outstanding() {
+        return outstanding.get();
+    }
+
+    public long leaks() {
+        return leaks.get();
+    }
+
+    public long idleBytes() {
+        long bytes = 0;
+        for (SizeClass sizeClass : classes) {
+            bytes += (long) sizeClass.idle.get() * sizeClass.size;
+        }
+        return bytes;
+    }
+
+    public String stats() {
+        return "hits=" + hits() + ", misses=" + misses() + ", oversize=" + oversize()
+            + ", outstanding=" + outstanding() + ", idleBytes=" + idleBytes() + ", leaks=" + leaks();
+    }
+
+    static final class SizeClass {
+        final int size;
+        final int maxIdle;
+        final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+        final AtomicInteger idle = new AtomicInteger();
+
+        SizeClass(int size, int maxIdle) {
+            this.size = size;
+            this.maxIdle = maxIdle;
+        }
+    }
+
+    /**
+     * PooledBuffer 가 수거되거나 release 될 때 한 번 실행된다. release 됐으면 아무것도 하지 않는다.
+     * PooledBuffer 를 참조하면 수거되지 않으므로 풀과 위치만 쥔다.
+     */
+    static final class LeakReport implements Runnable {
+        private final BufferPool pool;
+        private final Throwable site;
+        volatile boolean released;
+
+        LeakReport(BufferPool pool, Throwable site) {
+            this.pool = pool;
+            this.site = site;
+        }
+
+        @Override
+        public void run() {
+            if (released) return;
+            pool.outstanding.decrementAndGet();
+            if (pool.leaks.incrementAndGet() <= 10) {
+                AsyncLog.error("LEAK: pooled buffer was garbage-collected without release()", site);
+            }
+        }
+    }
+}
@@ -0,0 +1,501 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 브라우저 없이 ChatServer 에 수천 개의 WebSocket 클라이언트를 붙이는 부하 생성기.
+ *
+ * 클라이언트마다 /websocket?room=... 으로 실제 핸드셰이크를 하고, 보내는 클라이언트는 rate 개/초 간격으로
+ * size 바이트 채팅 메시지를 보낸다. 메시지 content 에 보낸 시각(System.nanoTime)을 넣어 두고
+ * 같은 방의 다른 클라이언트가 받았을 때 빼서 송신→수신 지연을 잰다. 같은 JVM 의 시계라 보정이 필요 없다.
+ * 커넥션은 event-loops 개의 Selector 스레드가 나눠 맡는다.
+ *
+ * 방 배치: uniform 은 클라이언트를 방에 고르게, zipf 는 방 번호 r 에 1/(r+1) 비율로 몰아 넣는다(핫 룸 재현).
+ * 결과는 콘솔에 출력하고 --report 가 있으면 같은 내용을 파일로도 쓴다.
+ *
+ * java ChatLoadGenerator --port=8080 --clients=2000 --rooms=20 --layout=zipf --senders=0.1 --rate=2
+ *     --size=256 --ramp=500 --warmup=5 --duration=30 --report=load-report.txt
+ */
+public class ChatLoadGenerator {
+    private static final byte[] MARKER = "lg:".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_HANDSHAKE_SIZE = 8192;
+
+    private String host = "127.0.0.1";
+    private int port = 8080;
+    private int clients = 1000;
+    private int rooms = 10;
+    private String layout = "uniform";
+    private double senders = 1.0;
+    private double rate = 1.0;
+    private int size = 128;
+    private int ramp = 1000;
+    private int warmupSeconds = 5;
+    private int durationSeconds = 30;
+    private int eventLoops = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private String report;
+
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private volatile boolean measuring;
+
+    public static void main(String[] args) throws Exception {
+        ChatLoadGenerator generator = new ChatLoadGenerator();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) continue;
+            generator.option(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        generator.run();
+    }
+
+    private void option(String name, String value) {
+        switch (name) {
+            case "host": host = value; break;
+            case "port": port = Integer.parseInt(value); break;
+            case "clients": clients = Integer.parseInt(value); break;
+            case "rooms": rooms = Integer.parseInt(value); break;
+            case "layout": layout = value; break;
+            case "senders": senders = Double.parseDouble(value); break;
+            case "rate": rate = Double.parseDouble(value); break;
+            case "size": size = Integer.parseInt(value); break;
+            case "ramp": ramp = Integer.parseInt(value); break;
+            case "warmup": warmupSeconds = Integer.parseInt(value); break;
+            case "duration": durationSeconds = Integer.parseInt(value); break;
+            case "event-loops": eventLoops = Integer.parseInt(value); break;
+            case "report": report = value; break;
+            default: throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+    private void run() throws Exception {
+        if (!"uniform".equals(layout) && !"zipf".equals(layout)) {
+            throw new IllegalArgumentException("layout must be uniform or zipf");
+        }
+        String[] roomOf = assignRooms();
+
+        Loop[] loops = new Loop[eventLoops];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new Loop("load-loop-" + i);
+            loops[i].start();
+        }
+
+        // ramp 개/초 속도로 연결을 연다. 연결 완료와 핸드셰이크는 각 루프가 비동기로 처리한다.
+        long rampStart = System.nanoTime();
+        long senderCount = Math.round(clients * senders);
+        for (int i = 0; i < clients; i++) {
+            long due = rampStart + (long) (i * 1e9 / ramp);
+            long wait = due - System.nanoTime();
+            if (wait > 0) Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            loops[i % loops.length].add(new Client(i, roomOf[i], i < senderCount));
+        }
+        long settleDeadline = System.nanoTime() + 30_000_000_000L;
+        while (connected.get() + failed.get() < clients && System.nanoTime() < settleDeadline) {
+            Thread.sleep(50);
+        }
+        double rampSeconds = (System.nanoTime() - rampStart) / 1e9;
+        System.out.printf("Connected %d/%d clients in %.1fs (%d failed)%n",
+            connected.get(), clients, rampSeconds, failed.get());
+
+        Thread.sleep(warmupSeconds * 1000L);
+        long sentBase = sent.get();
+        long skippedBase = skipped.get();
+        long receivedBase = received.get();
+        long bytesBase = receivedBytes.get();
+        measuring = true;
+        long start = System.nanoTime();
+        Thread.sleep(durationSeconds * 1000L);
+        measuring = false;
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (Loop loop : loops) {
+            loop.shutdown();
+        }
+        writeReport(seconds, rampSeconds, sent.get() - sentBase, skipped.get() - skippedBase,
+            received.get() - receivedBase, receivedBytes.get() - bytesBase);
+    }
+
+    private String[] assignRooms() {
+        String[] roomOf = new String[clients];
+        double[] cumulative = new double[rooms];
+        double total = 0;
+        for (int r = 0; r < rooms; r++) {
+            total += "zipf".equals(layout) ? 1.0 / (r + 1) : 1.0;
+            cumulative[r] = total;
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < clients; i++) {
+            double pick = random.nextDouble() * total;
+            int r = 0;
+            while (r < rooms - 1 && cumulative[r] < pick) r++;
+            roomOf[i] = "load-" + r;
+        }
+        return roomOf;
+    }
+
+    private void writeReport(double seconds, double rampSeconds, long sentCount, long skippedCount,
+                             long receivedCount, long bytes) throws IOException {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "target        ws://%s:%d/websocket%n", host, port));
+        out.append(String.format(Locale.ROOT,
+            "load          clients=%d rooms=%d layout=%s senders=%.2f rate=%.2f/s size=%dB duration=%ds%n",
+            clients, rooms, layout, senders, rate, size, durationSeconds));
+        out.append(String.format(Locale.ROOT, "connections   ok=%d failed=%d closed-during-run=%d ramp=%.1fs%n",
+            connected.get(), failed.get(), closed.get(), rampSeconds));
+        out.append(percentiles("connect ms   ", connectTime));
+        out.append(String.format(Locale.ROOT, "sent          %d msgs (%.0f/s), %d skipped for backpressure%n",
+            sentCount, sentCount / seconds, skippedCount));
+        out.append(String.format(Locale.ROOT, "received      %d msgs (%.0f/s), %.1f MB/s%n",
+            receivedCount, receivedCount / seconds, bytes / seconds / (1024 * 1024)));
+        out.append(percentiles("latency ms   ", latency));
+
+        System.out.print(out);
+        if (report != null) {
+            Files.write(Paths.get(report), out.toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Report written to " + report);
+        }
+    }
+
+    private static String percentiles(String label, LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "%s p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f (n=%d)%n", label,
+            histogram.percentile(0.5) / 1e6, histogram.percentile(0.9) / 1e6, histogram.percentile(0.99) / 1e6,
+            histogram.percentile(0.999) / 1e6, histogram.max() / 1e6, histogram.count());
+    }
+
+    /**
+     * 클라이언트 하나. 소유한 Loop 스레드에서만 건드린다.
+     */
+    private final class Client {
+        final int id;
+        final String room;
+        final boolean sender;
+        SocketChannel channel;
+        SelectionKey key;
+        long connectStart;
+        boolean open;
+        long nextSend;
+        ByteBuffer inbound = ByteBuffer.allocate(16384);
+        ByteBuffer outbound;
+        final byte[] mask = new byte[4];
+
+        Client(int id, String room, boolean sender) {
+            this.id = id;
+            this.room = room;
+            this.sender = sender;
+            ThreadLocalRandom.current().nextBytes(mask);
+        }
+
+        void connect(Selector selector) throws IOException {
+            connectStart = System.nanoTime();
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (channel.connect(new InetSocketAddress(host, port))) {
+                key = channel.register(selector, SelectionKey.OP_READ, this);
+                sendHandshake();
+            } else {
+                key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            }
+        }
+
+        void finishConnect() throws IOException {
+            channel.finishConnect();
+            key.interestOps(SelectionKey.OP_READ);
+            sendHandshake();
+        }
+
+        private void sendHandshake() throws IOException {
+            byte[] nonce = new byte[16];
+            ThreadLocalRandom.current().nextBytes(nonce);
+            String request = "GET /websocket?room=" + room + " HTTP/1.1\r\n"
+                + "Host: " + host + ":" + port + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(nonce) + "\r\n"
+                + "Sec-WebSocket-Version: 13\r\n\r\n";
+            write(ByteBuffer.wrap(request.getBytes(StandardCharsets.ISO_8859_1)));
+        }
+
+        void read() throws IOException {
+            int read = channel.read(inbound);
+            if (read < 0) {
+                throw new IOException("Connection closed by server");
+            }
+            receivedBytes.addAndGet(read);
+            inbound.flip();
+            try {
+                if (!open && !readHandshake()) return;
+                readFrames();
+            } finally {
+                inbound.compact();
+            }
+        }
+
+        private boolean readHandshake() throws IOException {
+            int end = WebSocketHandshake.indexOfHeaderEnd(inbound);
+            if (end < 0) {
+                if (inbound.remaining() >= MAX_HANDSHAKE_SIZE) throw new IOException("Handshake too large");
+                return false;
+            }
+            ByteBuffer statusLine = inbound.duplicate();
+            statusLine.limit(Math.min(end, inbound.position() + 12));
+            String status = StandardCharsets.ISO_8859_1.decode(statusLine).toString();
+            if (!status.startsWith("HTTP/1.1 101")) {
+                throw new IOException("Handshake rejected: " + status);
+            }
+            inbound.position(end + 4);
+            open = true;
+            connectTime.record(System.nanoTime() - connectStart);
+            connected.incrementAndGet();
+            // 보내는 클라이언트끼리 보내는 시각이 겹치지 않게 첫 전송을 간격 안에서 흩는다
+            nextSend = System.nanoTime() + (long) (ThreadLocalRandom.current().nextDouble() * intervalNanos());
+            return true;
+        }
+
+        // 서버 프레임은 마스킹되지 않고 조각나지 않는다
+        private void readFrames() {
+            while (inbound.remaining() >= 2) {
+                int start = inbound.position();
+                int opcode = inbound.get(start) & 0x0F;
+                int length = inbound.get(start + 1) & 0x7F;
+                int headerLength = 2;
+                if (length == 126) {
+                    if (inbound.remaining() < 4) return;
+                    length = inbound.getShort(start + 2) & 0xFFFF;
+                    headerLength = 4;
+                } else if (length == 127) {
+                    if (inbound.remaining() < 10) return;
+                    length = (int) inbound.getLong(start + 2);
+                    headerLength = 10;
+                }
+                if (inbound.remaining() < headerLength + length) {
+                    if (headerLength + length > inbound.capacity()) {
+                        ByteBuffer larger = ByteBuffer.allocate(headerLength + length);
+                        larger.put(inbound);
+                        larger.flip();
+                        inbound = larger;
+                    }
+                    return;
+                }
+                if (opcode == OutboundFrame.OPCODE_TEXT) {
+                    onText(start + headerLength, start + headerLength + length);
+                }
+                inbound.position(start + headerLength + length);
+            }
+        }
+
+        private void onText(int from, int to) {
+            int marker = indexOf(inbound, MARKER, from, to);
+            if (marker < 0) return;
+            long sentNanos = 0;
+            for (int i = marker + MARKER.length; i < to; i++) {
+                byte b = inbound.get(i);
+                if (b < '0' || b > '9') break;
+                sentNanos = sentNanos * 10 + (b - '0');
+            }
+            if (measuring) {
+                received.incrementAndGet();
+                latency.record(System.nanoTime() - sentNanos);
+            }
+        }
+
+        void maybeSend(long now) throws IOException {
+            if (!open || !sender || now < nextSend) return;
+            nextSend += intervalNanos();
+            if (nextSend < now) {
+                nextSend = now + intervalNanos();
+            }
+            if (outbound != null) {
+                skipped.incrementAndGet();
+                return;
+            }
+            write(textFrame(now));
+            sent.incrementAndGet();
+        }
+
+        private ByteBuffer textFrame(long now) {
+            byte[] json = message(now);
+            int headerLength = json.length < 126 ? 2 : json.length < 65536 ? 4 : 10;
+            ByteBuffer frame = ByteBuffer.allocate(headerLength + 4 + json.length);
+            frame.put((byte) 0x81);
+            if (json.length < 126) {
+                frame.put((byte) (0x80 | json.length));
+            } else if (json.length < 65536) {
+                frame.put((byte) (0x80 | 126)).putShort((short) json.length);
+            } else {
+                frame.put((byte) (0x80 | 127)).putLong(json.length);
+            }
+            frame.put(mask);
+            for (int i = 0; i < json.length; i++) {
+                frame.put((byte) (json[i] ^ mask[i & 3]));
+            }
+            frame.flip();
+            return frame;
+        }
+
+        private byte[] message(long now) {
+            StringBuilder json = new StringBuilder(size + 16)
+                .append("{\"type\":\"message\",\"username\":\"lg-").append(id)
+                .append("\",\"content\":\"lg:").append(now).append(':');
+            while (json.length() < size - 2) {
+                json.append('x');
+            }
+            return json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                outbound = buffer;
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        void flush() throws IOException {
+            channel.write(outbound);
+            if (!outbound.hasRemaining()) {
+                outbound = null;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 닫는 중
+            }
+        }
+    }
+
+    private long intervalNanos() {
+        return (long) (1e9 / rate);
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] pattern, int from, int to) {
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int k = 0; k < pattern.length; k++) {
+                if (buffer.get(i + k) != pattern[k]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Selector 하나로 맡은 클라이언트들의 연결, 읽기, 주기적 전송을 처리한다.
+     */
+    private final class Loop extends Thread {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Client> pending = new ConcurrentLinkedQueue<>();
+        private final List<Client> clientsOfLoop = new ArrayList<>();
+        private volatile boolean running = true;
+
+        Loop(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            this.selector = Selector.open();
+        }
+
+        void add(Client client) {
+            pending.add(client);
+            selector.wakeup();
+        }
+
+        void shutdown() throws InterruptedException {
+            running = false;
+            selector.wakeup();
+            join(5000);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(1);
+                    Client client;
+                    while ((client = pending.poll()) != null) {
+                        try {
+                            client.connect(selector);
+                            clientsOfLoop.add(client);
+                        } catch (IOException e) {
+                            fail(client, e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Client owner = (Client) key.attachment();
+                        try {
+                            if (key.isConnectable()) owner.finishConnect();
+                            if (key.isValid() && key.isReadable()) owner.read();
+                            if (key.isValid() && key.isWritable()) owner.flush();
+                        } catch (IOException e) {
+                            fail(owner, e);
+                        }
+                    }
+
+                    long now = System.nanoTime();
+                    for (Iterator<Client> it = clientsOfLoop.iterator(); it.hasNext(); ) {
+                        Client c = it.next();
+                        if (!c.channel.isOpen()) {
+                            it.remove();
+                            continue;
+                        }
+                        try {
+                            c.maybeSend(now);
+                        } catch (IOException e) {
+                            fail(c, e);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Load loop error: " + e.getMessage());
+            } finally {
+                for (Client c : clientsOfLoop) {
+                    c.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // 종료 중
+                }
+            }
+        }
+
+        private void fail(Client client, IOException e) {
+            if (client.open) {
+                closed.incrementAndGet();
+            } else if (failed.incrementAndGet() <= 5) {
+                System.err.println("Client " + client.id + " failed: " + e.getMessage());
+            }
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ChatServer 계측값. 세션과 브로드캐스트 경로가 직접 올리고, MetricsHttpServer 가 Prometheus 텍스트 형식으로 내보낸다.
+ *
+ * 브로드캐스트 지연은 클라이언트 프레임을 다 받은 시점부터 마지막 수신자의 소켓 쓰기가 끝난 시점까지다.
+ * 프레임마다 FanOut 을 붙여 아직 쓰지 않은 수신자 수를 세고, 0 이 되는 순간을 기록한다.
+ * 대기열 정책으로 버려지거나 연결이 끊겨 못 보낸 수신자는 그 시점에 끝난 것으로 센다.
+ */
+public class ChatMetrics {
+    // Prometheus histogram 의 le 경계(초). 세밀한 분위수는 *_quantile_seconds 로 따로 낸다.
+    private static final double[] LATENCY_BUCKETS = {
+        0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5
+    };
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final int[] QUEUE_DEPTH_BUCKETS = { 0, 1, 4, 16, 64, 256, 1024, 4096 };
+
+    private final LatencyHistogram broadcastLatency = new LatencyHistogram();
+    private final LatencyHistogram handshakeTime = new LatencyHistogram();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder framesOut = new LongAdder();
+    private final LongAdder pingsSent = new LongAdder();
+    private final LongAdder clientThrottled = new LongAdder();
+    private final LongAdder roomThrottled = new LongAdder();
+    private final LongAdder rateLimitDisconnects = new LongAdder();
+    private final LongAdder oversizeMessages = new LongAdder();
+    private final LongAdder attachmentsStored = new LongAdder();
+    private final LongAdder attachmentsRejected = new LongAdder();
+    private final LongAdder attachmentTransfers = new LongAdder();
+    private final LongAdder uploadPauses = new LongAdder();
+    private final LongAdder[] evictions = new LongAdder[SessionHeartbeat.Reason.values().length];
+
+    // 1초마다 sample() 이 계산하는 초당 처리량
+    private volatile double messagesInPerSecond;
+    private volatile double framesOutPerSecond;
+    private long lastSampleNanos = System.nanoTime();
+    private long lastMessagesIn;
+    private long lastFramesOut;
+
+    public ChatMetrics() {
+        for (int i = 0; i < evictions.length; i++) {
+            evictions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 브로드캐스트 하나의 남은 수신자 수. 브로드캐스트 스레드가 1 을 쥐고 시작해 순회가 끝나면 놓으므로
+     * 순회 중에 먼저 쓰기를 끝낸 수신자가 있어도 일찍 기록되지 않는다.
+     */
+    public final class FanOut {
+        private final long startNanos;
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        private FanOut(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        void retain() {
+            pending.incrementAndGet();
+        }
+
+        void release() {
+            if (pending.decrementAndGet() == 0) {
+                broadcastLatency.record(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    public FanOut startFanOut(long receivedNanos) {
+        return new FanOut(receivedNanos);
+    }
+
+    public void recordHandshake(long nanos) {
+        handshakeTime.record(nanos);
+    }
+
+    public void bytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void bytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public void messageIn() {
+        messagesIn.increment();
+    }
+
+    public void framesOut(int frames) {
+        framesOut.add(frames);
+    }
+
+    public void pingSent() {
+        pingsSent.increment();
+    }
+
+    public void clientThrottled() {
+        clientThrottled.increment();
+    }
+
+    public void roomThrottled() {
+        roomThrottled.increment();
+    }
+
+    public void rateLimitDisconnect() {
+        rateLimitDisconnects.increment();
+    }
+
+    public void oversizeMessage() {
+        oversizeMessages.increment();
+    }
+
+    public void attachmentStored() {
+        attachmentsStored.increment();
+    }
+
+    public void attachmentRejected() {
+        attachmentsRejected.increment();
+    }
+
+    public void attachmentTransfer() {
+        attachmentTransfers.increment();
+    }
+
+    public void uploadPaused() {
+        uploadPauses.increment();
+    }
+
+    public void evicted(SessionHeartbeat.Reason reason) {
+        evictions[reason.ordinal()].increment();
+    }
+
+    public LatencyHistogram getBroadcastLatency() {
+        return broadcastLatency;
+    }
+
+    synchronized void sample() {
+        long now = System.nanoTime();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        long messages = messagesIn.sum();
+        long frames = framesOut.sum();
+        if (seconds > 0) {
+            messagesInPerSecond = (messages - lastMessagesIn) / seconds;
+            framesOutPerSecond = (frames - lastFramesOut) / seconds;
+        }
+        lastSampleNanos = now;
+        lastMessagesIn = messages;
+        lastFramesOut = frames;
+    }
+
+    /**
+     * Prometheus text exposition format(0.0.4)으로 쓴다.
+     */
+    public void writePrometheus(StringBuilder out, Collection<ChatSession> sessions, int roomCount,
+                                long slowConsumerDisconnects) {
+        writeLatency(out, "chat_broadcast_latency",
+            "Time from receiving a chat frame until the last recipient's write completes", broadcastLatency);
+        writeLatency(out, "chat_handshake",
+            "Time from accepting a connection until the handshake response is written", handshakeTime);
+
+        writeCounter(out, "chat_bytes_received_total", "Bytes read from client sockets", bytesIn.sum());
+        writeCounter(out, "chat_bytes_sent_total", "Bytes written to client sockets", bytesOut.sum());
+        writeCounter(out, "chat_messages_received_total", "Text messages received from clients", messagesIn.sum());
+        writeCounter(out, "chat_frames_sent_total", "Queued frames written to client sockets", framesOut.sum());
+        writeGauge(out, "chat_messages_received_per_second", "Received messages per second over the last second",
+            messagesInPerSecond);
+        writeGauge(out, "chat_frames_sent_per_second", "Sent frames per second over the last second",
+            framesOutPerSecond);
+        writeCounter(out, "chat_slow_consumer_disconnects_total", "Sessions closed by the disconnect policy",
+            slowConsumerDisconnects);
+        header(out, "chat_throttled_messages_total", "Messages dropped by the per-connection or per-room token bucket",
+            "counter");
+        out.append("chat_throttled_messages_total{scope=\"client\"} ").append(clientThrottled.sum()).append('\n');
+        out.append("chat_throttled_messages_total{scope=\"room\"} ").append(roomThrottled.sum()).append('\n');
+        writeCounter(out, "chat_rate_limit_disconnects_total", "Sessions closed by the disconnect rate-limit policy",
+            rateLimitDisconnects.sum());
+        writeCounter(out, "chat_oversize_messages_total", "Connections closed with 1009 for an oversized message",
+            oversizeMessages.sum());
+        header(out, "chat_attachment_uploads_total", "Attachment uploads by result", "counter");
+        out.append("chat_attachment_uploads_total{result=\"stored\"} ").append(attachmentsStored.sum()).append('\n');
+        out.append("chat_attachment_uploads_total{result=\"rejected\"} ").append(attachmentsRejected.sum())
+            .append('\n');
+        writeCounter(out, "chat_attachment_transfers_total", "Attachments sent to sessions with transferTo",
+            attachmentTransfers.sum());
+        writeCounter(out, "chat_upload_pauses_total", "Times a session stopped reading to hold its upload rate",
+            uploadPauses.sum());
+        writeCounter(out, "chat_log_dropped_total", "Log events dropped because the async log ring was full",
+            AsyncLog.get().dropped());
+        writeCounter(out, "chat_pings_sent_total", "Heartbeat pings sent to quiet sessions", pingsSent.sum());
+        header(out, "chat_sessions_evicted_total", "Sessions closed by the handshake, pong or idle timeout",
+            "counter");
+        for (SessionHeartbeat.Reason reason : SessionHeartbeat.Reason.values()) {
+            out.append("chat_sessions_evicted_total{reason=\"").append(reason.name().toLowerCase(Locale.ROOT))
+                .append("\"} ").append(evictions[reason.ordinal()].sum()).append('\n');
+        }
+
+        // 연결마다 라벨을 달면 시계열이 연결 수만큼 늘어나므로 깊이 분포로 낸다
+        long[] depthCounts = new long[QUEUE_DEPTH_BUCKETS.length];
+        long totalDepth = 0;
+        long dropped = 0;
+        int maxDepth = 0;
+        int sessionCount = 0;
+        for (ChatSession session : sessions) {
+            int depth = session.getOutboundQueueDepth();
+            for (int i = 0; i < QUEUE_DEPTH_BUCKETS.length; i++) {
+                if (depth <= QUEUE_DEPTH_BUCKETS[i]) depthCounts[i]++;
+            }
+            totalDepth += depth;
+            maxDepth = Math.max(maxDepth, depth);
+            dropped += session.getDroppedFrames();
+            sessionCount++;
+        }
+        writeGauge(out, "chat_sessions", "Connected WebSocket sessions", sessionCount);
+        writeGauge(out, "chat_rooms", "Rooms with at least one member", roomCount);
+        header(out, "chat_outbound_queue_depth_sessions",
+            "Connections whose outbound queue depth (frames) is at or below le", "gauge");
+        for (int i = 0; i < QUEUE_DEPTH_BUCKETS.length; i++) {
+            out.append("chat_outbound_queue_depth_sessions{le=\"").append(QUEUE_DEPTH_BUCKETS[i]).append("\"} ")
+                .append(depthCounts[i]).append('\n');
+        }
+        out.append("chat_outbound_queue_depth_sessions{le=\"+Inf\"} ").append(sessionCount).append('\n');
+        writeGauge(out, "chat_outbound_queue_depth_total", "Sum of outbound queue depths", totalDepth);
+        writeGauge(out, "chat_outbound_queue_depth_max", "Deepest outbound queue among connections", maxDepth);
+        writeCounter(out, "chat_outbound_dropped_frames_total", "Frames dropped by the slow-consumer policy "
+            + "on connected sessions", dropped);
+    }
+
+    public void writeBufferPool(StringBuilder out, BufferPool pool) {
+        writeCounter(out, "chat_buffer_pool_hits_total", "Buffer acquisitions served from the pool", pool.hits());
+        writeCounter(out, "chat_buffer_pool_misses_total", "Buffer acquisitions that allocated a new direct buffer",
+            pool.misses());
+        writeCounter(out, "chat_buffer_pool_oversize_total", "Acquisitions larger than the biggest size class",
+            pool.oversize());
+        writeCounter(out, "chat_buffer_pool_leaks_total", "Pooled buffers garbage-collected without release",
+            pool.leaks());
+        writeGauge(out, "chat_buffer_pool_outstanding", "Buffers currently acquired and not yet released",
+            pool.outstanding());
+        writeGauge(out, "chat_buffer_pool_idle_bytes", "Direct memory held by the pool free lists",
+            pool.idleBytes());
+    }
+
+    private static void writeLatency(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        String seconds = name + "_seconds";
+        header(out, seconds, help, "histogram");
+        for (double bucket : LATENCY_BUCKETS) {
+            out.append(seconds).append("_bucket{le=\"").append(format(bucket)).append("\"} ")
+                .append(histogram.countAtOrBelow((long) (bucket * 1e9))).append('\n');
+        }
+        long count = histogram.count();
+        out.append(seconds).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+        out.append(seconds).append("_sum ").append(format(histogram.sum() / 1e9)).append('\n');
+        out.append(seconds).append("_count ").append(count).append('\n');
+
+        String quantile = name + "_quantile_seconds";
+        header(out, quantile, help + " (HDR percentile since start)", "gauge");
+        for (double q : QUANTILES) {
+            out.append(quantile).append("{quantile=\"").append(format(q)).append("\"} ")
+                .append(format(histogram.percentile(q) / 1e9)).append('\n');
+        }
+        out.append(quantile).append("{quantile=\"1\"} ").append(format(histogram.max() / 1e9)).append('\n');
+    }
+
+    private static void writeCounter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeGauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.9g", value).replaceAll("0+$", "").replaceAll("\\.$", "");
+    }
+}
@@ -2,29 +2,176 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 
 public class ChatServer {
-    private static final int PORT = 8080;
-    private static final String WEBSOCKET_MAGIC = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
-    private Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
-    private ExecutorService executor = Executors.newCachedThreadPool();
+    private static final int DEFLATE_POOL_MAX_IDLE = 256;
+    private static final int INBOUND_BUFFER_SIZE = 16384;
+    private static final int TIMER_TICK_MILLIS = 100;
+    private static final int TIMER_WHEEL_SIZE = 512;
+    // DM/시스템 프레임은 클라이언트가 보낸 본문에 JSON 봉투(type, from, timestamp ...)를 붙이므로 그만큼 더 허용한다
+    private static final int CLUSTER_ENVELOPE_SLACK = 4096;
+    private static final ThreadLocal<JsonReader> JSON_READER = ThreadLocal.withInitial(JsonReader::new);
+
+    private final ChatServerConfig config;
+    private Set<ChatSession> clients = ConcurrentHashMap.newKeySet();
+    private ExecutorService executor;
+    private final RoomRegistry rooms;
+    private final UserDirectory users = new UserDirectory();
+    private final AtomicLong slowConsumerDisconnects = new AtomicLong();
+    private final DeflatePool deflatePool;
+    private final HistoryLog history;
+    private final ClusterBus cluster;
+    private final ChatMetrics metrics = new ChatMetrics();
+    private final BufferPool bufferPool;
+    private final AttachmentStore attachments;
+    // --tls-keystore 를 주면 wss:// 로만 받는다
+    private final SSLContext tlsContext;
+    // {"type":"file"} 로 선언하고 바이너리 메시지를 받는 중인 업로드. 세션마다 하나.
+    private final ConcurrentHashMap<ChatSession, AttachmentStore.Upload> uploads = new ConcurrentHashMap<>();
+    // 모든 세션의 핸드셰이크/하트비트/유휴 타임아웃을 스레드 하나로 돌린다
+    private final HashedWheelTimer timer = new HashedWheelTimer("chat-timer", TIMER_TICK_MILLIS, TIMER_WHEEL_SIZE);
+
+    public ChatServer(ChatServerConfig config) {
+        this.config = config;
+        AsyncLog.get().setLevel(config.getLogLevel());
+        this.rooms = new RoomRegistry(config.getRoomShards(), config.getRoomRate(), config.getRoomBurst());
+        this.deflatePool = new DeflatePool(config.getDeflateLevel(), DEFLATE_POOL_MAX_IDLE);
+        this.bufferPool = new BufferPool(config.isBufferPool(), config.getBufferPoolMaxBytes(),
+            config.getBufferLeakSample());
+        this.history = config.isHistory() ? openHistory(config) : null;
+        this.attachments = config.getAttachmentMaxSize() > 0 ? openAttachments(config) : null;
+        this.tlsContext = config.isTls() ? openTlsContext(config) : null;
+        this.cluster = config.getClusterPort() > 0
+            ? new ClusterBus(config.getNodeId(), config.getClusterBind(), config.getClusterPort(),
+                config.getClusterPeers(), config.getClusterQueueCapacity(), config.getClusterBatchSize(),
+                config.getMaxMessageSize() + CLUSTER_ENVELOPE_SLACK, this::onClusterMessage)
+            : null;
+    }
+
+    private static HistoryLog openHistory(ChatServerConfig config) {
+        try {
+            HistoryLog log = new HistoryLog(Paths.get(config.getHistoryDir()), config.getHistorySegmentSize(),
+                config.getHistoryMaxSegments(), config.getHistoryReplay(), config.getHistoryReplayMax());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    AsyncLog.error("History close error: %s", e.getMessage());
+                }
+            }, "chat-history-close"));
+            return log;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open chat history in " + config.getHistoryDir(), e);
+        }
+    }
+
+    private static AttachmentStore openAttachments(ChatServerConfig config) {
+        try {
+            return new AttachmentStore(Paths.get(config.getAttachmentDir()), config.getAttachmentMaxSize(),
+                config.getAttachmentMaxFiles());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open attachments in " + config.getAttachmentDir(), e);
+        }
+    }
+
+    private static SSLContext openTlsContext(ChatServerConfig config) {
+        SSLContext context;
+        try {
+            context = TlsChannel.serverContext(Paths.get(config.getTlsKeystore()),
+                config.getTlsKeystorePassword().toCharArray(), config.getTlsKeystoreType(),
+                config.getTlsSessionCacheSize(), config.getTlsSessionTimeoutSeconds());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load TLS keystore " + config.getTlsKeystore(), e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid TLS keystore " + config.getTlsKeystore(), e);
+        }
+        // 잘못된 프로토콜/암호 스위트 이름은 첫 접속이 아니라 시작할 때 드러나게 한다
+        configureEngine(context.createSSLEngine(), config);
+        return context;
+    }
+
+    private static SSLEngine configureEngine(SSLEngine engine, ChatServerConfig config) {
+        engine.setUseClientMode(false);
+        engine.setEnabledProtocols(config.getTlsProtocols().toArray(new String[0]));
+        if (!config.getTlsCiphers().isEmpty()) {
+            engine.setEnabledCipherSuites(config.getTlsCiphers().toArray(new String[0]));
+        }
+        return engine;
+    }
+
+    /**
+     * TLS 를 켰으면 이 연결의 TlsChannel 을 만든다. 꺼져 있으면 null 이고 세션은 소켓을 그대로 쓴다.
+     */
+    TlsChannel newTlsChannel(SocketChannel channel) {
+        return tlsContext != null
+            ? new TlsChannel(channel, configureEngine(tlsContext.createSSLEngine(), config), bufferPool)
+            : null;
+    }
+
+    private String webSocketUrl() {
+        return (tlsContext != null ? "wss" : "ws") + "://localhost:" + config.getPort() + "/websocket";
+    }
 
     public static void main(String[] args) {
-        new ChatServer().start();
+        new ChatServer(ChatServerConfig.fromArgs(args)).start();
     }
 
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Chat Server started on port " + PORT);
-            System.out.println("WebSocket URL: ws://localhost:" + PORT + "/websocket");
+        timer.start();
+        startStatsReporter();
+        if (config.getMetricsPort() > 0) {
+            try {
+                new MetricsHttpServer(config.getMetricsPort(), metrics, this::scrapeMetrics).start();
+            } catch (IOException e) {
+                AsyncLog.error("Metrics server start error: %s", e.getMessage());
+                return;
+            }
+        }
+        if (cluster != null) {
+            try {
+                cluster.start();
+            } catch (IOException e) {
+                AsyncLog.error("Cluster start error: %s", e.getMessage());
+                return;
+            }
+        }
+        if (config.getMode() == ChatServerConfig.Mode.NIO) {
+            startNio();
+        } else {
+            startBlocking();
+        }
+    }
+
+    private void startBlocking() {
+        executor = config.getExecutor() == ChatServerConfig.Executor.VIRTUAL
+            ? VirtualThreads.newVirtualThreadPerTaskExecutor()
+            : Executors.newCachedThreadPool();
+
+        // 블로킹 모드도 채널 기반 소켓을 받아 프레임을 SocketChannel.write 한 번으로 내보낸다.
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(config.getPort()), 1024);
+            AsyncLog.info("Chat Server started on port %d (blocking mode, %s executor)", config.getPort(),
+                config.getExecutor().name().toLowerCase(Locale.ROOT));
+            AsyncLog.info("WebSocket URL: %s", webSocketUrl());
 
             while (true) {
-                Socket clientSocket = serverSocket.accept();
-                executor.submit(new ClientHandler(clientSocket, this));
+                SocketChannel clientChannel = serverChannel.accept();
+                // NIO 모드와 같이 끈다. TLS 핸드셰이크처럼 작은 쓰기가 이어지면 Nagle 이 왕복마다 지연 ACK 를 기다린다.
+                clientChannel.socket().setTcpNoDelay(true);
+                executor.submit(new ClientHandler(clientChannel.socket(), this));
             }
         } catch (IOException e) {
             System.err.println("Server error: " + e.getMessage());
@@ -33,226 +180,987 @@ public class ChatServer {
         }
     }
 
-    public synchronized void addClient(ClientHandler client) {
+    private void startNio() {
+        NioEventLoop[] eventLoops = new NioEventLoop[config.getEventLoopThreads()];
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new NioEventLoop(this, "chat-event-loop-" + i);
+                eventLoops[i].start();
+            }
+
+            serverChannel.bind(new InetSocketAddress(config.getPort()), 1024);
+            AsyncLog.info("Chat Server started on port %d (nio mode, %d event loops)", config.getPort(),
+                eventLoops.length);
+            AsyncLog.info("WebSocket URL: %s", webSocketUrl());
+
+            int next = 0;
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            }
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+        } finally {
+            for (NioEventLoop eventLoop : eventLoops) {
+                if (eventLoop != null) {
+                    eventLoop.shutdown();
+                }
+            }
+        }
+    }
+
+    private void startStatsReporter() {
+        if (config.getStatsIntervalSeconds() <= 0) return;
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            OutboundQueueStats stats = outboundQueueStats();
+            AsyncLog.info("Outbound queues: sessions=%d, rooms=%d, totalDepth=%d, maxDepth=%d, droppedFrames=%d, "
+                + "slowConsumerDisconnects=%d", stats.sessions, rooms.roomCount(), stats.totalDepth, stats.maxDepth,
+                stats.droppedFrames, stats.slowConsumerDisconnects);
+            AsyncLog.info("Buffer pool: %s", bufferPool.stats());
+            if (cluster != null) {
+                AsyncLog.info("Cluster: %s", cluster.stats());
+            }
+        }, config.getStatsIntervalSeconds(), config.getStatsIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    public OutboundQueueStats outboundQueueStats() {
+        OutboundQueueStats stats = new OutboundQueueStats();
+        for (ChatSession client : clients) {
+            int depth = client.getOutboundQueueDepth();
+            stats.sessions++;
+            stats.totalDepth += depth;
+            stats.maxDepth = Math.max(stats.maxDepth, depth);
+            stats.droppedFrames += client.getDroppedFrames();
+        }
+        stats.slowConsumerDisconnects = slowConsumerDisconnects.get();
+        return stats;
+    }
+
+    private String scrapeMetrics() {
+        StringBuilder out = new StringBuilder(8192);
+        metrics.writePrometheus(out, clients, rooms.roomCount(), slowConsumerDisconnects.get());
+        metrics.writeBufferPool(out, bufferPool);
+        return out.toString();
+    }
+
+    ChatMetrics metrics() {
+        return metrics;
+    }
+
+    public static class OutboundQueueStats {
+        public int sessions;
+        public long totalDepth;
+        public int maxDepth;
+        public long droppedFrames;
+        public long slowConsumerDisconnects;
+    }
+
+    OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(config.getOutboundQueueCapacity(), config.getSlowConsumerPolicy());
+    }
+
+    WebSocketFrameDecoder newFrameDecoder(WebSocketFrameDecoder.Listener listener) {
+        WebSocketFrameDecoder decoder = new WebSocketFrameDecoder(listener, config.getMaxMessageSize(), true, bufferPool);
+        // 바이너리 메시지는 첨부 파일이다. 모으지 않고 조각째 파일로 흘려 보낸다.
+        decoder.setBinaryStreaming(attachments != null ? attachments.maxSize() : 0);
+        return decoder;
+    }
+
+    /**
+     * 세션 수신 버퍼. 세션의 읽기 스레드가 더 이상 읽지 않을 때 release 한다.
+     */
+    PooledBuffer acquireInboundBuffer() {
+        PooledBuffer inbound = bufferPool.acquire(INBOUND_BUFFER_SIZE);
+        inbound.buffer().clear();
+        return inbound;
+    }
+
+    /**
+     * 연결을 받자마자 호출한다. 핸드셰이크 타임아웃이 바로 걸리고, 핸드셰이크를 마치면 하트비트로 바뀐다.
+     */
+    SessionHeartbeat startHeartbeat(SessionHeartbeat.Peer peer) {
+        SessionHeartbeat heartbeat = new SessionHeartbeat(timer, peer,
+            TimeUnit.SECONDS.toMillis(config.getPingIntervalSeconds()),
+            TimeUnit.SECONDS.toMillis(config.getPongTimeoutSeconds()),
+            TimeUnit.SECONDS.toMillis(config.getIdleTimeoutSeconds()));
+        heartbeat.start(TimeUnit.SECONDS.toMillis(config.getHandshakeTimeoutSeconds()));
+        return heartbeat;
+    }
+
+    /**
+     * 세션마다 하나씩 만드는 수신 메시지 토큰 버킷. client-rate 가 0 이면 null (제한 없음).
+     */
+    TokenBucket newClientRateLimiter() {
+        return config.getClientRate() > 0 ? new TokenBucket(config.getClientRate(), config.getClientBurst()) : null;
+    }
+
+    /**
+     * 세션마다 하나씩 만드는 업로드 바이트 버킷. upload-rate 가 0 이면 null. 0.25초 분량까지 몰아 받을 수 있다.
+     */
+    TokenBucket newUploadRateLimiter() {
+        long rate = config.getUploadRate();
+        return rate > 0 ? new TokenBucket(rate, (int) Math.min(Integer.MAX_VALUE, Math.max(INBOUND_BUFFER_SIZE, rate / 4)))
+            : null;
+    }
+
+    /**
+     * 업로드 속도 한도로 읽기를 멈춘 NIO 세션을 delayNanos 뒤에 깨운다. resume 은 타이머 스레드에서 불린다.
+     */
+    void resumeReadingLater(HashedWheelTimer.Task resume, long delayNanos) {
+        metrics.uploadPaused();
+        timer.schedule(resume, Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos)));
+    }
+
+    /**
+     * 내려보낼 첨부 파일을 연다. 그 사이 지워졌거나 열 수 없으면 null 이고, 그 수신자에게는 건너뛴다.
+     */
+    FileTransfer openTransfer(AttachmentStore.Attachment attachment) {
+        try {
+            FileTransfer transfer = AttachmentStore.openTransfer(attachment);
+            if (transfer != null) {
+                metrics.attachmentTransfer();
+            }
+            return transfer;
+        } catch (IOException e) {
+            AsyncLog.warn("Attachment open error: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    void protocolError(ChatSession client, WebSocketFrameDecoder.ProtocolException e) {
+        if (e.getCloseCode() == WebSocketFrameDecoder.CLOSE_TOO_BIG) {
+            metrics.oversizeMessage();
+        }
+        AsyncLog.info("Protocol error from %s: %s", client.getUsername(), e.getMessage());
+    }
+
+    void evicted(ChatSession client, SessionHeartbeat.Reason reason) {
+        metrics.evicted(reason);
+        AsyncLog.info("Session evicted: %s (%s timeout)", client.getUsername(),
+            reason.name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 클라이언트의 Sec-WebSocket-Extensions 제안에서 permessage-deflate 를 협상한다. 쓰지 않으면 null.
+     */
+    PerMessageDeflate negotiateDeflate(WebSocketHandshake handshake) {
+        if (!config.isPermessageDeflate()) return null;
+        return PerMessageDeflate.negotiate(handshake.getExtensions(), config, deflatePool);
+    }
+
+    Executor writerExecutor() {
+        return executor;
+    }
+
+    void disconnectSlowConsumer(ChatSession client) {
+        slowConsumerDisconnects.incrementAndGet();
+        AsyncLog.info("Slow consumer disconnected: %s (outbound queue depth %d)", client.getUsername(),
+            client.getOutboundQueueDepth());
+        client.close();
+    }
+
+    // 입장/퇴장 알림은 소켓 쓰기를 동반하므로 모니터(synchronized)를 잡지 않는다.
+    // 가상 스레드가 모니터 안에서 I/O 로 블록되면 캐리어 스레드에 고정(pinning)된다.
+    public void addClient(ChatSession client) {
         clients.add(client);
-        System.out.println("Client connected. Total clients: " + clients.size());
-        broadcastSystemMessage(client.getUsername() + "님이 입장했습니다.");
+        users.register(client);
+        replayHistory(client, client.getRoom(), client.getHistoryCursor());
+        rooms.join(client.getRoom(), client);
+        AsyncLog.info("Client connected to room %s. Total clients: %d", client.getRoom(), clients.size());
+        broadcastSystemMessage(client.getRoom(), client.getUsername() + "님이 입장했습니다.");
     }
 
-    public synchronized void removeClient(ClientHandler client) {
+    public void removeClient(ChatSession client) {
         if (clients.remove(client)) {
-            System.out.println("Client disconnected. Total clients: " + clients.size());
-            broadcastSystemMessage(client.getUsername() + "님이 퇴장했습니다.");
+            rooms.leave(client.getRoom(), client);
+            users.unregister(client);
+            AttachmentStore.Upload upload = uploads.remove(client);
+            if (upload != null) {
+                upload.abort();
+            }
+            AsyncLog.info("Client disconnected. Total clients: %d", clients.size());
+            broadcastSystemMessage(client.getRoom(), client.getUsername() + "님이 퇴장했습니다.");
+        }
+    }
+
+    private enum MessageType { MESSAGE, JOIN, DM, PRESENCE, FILE, FETCH }
+
+    /**
+     * 세션이 보낸 텍스트 메시지 처리. {"type":"join","room":"..."} 는 방 이동 제어 메시지,
+     * {"type":"dm","to":"..."} 는 받는 사람 한 명에게만 보내는 메시지, {"type":"presence","user":"..."} 는 접속 확인,
+     * {"type":"file","name":"...","size":N} 은 바로 뒤 바이너리 메시지를 첨부 파일로 받겠다는 선언,
+     * {"type":"fetch","id":"..."} 는 저장된 첨부 파일 요청이고, 나머지는 보낸 사람이 있는 방에 중계한다.
+     * message 는 디코더의 UTF-8 버퍼이고 이 호출 안에서만 유효하다. 필드는 String 없이 바이트에서 바로 읽는다.
+     */
+    public void handleMessage(ChatSession sender, ByteBuffer message) {
+        long receivedNanos = System.nanoTime();
+        metrics.messageIn();
+        TokenBucket limiter = sender.getRateLimiter();
+        if (limiter != null && !limiter.tryAcquire(receivedNanos)) {
+            throttled(sender);
+            return;
+        }
+        if (AsyncLog.isEnabled(AsyncLog.Level.DEBUG)) {
+            // 버퍼는 이 호출 뒤에 재사용되므로 문자열로 떠 둔다
+            AsyncLog.sampled(AsyncLog.Level.DEBUG, config.getLogSample(), "Received: %s",
+                StandardCharsets.UTF_8.decode(message.duplicate()).toString());
+        }
+
+        try {
+            JsonReader reader = JSON_READER.get().reset(message.duplicate());
+            MessageType type = MessageType.MESSAGE;
+            boolean typeSeen = false;
+            String room = null;
+            String to = null;
+            String user = null;
+            String newUsername = null;
+            String name = null;
+            long size = -1;
+            String id = null;
+            while (reader.nextField()) {
+                if (reader.nameEquals("type")) {
+                    type = messageType(reader);
+                    typeSeen = true;
+                } else if (reader.nameEquals("room") && reader.isString()
+                        && (type == MessageType.JOIN || !typeSeen)) {
+                    room = reader.valueString();
+                } else if (reader.nameEquals("to") && reader.isString()) {
+                    to = reader.valueString();
+                } else if (reader.nameEquals("user") && reader.isString()) {
+                    user = reader.valueString();
+                } else if (reader.nameEquals("username") && reader.isString()
+                        && !reader.valueEquals(sender.getUsername())) {
+                    newUsername = reader.valueString();
+                } else if (reader.nameEquals("name") && reader.isString()) {
+                    name = reader.valueString();
+                } else if (reader.nameEquals("size")) {
+                    size = reader.valueLong(-1);
+                } else if (reader.nameEquals("id") && reader.isString()) {
+                    id = reader.valueString();
+                }
+            }
+
+            if (type == MessageType.JOIN) {
+                changeRoom(sender, room);
+                return;
+            }
+            if (type == MessageType.PRESENCE) {
+                sendPresence(sender, user);
+                return;
+            }
+            if (type == MessageType.FILE) {
+                beginUpload(sender, name, size);
+                return;
+            }
+            if (type == MessageType.FETCH) {
+                sendAttachment(sender, id);
+                return;
+            }
+            if (newUsername != null && !newUsername.isEmpty()) {
+                renameUser(sender, newUsername);
+            }
+
+            if (type == MessageType.DM) {
+                sendDirectMessage(sender, to, message);
+            } else if (rooms.tryBroadcast(sender.getRoom(), receivedNanos)) {
+                broadcastMessage(message, sender, receivedNanos);
+            } else {
+                // 방 한도는 여러 사람이 나눠 쓰므로 보낸 사람을 끊지 않고 메시지만 버린다
+                metrics.roomThrottled();
+            }
+        } catch (Exception e) {
+            AsyncLog.warn("Error processing message: %s", e.getMessage());
+        }
+    }
+
+    // 파싱 전에 버리므로 한도를 넘긴 메시지에는 JSON 을 읽는 비용도 쓰지 않는다
+    private void throttled(ChatSession sender) {
+        metrics.clientThrottled();
+        if (config.getRateLimitPolicy() == ChatServerConfig.RateLimitPolicy.DISCONNECT) {
+            metrics.rateLimitDisconnect();
+            AsyncLog.info("Rate limit exceeded, disconnecting %s", sender.getUsername());
+            sender.close();
+        }
+    }
+
+    private static MessageType messageType(JsonReader reader) {
+        if (reader.valueEquals("join")) return MessageType.JOIN;
+        if (reader.valueEquals("dm")) return MessageType.DM;
+        if (reader.valueEquals("presence")) return MessageType.PRESENCE;
+        if (reader.valueEquals("file")) return MessageType.FILE;
+        if (reader.valueEquals("fetch")) return MessageType.FETCH;
+        return MessageType.MESSAGE;
+    }
+
+    private void renameUser(ChatSession client, String newUsername) {
+        if (!users.rename(client, newUsername)) {
+            client.sendFrame(systemFrame(client.getRoom(), "이미 사용 중인 이름입니다: " + newUsername));
+            return;
+        }
+        if (!clients.contains(client)) {
+            // 이름을 바꾸는 사이 연결이 끊겼다
+            users.unregister(client);
+        }
+    }
+
+    /**
+     * 받는 사람 세션 하나의 대기열에만 넣는다. 기록에는 남기지 않는다.
+     * 이 노드에 없으면 클러스터로 넘기고, 단일 노드면 보낸 사람에게 알린다.
+     */
+    private void sendDirectMessage(ChatSession sender, String to, ByteBuffer message) {
+        ChatSession recipient = users.find(to);
+        if (recipient == null && cluster == null) {
+            sender.sendFrame(systemFrame(sender.getRoom(), to == null
+                ? "받는 사람(to)이 없습니다." : to + "님은 접속해 있지 않습니다."));
+            return;
+        }
+
+        OutboundFrame frame = OutboundFrame.of(OutboundFrame.OPCODE_TEXT, message, bufferPool);
+        try {
+            if (recipient != null) {
+                recipient.sendFrame(frame);
+            } else {
+                cluster.publish(ClusterBus.TYPE_DIRECT, to, frame.payload());
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void beginUpload(ChatSession sender, String name, long size) {
+        if (attachments == null) {
+            sender.sendFrame(systemFrame(sender.getRoom(), "파일 전송을 쓰지 않는 서버입니다."));
+            return;
+        }
+        if (name == null || name.isEmpty() || size <= 0 || size > attachments.maxSize()) {
+            metrics.attachmentRejected();
+            sender.sendFrame(systemFrame(sender.getRoom(),
+                "파일 이름이 있어야 하고 크기는 1~" + attachments.maxSize() + " 바이트여야 합니다."));
+            return;
+        }
+
+        AttachmentStore.Upload upload;
+        try {
+            upload = attachments.begin(name, size);
+        } catch (IOException e) {
+            AsyncLog.warn("Attachment upload error: %s", e.getMessage());
+            sender.sendFrame(systemFrame(sender.getRoom(), "파일을 받을 수 없습니다."));
+            return;
+        }
+        // 바이너리를 보내기 전에 다시 선언했으면 이전 선언은 버린다.
+        // 조각난 바이너리 메시지 사이에는 텍스트가 끼어들 수 없으므로 받는 중인 업로드가 바뀌지는 않는다.
+        AttachmentStore.Upload previous = uploads.put(sender, upload);
+        if (previous != null) {
+            previous.abort();
+        }
+        if (!clients.contains(sender) && uploads.remove(sender, upload)) {
+            // 선언하는 사이 연결이 끊겼다
+            upload.abort();
+        }
+    }
+
+    /**
+     * 세션의 읽기 스레드가 바이너리 메시지 조각마다 부른다. 조각은 수신 버퍼의 일부라 바로 파일에 쓴다.
+     * 다 받으면 보낸 사람의 방에 알리고 같은 방 참여자에게 파일을 보낸다.
+     */
+    void receiveAttachment(ChatSession sender, ByteBuffer chunk, boolean last) {
+        AttachmentStore.Upload upload = uploads.get(sender);
+        if (upload == null) {
+            if (last) {
+                sender.sendFrame(systemFrame(sender.getRoom(),
+                    "바이너리 메시지를 보내기 전에 {\"type\":\"file\"} 로 파일 이름과 크기를 알려 주세요."));
+            }
+            return;
+        }
+        try {
+            if (!upload.isAborted() && !upload.write(chunk)) {
+                upload.abort();
+                metrics.attachmentRejected();
+                sender.sendFrame(systemFrame(sender.getRoom(), upload.name() + ": 선언한 크기보다 큽니다."));
+            }
+            if (!last) return;
+
+            uploads.remove(sender, upload);
+            if (upload.isAborted()) return;
+            AttachmentStore.Attachment attachment = upload.complete();
+            if (attachment == null) {
+                metrics.attachmentRejected();
+                sender.sendFrame(systemFrame(sender.getRoom(), upload.name() + ": 선언한 크기만큼 받지 못했습니다."));
+                return;
+            }
+            metrics.attachmentStored();
+            AsyncLog.info("Attachment %s stored: %s (%d bytes) from %s", attachment.id, attachment.name,
+                attachment.size, sender.getUsername());
+            shareAttachment(sender, attachment);
+        } catch (IOException e) {
+            uploads.remove(sender, upload);
+            upload.abort();
+            metrics.attachmentRejected();
+            AsyncLog.warn("Attachment upload error: %s", e.getMessage());
+        }
+    }
+
+    // 알림은 보낸 사람을 포함한 방 전체에, 파일은 나머지 참여자에게 보낸다. 파일 프레임 하나를 모두가 공유하고
+    // 각 수신자의 writer 가 자기 소켓으로 transferTo 한다. 첨부 파일은 노드에만 있으므로 클러스터로는 보내지 않는다.
+    private void shareAttachment(ChatSession sender, AttachmentStore.Attachment attachment) {
+        String room = sender.getRoom();
+        OutboundFrame notice = attachmentFrame(room, sender.getUsername(), attachment);
+        OutboundFrame file = OutboundFrame.attachment(attachment);
+        for (ChatSession client : rooms.members(room)) {
+            client.sendFrame(notice);
+            if (client != sender) {
+                client.sendFrame(file);
+            }
+        }
+    }
+
+    private void sendAttachment(ChatSession client, String id) {
+        AttachmentStore.Attachment attachment = attachments != null ? attachments.find(id) : null;
+        if (attachment == null) {
+            client.sendFrame(systemFrame(client.getRoom(), "없거나 지워진 첨부 파일입니다."));
+            return;
+        }
+        client.sendFrame(attachmentFrame(client.getRoom(), null, attachment));
+        client.sendFrame(OutboundFrame.attachment(attachment));
+    }
+
+    // 바로 뒤에 오는 바이너리 메시지가 어떤 파일인지 알려 준다
+    private static OutboundFrame attachmentFrame(String room, String username, AttachmentStore.Attachment attachment) {
+        JsonWriter json = JsonWriter.local().beginObject()
+            .field("type", "file")
+            .field("room", room)
+            .field("id", attachment.id)
+            .field("name", attachment.name)
+            .field("size", attachment.size);
+        if (username != null) {
+            json.field("username", username);
+        }
+        ByteBuffer payload = json.timestampField("timestamp", System.currentTimeMillis()).endObject().buffer();
+        return OutboundFrame.of(OutboundFrame.OPCODE_TEXT, payload);
+    }
+
+    // 이 노드의 색인만 본다. 클러스터의 다른 노드에 접속한 사용자는 online=false 로 나온다.
+    private void sendPresence(ChatSession client, String user) {
+        ChatSession session = users.find(user);
+        JsonWriter json = JsonWriter.local().beginObject()
+            .field("type", "presence")
+            .field("user", user != null ? user : "")
+            .field("online", session != null);
+        if (session != null) {
+            json.field("room", session.getRoom());
+        }
+        ByteBuffer reply = json.field("users", users.size()).endObject().buffer();
+        client.sendFrame(OutboundFrame.of(OutboundFrame.OPCODE_TEXT, reply));
+    }
+
+    private void changeRoom(ChatSession client, String newRoom) {
+        if (!isValidRoomName(newRoom)) {
+            client.sendFrame(systemFrame(client.getRoom(), "사용할 수 없는 방 이름입니다."));
+            return;
+        }
+
+        String oldRoom = client.getRoom();
+        if (oldRoom.equals(newRoom)) return;
+
+        rooms.leave(oldRoom, client);
+        client.setRoom(newRoom);
+        replayHistory(client, newRoom, -1);
+        rooms.join(newRoom, client);
+        if (!clients.contains(client)) {
+            // 방을 옮기는 사이 연결이 끊겼다
+            rooms.leave(newRoom, client);
+            return;
+        }
+
+        broadcastSystemMessage(oldRoom, client.getUsername() + "님이 퇴장했습니다.");
+        broadcastSystemMessage(newRoom, client.getUsername() + "님이 입장했습니다.");
+    }
+
+    static boolean isValidRoomName(String room) {
+        if (room == null || room.isEmpty() || room.length() > 64) return false;
+        for (int i = 0; i < room.length(); i++) {
+            char c = room.charAt(i);
+            if (c == '"' || c == '\\' || Character.isISOControl(c)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 방 기록을 세션 대기열에 넣고 마지막에 커서를 알려 준다. 방에 들어가기 전에 호출하므로
+     * 재생과 실시간 메시지의 순서가 섞이지 않는다. 대신 그 사이에 도착한 메시지는 받지 못할 수 있다.
+     */
+    private void replayHistory(ChatSession client, String room, long cursor) {
+        if (history == null) return;
+
+        HistoryLog.Replay replay = history.replay(room, cursor);
+        for (OutboundFrame frame : replay.frames) {
+            client.sendFrame(frame);
+        }
+        ByteBuffer json = JsonWriter.local().beginObject()
+            .field("type", "history")
+            .field("room", room)
+            .field("cursor", replay.cursor)
+            .field("replayed", replay.frames.size())
+            .field("truncated", replay.truncated)
+            .endObject()
+            .buffer();
+        client.sendFrame(OutboundFrame.of(OutboundFrame.OPCODE_TEXT, json));
+    }
+
+    // 프레임은 풀 버퍼에 한 번만 인코딩하고 모든 수신자가 같은 읽기 전용 버퍼를 공유한다.
+    // 기록과 클러스터에도 그 프레임의 페이로드를 그대로 넘겨 메시지를 다시 인코딩하지 않는다.
+    // sendFrame 은 대기열에 넣기만 하므로 느린 수신자가 있어도 순차 순회가 막히지 않는다.
+    public void broadcastMessage(ByteBuffer message, ChatSession sender) {
+        broadcastMessage(message, sender, System.nanoTime());
+    }
+
+    private void broadcastMessage(ByteBuffer message, ChatSession sender, long receivedNanos) {
+        String room = sender.getRoom();
+        OutboundFrame frame = OutboundFrame.of(OutboundFrame.OPCODE_TEXT, message, bufferPool);
+        frame.trackFanOut(metrics.startFanOut(receivedNanos));
+        try {
+            appendHistory(room, frame);
+            deliverLocal(room, frame, sender);
+            if (cluster != null) {
+                cluster.publish(ClusterBus.TYPE_CHAT, room, frame.payload());
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    public void broadcastSystemMessage(String room, String message) {
+        OutboundFrame frame = systemFrame(room, message);
+        deliverLocal(room, frame, null);
+        if (cluster != null) {
+            cluster.publish(ClusterBus.TYPE_SYSTEM, room, frame.payload());
+        }
+    }
+
+    // 다른 노드에서 온 메시지는 이 노드의 방 참여자에게만 전달한다. 채팅은 이 노드 기록에도 남긴다.
+    // DM 은 받는 사람이 이 노드에 있을 때만 전달한다.
+    private void onClusterMessage(byte type, String room, ByteBuffer message) {
+        OutboundFrame frame = OutboundFrame.of(OutboundFrame.OPCODE_TEXT, message, bufferPool);
+        try {
+            if (type == ClusterBus.TYPE_DIRECT) {
+                ChatSession recipient = users.find(room);
+                if (recipient != null) {
+                    recipient.sendFrame(frame);
+                }
+                return;
+            }
+            if (type == ClusterBus.TYPE_CHAT) {
+                appendHistory(room, frame);
+            }
+            deliverLocal(room, frame, null);
+        } finally {
+            frame.release();
         }
     }
 
-    public void broadcastMessage(String message, ClientHandler sender) {
-        clients.parallelStream()
-                .filter(client -> client != sender)
-                .forEach(client -> client.sendMessage(message));
+    private void deliverLocal(String room, OutboundFrame frame, ChatSession exclude) {
+        for (ChatSession client : rooms.members(room)) {
+            if (client != exclude) {
+                client.sendFrame(frame);
+            }
+        }
     }
 
-    public void broadcastSystemMessage(String message) {
-        String systemMessage = String.format(
-            "{\"type\":\"system\",\"content\":\"%s\",\"timestamp\":\"%s\"}",
-            message, new Date().toString()
-        );
+    private void appendHistory(String room, OutboundFrame frame) {
+        if (history == null) return;
+        try {
+            history.append(room, frame.payload());
+        } catch (IOException | RuntimeException e) {
+            // 기록 실패가 실시간 전달이나 클러스터 수신 스레드를 멈추게 하지 않는다
+            AsyncLog.error("History append error: %s", e);
+        }
+    }
 
-        clients.parallelStream()
-                .forEach(client -> client.sendMessage(systemMessage));
+    private static OutboundFrame systemFrame(String room, String message) {
+        ByteBuffer json = JsonWriter.local().beginObject()
+            .field("type", "system")
+            .field("room", room)
+            .field("content", message)
+            .timestampField("timestamp", System.currentTimeMillis())
+            .endObject()
+            .buffer();
+        return OutboundFrame.of(OutboundFrame.OPCODE_TEXT, json);
     }
 
-    static class ClientHandler implements Runnable {
+    static class ClientHandler implements Runnable, ChatSession, WebSocketFrameDecoder.Listener,
+            SessionHeartbeat.Peer {
+        private static final int MAX_HANDSHAKE_SIZE = 8192;
+
         private Socket socket;
         private ChatServer server;
-        private PrintWriter out;
-        private BufferedReader in;
-        private String username;
+        private volatile String username;
+        private volatile String room = RoomRegistry.DEFAULT_ROOM;
+        private long historyCursor = -1;
         private boolean isWebSocket = false;
+        private final OutboundQueue outboundQueue;
+        private final AtomicBoolean writerScheduled = new AtomicBoolean();
+        // 읽기 스레드가 보내는 pong/close 와 writer 의 프레임이 섞이지 않게 프레임 단위로 잡는다
+        private final ReentrantLock writeLock = new ReentrantLock();
+        // 풀에서 빌린 direct 버퍼라 SocketChannel.read 가 힙 복사 없이 바로 채운다
+        private final PooledBuffer inboundBuffer;
+        private final ByteBuffer inbound;
+        private final WebSocketFrameDecoder decoder;
+        private PerMessageDeflate deflate;
+        private final long acceptedNanos = System.nanoTime();
+        private final SessionHeartbeat heartbeat;
+        private final TokenBucket rateLimiter;
+        private final TokenBucket uploadLimiter;
+        // 업로드 속도 한도를 넘겨 다음 read 전에 쉬어야 할 시간
+        private long readPauseNanos;
+        // wss 면 소켓 대신 이걸로 읽고 쓴다
+        private final TlsChannel tls;
 
         public ClientHandler(Socket socket, ChatServer server) {
             this.socket = socket;
             this.server = server;
             this.username = "User" + socket.getPort();
+            this.outboundQueue = server.newOutboundQueue();
+            this.rateLimiter = server.newClientRateLimiter();
+            this.uploadLimiter = server.newUploadRateLimiter();
+            this.decoder = server.newFrameDecoder(this);
+            this.inboundBuffer = server.acquireInboundBuffer();
+            this.inbound = inboundBuffer.buffer();
+            inbound.flip();
+            this.tls = server.newTlsChannel(socket.getChannel());
+            this.heartbeat = server.startHeartbeat(this);
         }
 
         @Override
         public void run() {
             try {
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                out = new PrintWriter(socket.getOutputStream(), true);
-
                 if (performWebSocketHandshake()) {
                     server.addClient(this);
                     handleWebSocketCommunication();
                 }
             } catch (IOException e) {
-                System.err.println("Client handler error: " + e.getMessage());
+                AsyncLog.warn("Client handler error: %s", e.getMessage());
             } finally {
                 cleanup();
+                // 수신 버퍼는 읽기 스레드인 여기서만 돌려준다. 다른 스레드의 close() 는 소켓만 닫는다.
+                decoder.release();
+                inboundBuffer.release();
+                if (tls != null) {
+                    tls.release();
+                }
             }
         }
 
         private boolean performWebSocketHandshake() throws IOException {
-            String line;
-            String webSocketKey = null;
-            boolean isWebSocketRequest = false;
-
-            while ((line = in.readLine()) != null && !line.isEmpty()) {
-                System.out.println("Header: " + line);
-
-                if (line.startsWith("GET") && line.contains("/websocket")) {
-                    isWebSocketRequest = true;
-                } else if (line.startsWith("Sec-WebSocket-Key:")) {
-                    webSocketKey = line.split(": ")[1].trim();
+            int headerEnd;
+            while ((headerEnd = WebSocketHandshake.indexOfHeaderEnd(inbound)) < 0) {
+                if (inbound.limit() >= MAX_HANDSHAKE_SIZE || !fill()) {
+                    return false;
                 }
             }
 
-            if (!isWebSocketRequest || webSocketKey == null) {
+            WebSocketHandshake handshake = WebSocketHandshake.parse(inbound, headerEnd);
+            if (!handshake.isValid()) {
+                writeDirect(ByteBuffer.wrap(WebSocketHandshake.badRequestResponse().getBytes(StandardCharsets.ISO_8859_1)));
                 return false;
             }
 
-            String acceptKey = generateWebSocketAcceptKey(webSocketKey);
+            if (isValidRoomName(handshake.getRoom())) {
+                room = handshake.getRoom();
+            }
+            historyCursor = handshake.getSince();
 
-            out.println("HTTP/1.1 101 Switching Protocols");
-            out.println("Upgrade: websocket");
-            out.println("Connection: Upgrade");
-            out.println("Sec-WebSocket-Accept: " + acceptKey);
-            out.println();
-            out.flush();
+            deflate = server.negotiateDeflate(handshake);
+            decoder.setPerMessageDeflate(deflate);
+            String extensions = deflate != null ? deflate.responseHeaderValue() : null;
+            writeDirect(ByteBuffer.wrap(handshake.response(extensions).getBytes(StandardCharsets.ISO_8859_1)));
+            server.metrics().recordHandshake(System.nanoTime() - acceptedNanos);
 
             isWebSocket = true;
-            System.out.println("WebSocket handshake completed for " + username);
+            heartbeat.onHandshakeCompleted();
+            AsyncLog.info("WebSocket handshake completed for %s", username);
             return true;
         }
 
-        private String generateWebSocketAcceptKey(String webSocketKey) {
+        private void handleWebSocketCommunication() throws IOException {
             try {
-                String concat = webSocketKey + WEBSOCKET_MAGIC;
-                MessageDigest md = MessageDigest.getInstance("SHA-1");
-                byte[] hash = md.digest(concat.getBytes(StandardCharsets.UTF_8));
-                return Base64.getEncoder().encodeToString(hash);
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException("SHA-1 algorithm not available", e);
+                // 핸드셰이크와 같은 read 로 들어온 프레임부터 처리한다
+                do {
+                    decoder.decode(inbound);
+                    pauseReading();
+                } while (!socket.isClosed() && fill());
+            } catch (WebSocketFrameDecoder.ProtocolException e) {
+                server.protocolError(this, e);
+                writeDirect(OutboundFrame.close(e.getCloseCode(), e.getMessage()).buffer());
+            } catch (IOException e) {
+                AsyncLog.info("Client disconnected: %s", e.getMessage());
             }
         }
 
-        private void handleWebSocketCommunication() throws IOException {
-            InputStream inputStream = socket.getInputStream();
+        /**
+         * 소켓에서 읽은 바이트를 inbound 뒤에 붙인다. 읽기 모드(position~limit)를 유지한다.
+         */
+        private boolean fill() throws IOException {
+            inbound.compact();
+            try {
+                int read = tls != null ? tls.read(inbound) : socket.getChannel().read(inbound);
+                if (read == -1) {
+                    return false;
+                }
+                server.metrics().bytesIn(read);
+                heartbeat.onRead();
+                return true;
+            } finally {
+                inbound.flip();
+            }
+        }
 
-            while (!socket.isClosed()) {
-                try {
-                    String message = readWebSocketFrame(inputStream);
-                    if (message == null) break;
+        @Override
+        public void onText(ByteBuffer payload) {
+            // 같은 read 로 들어온 나머지 프레임은 처리 도중 연결이 닫혔으면 버린다
+            if (socket.isClosed()) return;
+            heartbeat.onMessage();
+            server.handleMessage(this, payload);
+        }
 
-                    processMessage(message);
-                } catch (IOException e) {
-                    System.out.println("Client disconnected: " + e.getMessage());
-                    break;
-                }
+        @Override
+        public void onBinary(ByteBuffer payload) {
+            // 첨부 파일을 쓰지 않으면 바이너리 메시지는 버린다
+            heartbeat.onMessage();
+        }
+
+        @Override
+        public void onBinaryFragment(ByteBuffer chunk, boolean last) {
+            if (socket.isClosed()) return;
+            heartbeat.onMessage();
+            int length = chunk.remaining();
+            server.receiveAttachment(this, chunk, last);
+            if (uploadLimiter != null && length > 0) {
+                readPauseNanos = Math.max(readPauseNanos, uploadLimiter.acquire(length, System.nanoTime()));
             }
         }
 
-        private String readWebSocketFrame(InputStream inputStream) throws IOException {
-            int firstByte = inputStream.read();
-            if (firstByte == -1) return null;
+        // 업로드 속도 한도를 넘었으면 이 연결의 읽기 스레드만 쉰다. 그동안 TCP 수신 창이 차서 보내는 쪽도 멈춘다.
+        private void pauseReading() {
+            if (readPauseNanos == 0) return;
+            server.metrics().uploadPaused();
+            LockSupport.parkNanos(readPauseNanos);
+            readPauseNanos = 0;
+        }
 
-            boolean fin = (firstByte & 0x80) != 0;
-            int opcode = firstByte & 0x0F;
+        @Override
+        public void onPing(ByteBuffer payload) throws IOException {
+            writeDirect(OutboundFrame.pong(payload).buffer());
+        }
 
-            if (opcode == 0x8) return null;
+        @Override
+        public void onPong(ByteBuffer payload) {
+        }
 
-            int secondByte = inputStream.read();
-            if (secondByte == -1) return null;
+        @Override
+        public void onClose(int code, String reason) throws IOException {
+            writeDirect(OutboundFrame.close(code, "").buffer());
+            socket.close();
+        }
 
-            boolean masked = (secondByte & 0x80) != 0;
-            int payloadLength = secondByte & 0x7F;
+        // 타이머 스레드에서 불린다. 쓰기가 막힐 수 있으므로 writer 실행기로 넘긴다.
+        @Override
+        public void sendPing() {
+            if (socket.isClosed()) return;
+            server.metrics().pingSent();
+            runOnWriter(() -> {
+                try {
+                    writeDirect(SessionHeartbeat.PING.buffer());
+                } catch (IOException e) {
+                    cleanup();
+                }
+            });
+        }
 
-            if (payloadLength == 126) {
-                payloadLength = (inputStream.read() << 8) | inputStream.read();
-            } else if (payloadLength == 127) {
-                return null;
+        @Override
+        public void expire(SessionHeartbeat.Reason reason) {
+            if (socket.isClosed()) return;
+            server.evicted(this, reason);
+            if (reason != SessionHeartbeat.Reason.IDLE) {
+                // 응답 없는 상대에게는 close 프레임도 보내지 않는다. 소켓을 닫으면 읽기 스레드도 깨어난다.
+                cleanup();
+                return;
             }
+            runOnWriter(() -> {
+                try {
+                    writeDirect(OutboundFrame.close(1001, "Idle timeout").buffer());
+                } catch (IOException ignored) {
+                    // 어차피 닫는다
+                }
+                cleanup();
+            });
+        }
 
-            byte[] maskKey = new byte[4];
-            if (masked) {
-                inputStream.read(maskKey);
+        private void runOnWriter(Runnable task) {
+            try {
+                server.writerExecutor().execute(task);
+            } catch (RejectedExecutionException e) {
+                cleanup();
             }
+        }
 
-            byte[] payload = new byte[payloadLength];
-            int totalRead = 0;
-            while (totalRead < payloadLength) {
-                int read = inputStream.read(payload, totalRead, payloadLength - totalRead);
-                if (read == -1) throw new IOException("Unexpected end of stream");
-                totalRead += read;
+        private void writeDirect(ByteBuffer buffer) throws IOException {
+            ByteChannel channel = tls != null ? tls : socket.getChannel();
+            writeLock.lock();
+            try {
+                while (buffer.hasRemaining()) {
+                    server.metrics().bytesOut(channel.write(buffer));
+                }
+            } finally {
+                writeLock.unlock();
             }
+        }
+
+        @Override
+        public void sendFrame(OutboundFrame frame) {
+            if (!isWebSocket || socket.isClosed()) return;
 
-            if (masked) {
-                for (int i = 0; i < payload.length; i++) {
-                    payload[i] ^= maskKey[i % 4];
+            OutboundQueue.OfferResult result = outboundQueue.offer(frame);
+            if (result == OutboundQueue.OfferResult.DISCONNECT) {
+                server.disconnectSlowConsumer(this);
+            } else if (result == OutboundQueue.OfferResult.ACCEPTED) {
+                if (socket.isClosed()) {
+                    // cleanup 의 clear() 와 엇갈렸다. 남은 프레임의 참조를 놓는다.
+                    outboundQueue.clear();
+                    return;
                 }
+                scheduleWriter();
             }
-
-            return new String(payload, StandardCharsets.UTF_8);
         }
 
-        private void processMessage(String message) {
-            System.out.println("Received: " + message);
+        // 대기열에 프레임이 생기면 writer 하나만 실행기에 올린다. 쓰기는 항상 한 스레드만 한다.
+        private void scheduleWriter() {
+            if (writerScheduled.compareAndSet(false, true)) {
+                try {
+                    server.writerExecutor().execute(this::drainOutboundQueue);
+                } catch (RejectedExecutionException e) {
+                    writerScheduled.set(false);
+                }
+            }
+        }
 
+        private void drainOutboundQueue() {
+            boolean failed = false;
             try {
-                if (message.contains("\"username\":")) {
-                    int usernameStart = message.indexOf("\"username\":\"") + 12;
-                    int usernameEnd = message.indexOf("\"", usernameStart);
-                    if (usernameEnd > usernameStart) {
-                        this.username = message.substring(usernameStart, usernameEnd);
+                OutboundFrame frame;
+                while ((frame = outboundQueue.poll()) != null) {
+                    try {
+                        if (frame.attachment() != null) {
+                            writeAttachment(frame.attachment());
+                        } else {
+                            writeDirect(deflate != null ? deflate.encode(frame) : frame.buffer());
+                        }
+                    } finally {
+                        frame.release();
                     }
+                    server.metrics().framesOut(1);
                 }
+            } catch (IOException e) {
+                AsyncLog.warn("Error sending message: %s", e.getMessage());
+                failed = true;
+            } finally {
+                writerScheduled.set(false);
+            }
 
-                server.broadcastMessage(message, this);
-            } catch (Exception e) {
-                System.err.println("Error processing message: " + e.getMessage());
+            if (failed) {
+                cleanup();
+            } else if (!outboundQueue.isEmpty()) {
+                scheduleWriter();
             }
         }
 
-        public void sendMessage(String message) {
-            if (!isWebSocket || socket.isClosed()) return;
-
+        // 조각마다 쓰기 락을 잡았다 놓는다. 조각 사이에 읽기 스레드의 pong/close 가 끼어들 수 있다.
+        // 첨부 파일은 압축하지 않고 보낸다 (permessage-deflate 는 메시지마다 RSV1 로 고를 수 있다).
+        // wss 면 transferTo 가 커널 안에서 넘기지 못하고 작은 버퍼로 읽어 암호화한다.
+        private void writeAttachment(AttachmentStore.Attachment attachment) throws IOException {
+            FileTransfer transfer = server.openTransfer(attachment);
+            if (transfer == null) return;
             try {
-                byte[] payload = message.getBytes(StandardCharsets.UTF_8);
-                OutputStream outputStream = socket.getOutputStream();
-
-                outputStream.write(0x81);
-
-                if (payload.length < 126) {
-                    outputStream.write(payload.length);
-                } else if (payload.length < 65536) {
-                    outputStream.write(126);
-                    outputStream.write((payload.length >> 8) & 0xFF);
-                    outputStream.write(payload.length & 0xFF);
-                } else {
-                    return;
+                ByteChannel channel = tls != null ? tls : socket.getChannel();
+                while (!transfer.isDone()) {
+                    writeLock.lock();
+                    try {
+                        do {
+                            server.metrics().bytesOut(transfer.writeFragment(channel));
+                        } while (transfer.inFragment());
+                    } finally {
+                        writeLock.unlock();
+                    }
                 }
-
-                outputStream.write(payload);
-                outputStream.flush();
-            } catch (IOException e) {
-                System.err.println("Error sending message: " + e.getMessage());
-                cleanup();
+            } finally {
+                transfer.close();
             }
         }
 
+        @Override
+        public int getOutboundQueueDepth() {
+            return outboundQueue.depth();
+        }
+
+        @Override
+        public TokenBucket getRateLimiter() {
+            return rateLimiter;
+        }
+
+        @Override
+        public long getDroppedFrames() {
+            return outboundQueue.droppedFrames();
+        }
+
+        @Override
         public String getUsername() {
             return username;
         }
 
+        @Override
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public String getRoom() {
+            return room;
+        }
+
+        @Override
+        public void setRoom(String room) {
+            this.room = room;
+        }
+
+        @Override
+        public long getHistoryCursor() {
+            return historyCursor;
+        }
+
+        @Override
+        public void close() {
+            cleanup();
+        }
+
         private void cleanup() {
+            heartbeat.stop();
             try {
                 server.removeClient(this);
                 if (socket != null && !socket.isClosed()) {
                     socket.close();
                 }
+                outboundQueue.clear();
+                if (deflate != null) {
+                    deflate.release();
+                }
             } catch (IOException e) {
-                System.err.println("Cleanup error: " + e.getMessage());
+                AsyncLog.warn("Cleanup error: %s", e.getMessage());
             }
         }
     }
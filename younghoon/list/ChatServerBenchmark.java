@@ -0,0 +1,274 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 채팅 서버 핫패스 마이크로벤치마크.
+ *
+ * 외부 라이브러리 없이 FrameCodecBenchmark 와 같은 방식(1초 워밍업 후 정해진 시간 반복)으로 잰다.
+ * 반복마다 걸린 시간을 LatencyHistogram 에 넣어 처리량과 함께 p50/p99 를 출력한다.
+ *
+ * - decode: 마스킹된 클라이언트 프레임을 WebSocketFrameDecoder 로 디코딩
+ * - encode: 서버 프레임 인코딩(OutboundFrame.of)과 공유 압축 프레임 생성(deflated)
+ * - handshake: generateWebSocketAcceptKey, 요청 파싱부터 응답 생성까지
+ * - fan-out: 메모리 안의 세션(송신 대기열만 있는 싱크) N 개에 한 프레임을 브로드캐스트.
+ *   예전 parallelStream() 방식, 지금의 순차 순회, 싱크를 batch 개씩 나눠 스레드 풀에 맡기는 방식을 비교한다.
+ *
+ * java ChatServerBenchmark --seconds=3 --sinks=10,1000,10000 --batch=256
+ */
+public class ChatServerBenchmark {
+    private static final int MESSAGE_SIZE = 96;
+
+    // 결과를 여기 써서 JIT 가 측정 대상 코드를 지우지 못하게 한다
+    private static volatile Object blackhole;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = 3;
+        int[] sinkCounts = {10, 1000, 10000};
+        int batch = 256;
+        for (String arg : args) {
+            if (arg.startsWith("--seconds=")) seconds = Integer.parseInt(arg.substring(10));
+            else if (arg.startsWith("--sinks=")) sinkCounts = Arrays.stream(arg.substring(8).split(","))
+                .mapToInt(Integer::parseInt).toArray();
+            else if (arg.startsWith("--batch=")) batch = Integer.parseInt(arg.substring(8));
+        }
+
+        System.out.printf("%-28s %-12s %14s %12s %12s%n", "case", "variant", "ops/s", "p50 us", "p99 us");
+        benchmarkDecode(seconds);
+        benchmarkEncode(seconds);
+        benchmarkHandshake(seconds);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "fan-out-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int sinks : sinkCounts) {
+                benchmarkFanOut(seconds, sinks, batch, pool);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void benchmarkDecode(int seconds) throws Exception {
+        for (int size : new int[] {64, 4096}) {
+            byte[] input = FrameCodecBenchmark.frames(size, 100, 1);
+            CountingListener listener = new CountingListener();
+            WebSocketFrameDecoder decoder = new WebSocketFrameDecoder(listener, 1 << 20, true);
+            ByteBuffer buffer = ByteBuffer.wrap(input);
+            // 한 반복에 100 개 메시지를 디코딩하므로 ops/s 는 메시지 수로 환산한다
+            run("decode " + size + "B", "decoder", seconds, 100, () -> {
+                buffer.clear();
+                decoder.decode(buffer);
+                return listener.checksum;
+            });
+        }
+    }
+
+    private static void benchmarkEncode(int seconds) throws Exception {
+        byte[] small = message(MESSAGE_SIZE);
+        byte[] large = message(4096);
+        run("encode " + small.length + "B", "of(byte[])", seconds, 1,
+            () -> OutboundFrame.of(OutboundFrame.OPCODE_TEXT, small));
+        ByteBuffer largeBuffer = ByteBuffer.wrap(large);
+        run("encode " + large.length + "B", "of(buffer)", seconds, 1,
+            () -> OutboundFrame.of(OutboundFrame.OPCODE_TEXT, largeBuffer.duplicate()));
+
+        DeflatePool deflatePool = new DeflatePool(-1, 16);
+        run("encode " + large.length + "B", "deflated", seconds, 1,
+            () -> OutboundFrame.of(OutboundFrame.OPCODE_TEXT, large).deflated(deflatePool));
+    }
+
+    private static void benchmarkHandshake(int seconds) throws Exception {
+        String key = "dGhlIHNhbXBsZSBub25jZQ==";
+        run("handshake", "accept-key", seconds, 1, () -> WebSocketHandshake.generateWebSocketAcceptKey(key));
+
+        byte[] request = ("GET /websocket?room=lobby HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Key: " + key + "\r\n"
+            + "Sec-WebSocket-Version: 13\r\n"
+            + "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n"
+            + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        // 헤더 줄 로그는 DEBUG 라 기본 레벨(INFO)에서는 링 버퍼에 들어가지도 않는다
+        run("handshake", "parse+reply", seconds, 1, () -> {
+            ByteBuffer buffer = ByteBuffer.wrap(request);
+            WebSocketHandshake handshake = WebSocketHandshake.parse(buffer,
+                WebSocketHandshake.indexOfHeaderEnd(buffer));
+            return handshake.response(null);
+        });
+    }
+
+    private static void benchmarkFanOut(int seconds, int sinkCount, int batch, ExecutorService pool)
+            throws Exception {
+        List<ChatSession> sinks = new ArrayList<>(sinkCount);
+        for (int i = 0; i < sinkCount; i++) {
+            sinks.add(new QueueSink());
+        }
+        byte[] payload = message(MESSAGE_SIZE);
+        String name = "fan-out " + sinkCount;
+
+        run(name, "parallel", seconds, sinkCount, () -> {
+            OutboundFrame frame = OutboundFrame.of(OutboundFrame.OPCODE_TEXT, payload);
+            sinks.parallelStream().forEach(sink -> sink.sendFrame(frame));
+            return frame;
+        });
+        run(name, "sequential", seconds, sinkCount, () -> {
+            OutboundFrame frame = OutboundFrame.of(OutboundFrame.OPCODE_TEXT, payload);
+            for (ChatSession sink : sinks) {
+                sink.sendFrame(frame);
+            }
+            return frame;
+        });
+        run(name, "batched/" + batch, seconds, sinkCount, () -> {
+            OutboundFrame frame = OutboundFrame.of(OutboundFrame.OPCODE_TEXT, payload);
+            int tasks = (sinkCount + batch - 1) / batch;
+            if (tasks == 1) {
+                for (ChatSession sink : sinks) {
+                    sink.sendFrame(frame);
+                }
+                return frame;
+            }
+            CountDownLatch done = new CountDownLatch(tasks);
+            for (int from = 0; from < sinkCount; from += batch) {
+                List<ChatSession> slice = sinks.subList(from, Math.min(sinkCount, from + batch));
+                pool.execute(() -> {
+                    for (ChatSession sink : slice) {
+                        sink.sendFrame(frame);
+                    }
+                    done.countDown();
+                });
+            }
+            done.await();
+            return frame;
+        });
+    }
+
+    /**
+     * 1초 워밍업 후 seconds 동안 task 를 반복한다. ops/s 는 초당 반복 수에 opsPerIteration 을 곱한 값이다.
+     */
+    private static void run(String name, String variant, int seconds, int opsPerIteration, Task task)
+            throws Exception {
+        long warmupEnd = System.nanoTime() + 1_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            blackhole = task.run();
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        long iterations = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long now = start;
+        while (now < end) {
+            blackhole = task.run();
+            long finished = System.nanoTime();
+            histogram.record(finished - now);
+            now = finished;
+            iterations++;
+        }
+        System.out.printf("%-28s %-12s %14.0f %12.2f %12.2f%n", name, variant,
+            iterations * opsPerIteration * 1e9 / (now - start),
+            histogram.percentile(0.5) / 1e3, histogram.percentile(0.99) / 1e3);
+    }
+
+    private static byte[] message(int size) {
+        Random random = new Random(7);
+        StringBuilder json = new StringBuilder("{\"type\":\"message\",\"username\":\"bench\",\"content\":\"");
+        while (json.length() < size - 2) {
+            json.append(random.nextBoolean() ? "hello " : "world ");
+        }
+        json.setLength(size - 2);
+        return json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private interface Task {
+        Object run() throws Exception;
+    }
+
+    /**
+     * 소켓 없이 실제 세션과 같은 OutboundQueue 에 넣고, writer 가 쓴 것처럼 바로 꺼내 버린다.
+     */
+    private static final class QueueSink implements ChatSession {
+        private final OutboundQueue queue = new OutboundQueue(1024, OutboundQueue.Policy.DROP_OLDEST);
+
+        @Override
+        public void sendFrame(OutboundFrame frame) {
+            queue.offer(frame);
+            OutboundFrame written = queue.poll();
+            if (written != null) {
+                written.release();
+            }
+        }
+
+        @Override
+        public String getUsername() {
+            return "bench";
+        }
+
+        @Override
+        public void setUsername(String username) {
+        }
+
+        @Override
+        public String getRoom() {
+            return RoomRegistry.DEFAULT_ROOM;
+        }
+
+        @Override
+        public void setRoom(String room) {
+        }
+
+        @Override
+        public long getHistoryCursor() {
+            return -1;
+        }
+
+        @Override
+        public int getOutboundQueueDepth() {
+            return queue.depth();
+        }
+
+        @Override
+        public long getDroppedFrames() {
+            return queue.droppedFrames();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class CountingListener implements WebSocketFrameDecoder.Listener {
+        long checksum;
+
+        @Override
+        public void onText(ByteBuffer payload) {
+            checksum += payload.get(payload.limit() - 1);
+        }
+
+        @Override
+        public void onBinary(ByteBuffer payload) {
+        }
+
+        @Override
+        public void onPing(ByteBuffer payload) {
+        }
+
+        @Override
+        public void onPong(ByteBuffer payload) {
+        }
+
+        @Override
+        public void onClose(int code, String reason) {
+        }
+    }
+}
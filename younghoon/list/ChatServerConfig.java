@@ -0,0 +1,375 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * ChatServer 실행 옵션.
+ * 커맨드라인 인자(--port=8080)가 우선이고, 없으면 시스템 프로퍼티(-Dchat.port=8080)를 사용한다.
+ */
+public class ChatServerConfig {
+    public enum Mode { BLOCKING, NIO }
+    public enum Executor { CACHED, VIRTUAL }
+    public enum RateLimitPolicy { DROP, DISCONNECT }
+
+    private int port = 8080;
+    private Mode mode = Mode.BLOCKING;
+    private Executor executor = Executor.CACHED;
+    private int eventLoopThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private int outboundQueueCapacity = 1024;
+    private OutboundQueue.Policy slowConsumerPolicy = OutboundQueue.Policy.DROP_OLDEST;
+    private int statsIntervalSeconds = 0;
+    private int roomShards = 64;
+    private int maxMessageSize = 1 << 20;
+    private boolean permessageDeflate = true;
+    private int deflateLevel = Deflater.DEFAULT_COMPRESSION;
+    private boolean deflateServerContextTakeover = false;
+    private boolean deflateClientContextTakeover = true;
+    private int deflateMinSize = 128;
+    private boolean history = true;
+    private String historyDir;
+    private int historySegmentSize = 16 << 20;
+    private int historyMaxSegments = 8;
+    private int historyReplay = 50;
+    private int historyReplayMax = 500;
+    private String nodeId;
+    private String clusterBind;
+    private int clusterPort = 0;
+    private List<String> clusterPeers = new ArrayList<>();
+    private int clusterQueueCapacity = 65536;
+    private int clusterBatchSize = 256;
+    private int metricsPort = 0;
+    private boolean bufferPool = true;
+    private long bufferPoolMaxBytes = 64L << 20;
+    private int bufferLeakSample = 128;
+    private int handshakeTimeoutSeconds = 10;
+    private int pingIntervalSeconds = 30;
+    private int pongTimeoutSeconds = 10;
+    private int idleTimeoutSeconds = 0;
+    private AsyncLog.Level logLevel = AsyncLog.Level.INFO;
+    private int logSample = 1;
+    private double clientRate = 50;
+    private int clientBurst = 100;
+    private double roomRate = 1000;
+    private int roomBurst = 2000;
+    private RateLimitPolicy rateLimitPolicy = RateLimitPolicy.DROP;
+    private long attachmentMaxSize = 64L << 20;
+    private String attachmentDir;
+    private int attachmentMaxFiles = 256;
+    private long uploadRate = 8L << 20;
+    private String tlsKeystore;
+    private String tlsKeystorePassword = "";
+    private String tlsKeystoreType = "PKCS12";
+    private List<String> tlsProtocols = new ArrayList<>(Arrays.asList("TLSv1.3", "TLSv1.2"));
+    private List<String> tlsCiphers = new ArrayList<>();
+    private int tlsSessionCacheSize = 10000;
+    private int tlsSessionTimeoutSeconds = 3600;
+
+    public static ChatServerConfig fromArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq > 2) {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                options.put(arg.substring(2), "true");
+            }
+        }
+
+        ChatServerConfig config = new ChatServerConfig();
+        config.port = Integer.parseInt(option(options, "port", String.valueOf(config.port)));
+        config.mode = Mode.valueOf(enumName(option(options, "mode", config.mode.name())));
+        config.executor = Executor.valueOf(enumName(option(options, "executor", config.executor.name())));
+        config.eventLoopThreads = Integer.parseInt(
+            option(options, "event-loops", String.valueOf(config.eventLoopThreads)));
+        if (config.eventLoopThreads < 1) {
+            throw new IllegalArgumentException("event-loops must be at least 1");
+        }
+        config.outboundQueueCapacity = Integer.parseInt(
+            option(options, "outbound-queue", String.valueOf(config.outboundQueueCapacity)));
+        if (config.outboundQueueCapacity < 1) {
+            throw new IllegalArgumentException("outbound-queue must be at least 1");
+        }
+        config.slowConsumerPolicy = OutboundQueue.Policy.valueOf(enumName(
+            option(options, "slow-consumer", config.slowConsumerPolicy.name())));
+        config.statsIntervalSeconds = Integer.parseInt(
+            option(options, "stats-interval", String.valueOf(config.statsIntervalSeconds)));
+        config.roomShards = Integer.parseInt(option(options, "room-shards", String.valueOf(config.roomShards)));
+        config.maxMessageSize = Integer.parseInt(
+            option(options, "max-message-size", String.valueOf(config.maxMessageSize)));
+        config.permessageDeflate = Boolean.parseBoolean(
+            option(options, "permessage-deflate", String.valueOf(config.permessageDeflate)));
+        config.deflateLevel = Integer.parseInt(option(options, "deflate-level", String.valueOf(config.deflateLevel)));
+        config.deflateServerContextTakeover = Boolean.parseBoolean(option(options,
+            "deflate-server-context-takeover", String.valueOf(config.deflateServerContextTakeover)));
+        config.deflateClientContextTakeover = Boolean.parseBoolean(option(options,
+            "deflate-client-context-takeover", String.valueOf(config.deflateClientContextTakeover)));
+        config.deflateMinSize = Integer.parseInt(
+            option(options, "deflate-min-size", String.valueOf(config.deflateMinSize)));
+        config.history = Boolean.parseBoolean(option(options, "history", String.valueOf(config.history)));
+        config.historyDir = option(options, "history-dir", null);
+        config.historySegmentSize = Integer.parseInt(
+            option(options, "history-segment-size", String.valueOf(config.historySegmentSize)));
+        config.historyMaxSegments = Integer.parseInt(
+            option(options, "history-max-segments", String.valueOf(config.historyMaxSegments)));
+        if (config.historyMaxSegments < 2) {
+            throw new IllegalArgumentException("history-max-segments must be at least 2");
+        }
+        config.historyReplay = Integer.parseInt(option(options, "history-replay", String.valueOf(config.historyReplay)));
+        config.historyReplayMax = Integer.parseInt(
+            option(options, "history-replay-max", String.valueOf(config.historyReplayMax)));
+        config.nodeId = option(options, "node-id", "node-" + config.port);
+        config.clusterBind = option(options, "cluster-bind", null);
+        config.clusterPort = Integer.parseInt(option(options, "cluster-port", String.valueOf(config.clusterPort)));
+        for (String peer : option(options, "cluster-peers", "").split(",")) {
+            if (!peer.trim().isEmpty()) {
+                config.clusterPeers.add(peer.trim());
+            }
+        }
+        config.clusterQueueCapacity = Integer.parseInt(
+            option(options, "cluster-queue", String.valueOf(config.clusterQueueCapacity)));
+        config.clusterBatchSize = Integer.parseInt(
+            option(options, "cluster-batch", String.valueOf(config.clusterBatchSize)));
+        if (config.clusterBatchSize < 1) {
+            throw new IllegalArgumentException("cluster-batch must be at least 1");
+        }
+        config.metricsPort = Integer.parseInt(option(options, "metrics-port", String.valueOf(config.metricsPort)));
+        config.bufferPool = Boolean.parseBoolean(option(options, "buffer-pool", String.valueOf(config.bufferPool)));
+        config.bufferPoolMaxBytes = Long.parseLong(
+            option(options, "buffer-pool-max-bytes", String.valueOf(config.bufferPoolMaxBytes)));
+        config.bufferLeakSample = Integer.parseInt(
+            option(options, "buffer-leak-sample", String.valueOf(config.bufferLeakSample)));
+        config.handshakeTimeoutSeconds = Integer.parseInt(
+            option(options, "handshake-timeout", String.valueOf(config.handshakeTimeoutSeconds)));
+        config.pingIntervalSeconds = Integer.parseInt(
+            option(options, "ping-interval", String.valueOf(config.pingIntervalSeconds)));
+        config.pongTimeoutSeconds = Integer.parseInt(
+            option(options, "pong-timeout", String.valueOf(config.pongTimeoutSeconds)));
+        if (config.pingIntervalSeconds > 0 && config.pongTimeoutSeconds < 1) {
+            throw new IllegalArgumentException("pong-timeout must be at least 1 when ping-interval is set");
+        }
+        config.idleTimeoutSeconds = Integer.parseInt(
+            option(options, "idle-timeout", String.valueOf(config.idleTimeoutSeconds)));
+        config.logLevel = AsyncLog.Level.valueOf(enumName(option(options, "log-level", config.logLevel.name())));
+        config.logSample = Integer.parseInt(option(options, "log-sample", String.valueOf(config.logSample)));
+        config.clientRate = Double.parseDouble(option(options, "client-rate", String.valueOf(config.clientRate)));
+        config.clientBurst = Integer.parseInt(option(options, "client-burst", String.valueOf(config.clientBurst)));
+        config.roomRate = Double.parseDouble(option(options, "room-rate", String.valueOf(config.roomRate)));
+        config.roomBurst = Integer.parseInt(option(options, "room-burst", String.valueOf(config.roomBurst)));
+        if ((config.clientRate > 0 && config.clientBurst < 1) || (config.roomRate > 0 && config.roomBurst < 1)) {
+            throw new IllegalArgumentException("client-burst and room-burst must be at least 1");
+        }
+        config.rateLimitPolicy = RateLimitPolicy.valueOf(enumName(
+            option(options, "rate-limit", config.rateLimitPolicy.name())));
+        config.attachmentMaxSize = Long.parseLong(
+            option(options, "attachment-max-size", String.valueOf(config.attachmentMaxSize)));
+        config.attachmentDir = option(options, "attachment-dir", null);
+        config.attachmentMaxFiles = Integer.parseInt(
+            option(options, "attachment-max-files", String.valueOf(config.attachmentMaxFiles)));
+        if (config.attachmentMaxSize > 0 && config.attachmentMaxFiles < 1) {
+            throw new IllegalArgumentException("attachment-max-files must be at least 1");
+        }
+        config.uploadRate = Long.parseLong(option(options, "upload-rate", String.valueOf(config.uploadRate)));
+        config.tlsKeystore = option(options, "tls-keystore", null);
+        config.tlsKeystorePassword = option(options, "tls-keystore-password", config.tlsKeystorePassword);
+        config.tlsKeystoreType = option(options, "tls-keystore-type", config.tlsKeystoreType);
+        String protocols = option(options, "tls-protocols", null);
+        if (protocols != null) {
+            config.tlsProtocols = list(protocols);
+        }
+        config.tlsCiphers = list(option(options, "tls-ciphers", ""));
+        config.tlsSessionCacheSize = Integer.parseInt(
+            option(options, "tls-session-cache", String.valueOf(config.tlsSessionCacheSize)));
+        config.tlsSessionTimeoutSeconds = Integer.parseInt(
+            option(options, "tls-session-timeout", String.valueOf(config.tlsSessionTimeoutSeconds)));
+        return config;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            value = System.getProperty("chat." + name);
+        }
+        return value != null ? value : defaultValue;
+    }
+
+    // 콤마로 구분한 옵션 값. 빈 항목은 건너뛴다.
+    private static List<String> list(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    // "drop-oldest" 같은 옵션 값을 enum 상수 이름(DROP_OLDEST)으로 바꾼다.
+    private static String enumName(String value) {
+        return value.replace('-', '_').toUpperCase(Locale.ROOT);
+    }
+
+    public int getPort() { return port; }
+    public ChatServerConfig setPort(int port) { this.port = port; return this; }
+
+    public Mode getMode() { return mode; }
+    public ChatServerConfig setMode(Mode mode) { this.mode = mode; return this; }
+
+    public Executor getExecutor() { return executor; }
+    public ChatServerConfig setExecutor(Executor executor) { this.executor = executor; return this; }
+
+    public int getEventLoopThreads() { return eventLoopThreads; }
+    public ChatServerConfig setEventLoopThreads(int eventLoopThreads) { this.eventLoopThreads = eventLoopThreads; return this; }
+
+    public int getOutboundQueueCapacity() { return outboundQueueCapacity; }
+    public ChatServerConfig setOutboundQueueCapacity(int outboundQueueCapacity) { this.outboundQueueCapacity = outboundQueueCapacity; return this; }
+
+    public OutboundQueue.Policy getSlowConsumerPolicy() { return slowConsumerPolicy; }
+    public ChatServerConfig setSlowConsumerPolicy(OutboundQueue.Policy slowConsumerPolicy) { this.slowConsumerPolicy = slowConsumerPolicy; return this; }
+
+    public int getStatsIntervalSeconds() { return statsIntervalSeconds; }
+    public ChatServerConfig setStatsIntervalSeconds(int statsIntervalSeconds) { this.statsIntervalSeconds = statsIntervalSeconds; return this; }
+
+    public int getRoomShards() { return roomShards; }
+    public ChatServerConfig setRoomShards(int roomShards) { this.roomShards = roomShards; return this; }
+
+    public int getMaxMessageSize() { return maxMessageSize; }
+    public ChatServerConfig setMaxMessageSize(int maxMessageSize) { this.maxMessageSize = maxMessageSize; return this; }
+
+    public boolean isPermessageDeflate() { return permessageDeflate; }
+    public ChatServerConfig setPermessageDeflate(boolean permessageDeflate) { this.permessageDeflate = permessageDeflate; return this; }
+
+    public int getDeflateLevel() { return deflateLevel; }
+    public ChatServerConfig setDeflateLevel(int deflateLevel) { this.deflateLevel = deflateLevel; return this; }
+
+    public boolean isDeflateServerContextTakeover() { return deflateServerContextTakeover; }
+    public ChatServerConfig setDeflateServerContextTakeover(boolean deflateServerContextTakeover) { this.deflateServerContextTakeover = deflateServerContextTakeover; return this; }
+
+    public boolean isDeflateClientContextTakeover() { return deflateClientContextTakeover; }
+    public ChatServerConfig setDeflateClientContextTakeover(boolean deflateClientContextTakeover) { this.deflateClientContextTakeover = deflateClientContextTakeover; return this; }
+
+    public int getDeflateMinSize() { return deflateMinSize; }
+    public ChatServerConfig setDeflateMinSize(int deflateMinSize) { this.deflateMinSize = deflateMinSize; return this; }
+
+    public boolean isHistory() { return history; }
+    public ChatServerConfig setHistory(boolean history) { this.history = history; return this; }
+
+    // 지정하지 않으면 노드별 디렉터리를 써서 같은 호스트의 여러 노드가 세그먼트를 공유하지 않게 한다
+    public String getHistoryDir() { return historyDir != null ? historyDir : "chat-history/" + getNodeId(); }
+    public ChatServerConfig setHistoryDir(String historyDir) { this.historyDir = historyDir; return this; }
+
+    public int getHistorySegmentSize() { return historySegmentSize; }
+    public ChatServerConfig setHistorySegmentSize(int historySegmentSize) { this.historySegmentSize = historySegmentSize; return this; }
+
+    public int getHistoryMaxSegments() { return historyMaxSegments; }
+    public ChatServerConfig setHistoryMaxSegments(int historyMaxSegments) { this.historyMaxSegments = historyMaxSegments; return this; }
+
+    public int getHistoryReplay() { return historyReplay; }
+    public ChatServerConfig setHistoryReplay(int historyReplay) { this.historyReplay = historyReplay; return this; }
+
+    public int getHistoryReplayMax() { return historyReplayMax; }
+    public ChatServerConfig setHistoryReplayMax(int historyReplayMax) { this.historyReplayMax = historyReplayMax; return this; }
+
+    public String getNodeId() { return nodeId != null ? nodeId : "node-" + port; }
+    public ChatServerConfig setNodeId(String nodeId) { this.nodeId = nodeId; return this; }
+
+    public String getClusterBind() { return clusterBind; }
+    public ChatServerConfig setClusterBind(String clusterBind) { this.clusterBind = clusterBind; return this; }
+
+    public int getClusterPort() { return clusterPort; }
+    public ChatServerConfig setClusterPort(int clusterPort) { this.clusterPort = clusterPort; return this; }
+
+    public List<String> getClusterPeers() { return clusterPeers; }
+    public ChatServerConfig setClusterPeers(List<String> clusterPeers) { this.clusterPeers = clusterPeers; return this; }
+
+    public int getClusterQueueCapacity() { return clusterQueueCapacity; }
+    public ChatServerConfig setClusterQueueCapacity(int clusterQueueCapacity) { this.clusterQueueCapacity = clusterQueueCapacity; return this; }
+
+    public int getClusterBatchSize() { return clusterBatchSize; }
+    public ChatServerConfig setClusterBatchSize(int clusterBatchSize) { this.clusterBatchSize = clusterBatchSize; return this; }
+
+    public int getMetricsPort() { return metricsPort; }
+    public ChatServerConfig setMetricsPort(int metricsPort) { this.metricsPort = metricsPort; return this; }
+
+    public boolean isBufferPool() { return bufferPool; }
+    public ChatServerConfig setBufferPool(boolean bufferPool) { this.bufferPool = bufferPool; return this; }
+
+    public long getBufferPoolMaxBytes() { return bufferPoolMaxBytes; }
+    public ChatServerConfig setBufferPoolMaxBytes(long bufferPoolMaxBytes) { this.bufferPoolMaxBytes = bufferPoolMaxBytes; return this; }
+
+    public int getBufferLeakSample() { return bufferLeakSample; }
+    public ChatServerConfig setBufferLeakSample(int bufferLeakSample) { this.bufferLeakSample = bufferLeakSample; return this; }
+
+    public int getHandshakeTimeoutSeconds() { return handshakeTimeoutSeconds; }
+    public ChatServerConfig setHandshakeTimeoutSeconds(int handshakeTimeoutSeconds) { this.handshakeTimeoutSeconds = handshakeTimeoutSeconds; return this; }
+
+    public int getPingIntervalSeconds() { return pingIntervalSeconds; }
+    public ChatServerConfig setPingIntervalSeconds(int pingIntervalSeconds) { this.pingIntervalSeconds = pingIntervalSeconds; return this; }
+
+    public int getPongTimeoutSeconds() { return pongTimeoutSeconds; }
+    public ChatServerConfig setPongTimeoutSeconds(int pongTimeoutSeconds) { this.pongTimeoutSeconds = pongTimeoutSeconds; return this; }
+
+    public int getIdleTimeoutSeconds() { return idleTimeoutSeconds; }
+    public ChatServerConfig setIdleTimeoutSeconds(int idleTimeoutSeconds) { this.idleTimeoutSeconds = idleTimeoutSeconds; return this; }
+
+    public AsyncLog.Level getLogLevel() { return logLevel; }
+    public ChatServerConfig setLogLevel(AsyncLog.Level logLevel) { this.logLevel = logLevel; return this; }
+
+    public int getLogSample() { return logSample; }
+    public ChatServerConfig setLogSample(int logSample) { this.logSample = logSample; return this; }
+
+    public double getClientRate() { return clientRate; }
+    public ChatServerConfig setClientRate(double clientRate) { this.clientRate = clientRate; return this; }
+
+    public int getClientBurst() { return clientBurst; }
+    public ChatServerConfig setClientBurst(int clientBurst) { this.clientBurst = clientBurst; return this; }
+
+    public double getRoomRate() { return roomRate; }
+    public ChatServerConfig setRoomRate(double roomRate) { this.roomRate = roomRate; return this; }
+
+    public int getRoomBurst() { return roomBurst; }
+    public ChatServerConfig setRoomBurst(int roomBurst) { this.roomBurst = roomBurst; return this; }
+
+    public RateLimitPolicy getRateLimitPolicy() { return rateLimitPolicy; }
+    public ChatServerConfig setRateLimitPolicy(RateLimitPolicy rateLimitPolicy) { this.rateLimitPolicy = rateLimitPolicy; return this; }
+
+    public long getAttachmentMaxSize() { return attachmentMaxSize; }
+    public ChatServerConfig setAttachmentMaxSize(long attachmentMaxSize) { this.attachmentMaxSize = attachmentMaxSize; return this; }
+
+    public String getAttachmentDir() { return attachmentDir != null ? attachmentDir : "chat-attachments/" + getNodeId(); }
+    public ChatServerConfig setAttachmentDir(String attachmentDir) { this.attachmentDir = attachmentDir; return this; }
+
+    public int getAttachmentMaxFiles() { return attachmentMaxFiles; }
+    public ChatServerConfig setAttachmentMaxFiles(int attachmentMaxFiles) { this.attachmentMaxFiles = attachmentMaxFiles; return this; }
+
+    public long getUploadRate() { return uploadRate; }
+    public ChatServerConfig setUploadRate(long uploadRate) { this.uploadRate = uploadRate; return this; }
+
+    public boolean isTls() { return tlsKeystore != null; }
+
+    public String getTlsKeystore() { return tlsKeystore; }
+    public ChatServerConfig setTlsKeystore(String tlsKeystore) { this.tlsKeystore = tlsKeystore; return this; }
+
+    public String getTlsKeystorePassword() { return tlsKeystorePassword; }
+    public ChatServerConfig setTlsKeystorePassword(String tlsKeystorePassword) { this.tlsKeystorePassword = tlsKeystorePassword; return this; }
+
+    public String getTlsKeystoreType() { return tlsKeystoreType; }
+    public ChatServerConfig setTlsKeystoreType(String tlsKeystoreType) { this.tlsKeystoreType = tlsKeystoreType; return this; }
+
+    public List<String> getTlsProtocols() { return tlsProtocols; }
+    public ChatServerConfig setTlsProtocols(List<String> tlsProtocols) { this.tlsProtocols = tlsProtocols; return this; }
+
+    // 비어 있으면 JDK 기본 암호 스위트를 쓴다
+    public List<String> getTlsCiphers() { return tlsCiphers; }
+    public ChatServerConfig setTlsCiphers(List<String> tlsCiphers) { this.tlsCiphers = tlsCiphers; return this; }
+
+    public int getTlsSessionCacheSize() { return tlsSessionCacheSize; }
+    public ChatServerConfig setTlsSessionCacheSize(int tlsSessionCacheSize) { this.tlsSessionCacheSize = tlsSessionCacheSize; return this; }
+
+    public int getTlsSessionTimeoutSeconds() { return tlsSessionTimeoutSeconds; }
+    public ChatServerConfig setTlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) { this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds; return this; }
+}
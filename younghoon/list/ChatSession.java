@@ -0,0 +1,40 @@
+/**
+ * 서버에 접속한 WebSocket 세션.
+ * 블로킹 모드의 ChatServer.ClientHandler 와 NIO 모드의 NioClientSession 이 구현한다.
+ */
+public interface ChatSession {
+    String getUsername();
+
+    void setUsername(String username);
+
+    String getRoom();
+
+    void setRoom(String room);
+
+    /**
+     * 접속 시 ?since= 로 받은 채팅 기록 커서. 없으면 -1 이고, 이때는 최근 메시지 N 개를 재생한다.
+     */
+    long getHistoryCursor();
+
+    /**
+     * 프레임을 세션의 송신 대기열에 넣는다. 호출 스레드는 소켓 쓰기를 기다리지 않는다.
+     */
+    void sendFrame(OutboundFrame frame);
+
+    default void sendMessage(String message) {
+        sendFrame(OutboundFrame.text(message));
+    }
+
+    /**
+     * 이 연결이 보내는 메시지의 토큰 버킷. null 이면 제한하지 않는다.
+     */
+    default TokenBucket getRateLimiter() {
+        return null;
+    }
+
+    int getOutboundQueueDepth();
+
+    long getDroppedFrames();
+
+    void close();
+}
@@ -0,0 +1,301 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 여러 ChatServer 노드를 잇는 TCP 메시 버스.
+ *
+ * 노드마다 cluster-port 로 피어의 연결을 받고, 설정된 피어마다 나가는 연결을 하나씩 연다.
+ * 나가는 연결은 보내기 전용, 받은 연결은 읽기 전용이라 한 쌍의 노드 사이에는 방향별로 TCP 연결이 하나씩 있다.
+ * 다른 노드가 보낸 메시지를 다시 전달하지 않으므로 모든 노드가 서로를 피어로 가져야 한다(풀 메시).
+ *
+ * 보낼 메시지는 한 번만 인코딩해 피어별 대기열에 같은 바이트를 넣고, writer 스레드가 대기열에 쌓인 만큼을
+ * 한 배치로 묶어 flush 한 번에 보낸다. 연결이 끊기면 마지막 배치를 재연결 후 다시 보내고,
+ * 받는 쪽은 (origin, 시퀀스) 로 이미 본 메시지를 버린다. origin 은 노드 id 에 시작 시각을 붙여 재시작해도 겹치지 않는다.
+ * 시퀀스를 매기는 것과 피어 대기열에 넣는 것은 한 락 안에서 하므로 대기열에는 시퀀스 순서대로 들어간다.
+ *
+ * 배치 형식: [int 매직][int 메시지 수] 뒤에 메시지마다
+ * [byte 종류][short 길이][origin][long 시퀀스][short 길이][방][int 길이][페이로드] (문자열은 모두 UTF-8)
+ *
+ * 버스에는 인증이 없다. 받는 쪽은 메시지 수가 음수이거나 페이로드 길이가 maxPayload 를 넘으면 프로토콜 오류로 보고
+ * 그 연결을 닫는다. cluster-bind 로 받는 주소를 내부망 인터페이스로 좁힐 수 있다.
+ */
+public class ClusterBus {
+    public static final byte TYPE_CHAT = 1;
+    public static final byte TYPE_SYSTEM = 2;
+    // DM. 방 자리에 받는 사람 이름을 싣고, 그 사용자가 접속한 노드만 전달한다.
+    public static final byte TYPE_DIRECT = 3;
+
+    private static final int MAGIC = 0x43484154;
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    public interface Listener {
+        /**
+         * payload 는 읽기 버퍼의 뷰라 이 호출 안에서만 유효하다.
+         */
+        void onClusterMessage(byte type, String room, ByteBuffer payload);
+    }
+
+    private final String nodeId;
+    private final String origin;
+    // 레코드 안 시퀀스 위치: [byte 종류][short 길이][origin] 다음
+    private final int sequenceOffset;
+    private final String bindAddress;
+    private final int port;
+    private final int maxPayload;
+    private final List<Peer> peers = new ArrayList<>();
+    private final Listener listener;
+    private final int batchSize;
+    // 시퀀스 할당과 대기열 넣기를 묶는다. sequence 는 이 락을 잡고만 바꾼다.
+    private final Object publishLock = new Object();
+    private long sequence;
+    private final Map<String, AtomicLong> lastSeen = new ConcurrentHashMap<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * bindAddress 가 null 이면 모든 인터페이스에서 받는다. maxPayload 는 메시지 하나의 페이로드 상한이다.
+     */
+    public ClusterBus(String nodeId, String bindAddress, int port, List<String> peerAddresses, int queueCapacity,
+                      int batchSize, int maxPayload, Listener listener) {
+        this.nodeId = nodeId;
+        this.origin = nodeId + "-" + Long.toHexString(System.currentTimeMillis());
+        this.sequenceOffset = 1 + 2 + origin.getBytes(StandardCharsets.UTF_8).length;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.maxPayload = maxPayload;
+        this.listener = listener;
+        this.batchSize = batchSize;
+        for (String address : peerAddresses) {
+            int colon = address.lastIndexOf(':');
+            peers.add(new Peer(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)),
+                queueCapacity));
+        }
+    }
+
+    public void start() throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(bindAddress != null ? new InetSocketAddress(bindAddress, port) : new InetSocketAddress(port));
+        startDaemon(() -> acceptLoop(serverSocket), "cluster-acceptor");
+        for (Peer peer : peers) {
+            startDaemon(peer::writeLoop, "cluster-writer-" + peer.host + ":" + peer.port);
+        }
+        AsyncLog.info("Cluster node %s listening on %s:%d, peers %s", nodeId,
+            bindAddress != null ? bindAddress : "*", port, peers.toString());
+    }
+
+    /**
+     * 메시지를 모든 피어 대기열에 넣는다. 피어 대기열이 가득 차면 그 피어에게는 버린다.
+     * 여러 스레드가 동시에 불러도 되고, 인코딩은 락 밖에서 하고 시퀀스만 락 안에서 채운다.
+     */
+    public void publish(byte type, String room, ByteBuffer payload) {
+        if (peers.isEmpty()) return;
+
+        byte[] record = encode(type, origin, 0, room, payload);
+        synchronized (publishLock) {
+            ByteBuffer.wrap(record).putLong(sequenceOffset, ++sequence);
+            for (Peer peer : peers) {
+                if (!peer.queue.offer(record)) {
+                    peer.dropped.incrementAndGet();
+                }
+            }
+        }
+        published.incrementAndGet();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public String stats() {
+        long dropped = 0;
+        int connected = 0;
+        for (Peer peer : peers) {
+            dropped += peer.dropped.get();
+            if (peer.connected) connected++;
+        }
+        return "peers=" + connected + "/" + peers.size() + ", published=" + published.get()
+            + ", received=" + received.get() + ", duplicates=" + duplicates.get()
+            + ", batches=" + batches.get() + ", dropped=" + dropped;
+    }
+
+    private static byte[] encode(byte type, String origin, long sequence, String room, ByteBuffer payload) {
+        byte[] originBytes = origin.getBytes(StandardCharsets.UTF_8);
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + originBytes.length + 8 + 2 + roomBytes.length
+            + 4 + payload.remaining());
+        record.put(type);
+        record.putShort((short) originBytes.length).put(originBytes);
+        record.putLong(sequence);
+        record.putShort((short) roomBytes.length).put(roomBytes);
+        record.putInt(payload.remaining()).put(payload.duplicate());
+        return record.array();
+    }
+
+    private void acceptLoop(ServerSocket serverSocket) {
+        while (true) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                startDaemon(() -> readLoop(socket), "cluster-reader-" + socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                AsyncLog.warn("Cluster accept error: %s", e.getMessage());
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        byte[] payload = new byte[4096];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536))) {
+            while (true) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Bad cluster batch header");
+                }
+                int count = in.readInt();
+                if (count < 0) {
+                    throw new IOException("Bad cluster batch size: " + count);
+                }
+                for (int i = 0; i < count; i++) {
+                    byte type = in.readByte();
+                    String messageOrigin = readString(in, in.readUnsignedShort());
+                    long messageSequence = in.readLong();
+                    String room = readString(in, in.readUnsignedShort());
+                    int length = in.readInt();
+                    if (length < 0 || length > maxPayload) {
+                        throw new IOException("Bad cluster payload length: " + length);
+                    }
+                    if (length > payload.length) {
+                        payload = new byte[Math.max(length, payload.length * 2)];
+                    }
+                    in.readFully(payload, 0, length);
+
+                    if (!firstSeen(messageOrigin, messageSequence)) {
+                        duplicates.incrementAndGet();
+                        continue;
+                    }
+                    received.incrementAndGet();
+                    try {
+                        listener.onClusterMessage(type, room, ByteBuffer.wrap(payload, 0, length));
+                    } catch (RuntimeException e) {
+                        // 메시지 하나를 처리하다 실패해도 이 피어에게서 계속 받는다
+                        AsyncLog.error("Cluster message handling error (type %d, room %s): %s", type, room, e);
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // 피어가 연결을 닫았다
+        } catch (IOException e) {
+            AsyncLog.warn("Cluster read error from %s: %s", socket.getRemoteSocketAddress(), e.getMessage());
+        }
+    }
+
+    private static String readString(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // 보내는 쪽이 시퀀스 순서대로 대기열에 넣고 한 연결로 보내므로 origin 별로 가장 큰 값만 기억하면 된다.
+    // 대기열이 가득 차 버린 메시지는 빈 번호로 남을 뿐 뒤의 메시지를 막지 않는다.
+    private boolean firstSeen(String messageOrigin, long messageSequence) {
+        if (origin.equals(messageOrigin)) return false;
+
+        AtomicLong last = lastSeen.computeIfAbsent(messageOrigin, key -> new AtomicLong());
+        while (true) {
+            long current = last.get();
+            if (messageSequence <= current) return false;
+            if (last.compareAndSet(current, messageSequence)) return true;
+        }
+    }
+
+    private static void startDaemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private final class Peer {
+        final String host;
+        final int port;
+        final BlockingQueue<byte[]> queue;
+        final AtomicLong dropped = new AtomicLong();
+        volatile boolean connected;
+
+        Peer(String host, int port, int queueCapacity) {
+            this.host = host;
+            this.port = port;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        void writeLoop() {
+            List<byte[]> batch = new ArrayList<>(batchSize);
+            while (true) {
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress(host, port), (int) RECONNECT_DELAY_MS);
+                    socket.setTcpNoDelay(true);
+                    connected = true;
+                    AsyncLog.info("Cluster peer connected: %s", toString());
+                    DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream(), 65536));
+
+                    while (true) {
+                        if (batch.isEmpty()) {
+                            batch.add(queue.take());
+                            queue.drainTo(batch, batchSize - 1);
+                        }
+                        out.writeInt(MAGIC);
+                        out.writeInt(batch.size());
+                        for (byte[] record : batch) {
+                            out.write(record);
+                        }
+                        out.flush();
+                        batches.incrementAndGet();
+                        // flush 가 성공한 배치만 비운다. 실패하면 재연결 후 같은 배치를 다시 보낸다.
+                        batch.clear();
+                    }
+                } catch (IOException e) {
+                    if (connected) {
+                        AsyncLog.warn("Cluster peer %s disconnected: %s", toString(), e.getMessage());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    connected = false;
+                }
+
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClusterBus 를 여러 스레드에서 동시에 publish 해도 받는 노드가 메시지를 하나도 잃지 않는지 확인한다.
+ *
+ * 한 JVM 안에 보내는 노드와 받는 노드를 띄우고, threads 개 스레드가 각각 messages 개를 동시에 보낸다.
+ * 피어 대기열은 전부 담을 만큼 크게 잡으므로 버려지는 메시지는 없어야 하고, 받은 메시지가 모자라거나
+ * 중복으로 버려진 메시지가 있으면 실패하고 종료 코드 1 로 끝난다.
+ *
+ * java ClusterBusTest --threads=16 --messages=5000
+ */
+public class ClusterBusTest {
+    public static void main(String[] args) throws Exception {
+        int threads = 16;
+        int messages = 5000;
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) threads = Integer.parseInt(arg.substring(10));
+            else if (arg.startsWith("--messages=")) messages = Integer.parseInt(arg.substring(11));
+        }
+        int total = threads * messages;
+
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        CountDownLatch allReceived = new CountDownLatch(total);
+        int receiverPort = freePort();
+        ClusterBus receiver = new ClusterBus("receiver", "127.0.0.1", receiverPort, Collections.emptyList(),
+            16, 256, 1024, (type, room, payload) -> {
+                if (seen.add(StandardCharsets.UTF_8.decode(payload).toString())) {
+                    allReceived.countDown();
+                }
+            });
+        receiver.start();
+
+        ClusterBus sender = new ClusterBus("sender", "127.0.0.1", freePort(),
+            List.of("127.0.0.1:" + receiverPort), total, 256, 1024, (type, room, payload) -> { });
+        sender.start();
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] publishers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            final int count = messages;
+            publishers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    byte[] payload = (thread + ":" + i).getBytes(StandardCharsets.UTF_8);
+                    sender.publish(ClusterBus.TYPE_CHAT, "lobby", ByteBuffer.wrap(payload));
+                }
+            }, "publisher-" + t);
+            publishers[t].start();
+        }
+        start.countDown();
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+
+        boolean complete = allReceived.await(30, TimeUnit.SECONDS);
+        System.out.println("sender   " + sender.stats());
+        System.out.println("receiver " + receiver.stats());
+        System.out.printf("received %d/%d distinct messages%n", seen.size(), total);
+        if (!complete) {
+            System.out.println("FAIL: messages lost");
+            System.exit(1);
+        }
+        System.out.println("OK");
+        System.exit(0);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
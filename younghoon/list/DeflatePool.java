@@ -0,0 +1,62 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * permessage-deflate 용 raw(nowrap) Deflater/Inflater 풀.
+ *
+ * zlib 스트림은 네이티브 메모리를 잡고 있어 만들고 end() 하는 비용이 크므로 재사용한다.
+ * 돌려받을 때 reset() 하고, 유휴 개수가 maxIdle 을 넘으면 바로 end() 한다.
+ */
+public class DeflatePool {
+    private final int level;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleDeflaters = new AtomicInteger();
+    private final AtomicInteger idleInflaters = new AtomicInteger();
+
+    public DeflatePool(int level, int maxIdle) {
+        this.level = level;
+        this.maxIdle = maxIdle;
+    }
+
+    public Deflater borrowDeflater() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            return new Deflater(level, true);
+        }
+        idleDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    public void release(Deflater deflater) {
+        if (idleDeflaters.incrementAndGet() > maxIdle) {
+            idleDeflaters.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        deflaters.offer(deflater);
+    }
+
+    public Inflater borrowInflater() {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            return new Inflater(true);
+        }
+        idleInflaters.decrementAndGet();
+        return inflater;
+    }
+
+    public void release(Inflater inflater) {
+        if (idleInflaters.incrementAndGet() > maxIdle) {
+            idleInflaters.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        inflaters.offer(inflater);
+    }
+}
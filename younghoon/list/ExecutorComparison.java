@@ -0,0 +1,229 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChatServer 실행기별 처리량/메모리 비교.
+ *
+ * 서버를 자식 JVM 으로 띄우고, 한 스레드짜리 NIO 클라이언트로 N 개 커넥션을 연 뒤
+ * (1) 유휴 커넥션 상태의 서버 RSS 와 스레드 수, (2) 한 명이 M 개 메시지를 보냈을 때의
+ * 브로드캐스트 전달률(deliveries/s)을 측정한다. RSS/스레드 수는 /proc 에서 읽으므로 Linux 전용이다.
+ * 실행기만 비교하도록 자식 서버는 기록, 연결/방 속도 제한, 첨부 파일을 끄고 띄운다.
+ *
+ * java ExecutorComparison --connections=2000 --messages=50 --targets=blocking:cached,blocking:virtual,nio
+ */
+public class ExecutorComparison {
+    private static final int PAYLOAD_SIZE = 64;
+
+    public static void main(String[] args) throws Exception {
+        int connections = 1000;
+        int messages = 50;
+        String targets = "blocking:cached,blocking:virtual,nio";
+        for (String arg : args) {
+            if (arg.startsWith("--connections=")) connections = Integer.parseInt(arg.substring(14));
+            else if (arg.startsWith("--messages=")) messages = Integer.parseInt(arg.substring(11));
+            else if (arg.startsWith("--targets=")) targets = arg.substring(10);
+        }
+
+        System.out.printf("%-18s %11s %8s %9s %9s %14s%n",
+            "target", "connections", "threads", "idle RSS", "busy RSS", "deliveries/s");
+        for (String target : targets.split(",")) {
+            String[] parts = target.split(":");
+            if ("virtual".equals(parts.length > 1 ? parts[1] : "") && !VirtualThreads.isSupported()) {
+                System.out.printf("%-18s skipped: virtual threads require JDK 21+ (running %s)%n",
+                    target, System.getProperty("java.version"));
+                continue;
+            }
+            Result result = run(parts[0], parts.length > 1 ? parts[1] : "cached", connections, messages);
+            System.out.printf("%-18s %11d %8d %7dMB %7dMB %14.0f%n",
+                target, connections, result.threads, result.idleRssKb / 1024, result.busyRssKb / 1024,
+                result.deliveriesPerSecond);
+        }
+    }
+
+    private static Result run(String mode, String executor, int connections, int messages) throws Exception {
+        int port = freePort();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "ChatServer", "--port=" + port, "--mode=" + mode, "--executor=" + executor,
+                "--history=false", "--client-rate=0", "--room-rate=0", "--attachment-max-size=0")
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+
+        Selector selector = Selector.open();
+        List<SocketChannel> channels = new ArrayList<>();
+        AtomicLong receivedBytes = new AtomicLong();
+        Thread reader = null;
+        try {
+            waitForPort(port);
+            for (int i = 0; i < connections; i++) {
+                channels.add(openWebSocket(port));
+            }
+            for (SocketChannel channel : channels) {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ);
+            }
+
+            reader = new Thread(() -> drain(selector, receivedBytes), "comparison-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            waitForQuiet(receivedBytes);
+            Result result = new Result();
+            result.idleRssKb = procStatus(server.pid(), "VmRSS");
+            result.threads = procStatus(server.pid(), "Threads");
+
+            byte[] frame = maskedTextFrame(PAYLOAD_SIZE);
+            long frameBytesOnWire = 2 + PAYLOAD_SIZE;
+            long expected = (long) (connections - 1) * messages * frameBytesOnWire;
+            long baseline = receivedBytes.get();
+            long start = System.nanoTime();
+
+            SocketChannel sender = channels.get(0);
+            for (int i = 0; i < messages; i++) {
+                ByteBuffer buffer = ByteBuffer.wrap(frame);
+                while (buffer.hasRemaining()) {
+                    if (sender.write(buffer) == 0) Thread.yield();
+                }
+            }
+
+            long deadline = start + 60_000_000_000L;
+            while (receivedBytes.get() - baseline < expected && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long delivered = (receivedBytes.get() - baseline) / frameBytesOnWire;
+            result.deliveriesPerSecond = delivered / seconds;
+            result.busyRssKb = procStatus(server.pid(), "VmRSS");
+            return result;
+        } finally {
+            if (reader != null) reader.interrupt();
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+            selector.close();
+            server.destroy();
+            server.waitFor();
+        }
+    }
+
+    private static SocketChannel openWebSocket(int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+        byte[] key = new byte[16];
+        new java.util.Random().nextBytes(key);
+        String request = "GET /websocket HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key) + "\r\n"
+            + "Sec-WebSocket-Version: 13\r\n\r\n";
+        channel.write(ByteBuffer.wrap(request.getBytes(StandardCharsets.ISO_8859_1)));
+
+        // 101 응답 헤더 끝(\r\n\r\n)까지 한 바이트씩 읽어 뒤따르는 프레임을 건드리지 않는다.
+        ByteBuffer one = ByteBuffer.allocate(1);
+        int matched = 0;
+        while (matched < 4) {
+            one.clear();
+            if (channel.read(one) < 0) throw new IOException("Handshake failed");
+            byte b = one.get(0);
+            matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+        return channel;
+    }
+
+    private static byte[] maskedTextFrame(int payloadSize) {
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        byte[] prefix = "{\"type\":\"message\",\"content\":\"".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(prefix, 0, payload, 0, prefix.length);
+        payload[payloadSize - 2] = '"';
+        payload[payloadSize - 1] = '}';
+
+        byte[] mask = {0x12, 0x34, 0x56, 0x78};
+        byte[] frame = new byte[2 + 4 + payloadSize];
+        frame[0] = (byte) 0x81;
+        frame[1] = (byte) (0x80 | payloadSize);
+        System.arraycopy(mask, 0, frame, 2, 4);
+        for (int i = 0; i < payloadSize; i++) {
+            frame[6 + i] = (byte) (payload[i] ^ mask[i % 4]);
+        }
+        return frame;
+    }
+
+    private static void drain(Selector selector, AtomicLong receivedBytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (!Thread.currentThread().isInterrupted() && selector.isOpen()) {
+                selector.select(100);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    int read;
+                    do {
+                        buffer.clear();
+                        read = ((SocketChannel) key.channel()).read(buffer);
+                        if (read > 0) receivedBytes.addAndGet(read);
+                    } while (read > 0);
+                    if (read < 0) key.cancel();
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException | java.nio.channels.ClosedSelectorException e) {
+            // 측정 종료
+        }
+    }
+
+    private static void waitForQuiet(AtomicLong receivedBytes) throws InterruptedException {
+        long last = -1;
+        while (receivedBytes.get() != last) {
+            last = receivedBytes.get();
+            Thread.sleep(500);
+        }
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                SocketChannel.open(new InetSocketAddress("127.0.0.1", port)).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("ChatServer did not start on port " + port);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long procStatus(long pid, String field) throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc/" + pid + "/status"))) {
+            if (line.startsWith(field + ":")) {
+                return Long.parseLong(line.substring(field.length() + 1).trim().split("\\s+")[0]);
+            }
+        }
+        return -1;
+    }
+
+    private static class Result {
+        long idleRssKb;
+        long busyRssKb;
+        long threads;
+        double deliveriesPerSecond;
+    }
+}
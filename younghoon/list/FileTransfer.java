@@ -0,0 +1,90 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 첨부 파일 하나를 WebSocket 바이너리 메시지 하나로 내보내는 전송.
+ *
+ * FRAGMENT_SIZE 바이트씩 조각(FIN 없는 binary, continuation..., FIN continuation)으로 나누고, 조각 헤더만 작은 버퍼로 쓴 뒤
+ * 본문은 FileChannel.transferTo 로 페이지 캐시에서 소켓으로 바로 넘긴다. 파일 내용은 힙에도 풀 버퍼에도 올라오지 않는다.
+ *
+ * 조각 경계에서만 다른 프레임(ping/pong/close)을 끼워 넣을 수 있다. RFC 6455 상 다른 데이터 메시지는 끼워 넣을 수 없으므로
+ * 그 수신자의 채팅 메시지는 이 메시지가 끝난 뒤에 나간다. 논블로킹 채널이면 조각을 덜 쓰고 돌아올 수 있으니 inFragment() 를 보고 이어 쓴다.
+ * 한 번에 한 스레드만 쓴다.
+ */
+final class FileTransfer implements Closeable {
+    static final int FRAGMENT_SIZE = 128 * 1024;
+
+    private final FileChannel file;
+    private final long size;
+    private final ByteBuffer header = ByteBuffer.allocate(OutboundFrame.MAX_HEADER_LENGTH);
+    private long position;
+    private long fragmentEnd;
+    private boolean started;
+
+    FileTransfer(Path path, long size) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = size;
+        header.limit(0);
+    }
+
+    boolean isDone() {
+        return started && !inFragment() && position == size;
+    }
+
+    /**
+     * 조각을 쓰다 만 상태. 이때는 같은 소켓에 다른 프레임을 쓰면 안 된다.
+     */
+    boolean inFragment() {
+        return header.hasRemaining() || position < fragmentEnd;
+    }
+
+    /**
+     * 쓰다 만 조각이 있으면 이어 쓰고, 없으면 다음 조각을 쓴다. 쓴 바이트 수를 돌려준다.
+     * 소켓 송신 버퍼가 차면 조각 중간에 돌아오고 inFragment() 가 true 로 남는다.
+     */
+    long writeFragment(WritableByteChannel channel) throws IOException {
+        if (!inFragment()) {
+            nextFragment();
+        }
+        long written = 0;
+        if (header.hasRemaining()) {
+            written += channel.write(header);
+            if (header.hasRemaining()) {
+                return written;
+            }
+        }
+        while (position < fragmentEnd) {
+            long sent = file.transferTo(position, fragmentEnd - position, channel);
+            if (sent == 0) {
+                if (position >= file.size()) {
+                    throw new IOException("Attachment truncated at " + position + " of " + size + " bytes");
+                }
+                break;
+            }
+            position += sent;
+            written += sent;
+        }
+        return written;
+    }
+
+    private void nextFragment() {
+        long length = Math.min(FRAGMENT_SIZE, size - position);
+        int opcode = started ? WebSocketFrameDecoder.OPCODE_CONTINUATION : OutboundFrame.OPCODE_BINARY;
+        boolean last = position + length == size;
+        header.clear();
+        OutboundFrame.putHeader(header, (last ? OutboundFrame.FIN : 0) | opcode, (int) length);
+        header.flip();
+        fragmentEnd = position + length;
+        started = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * WebSocket 프레임 디코더 처리량 비교.
+ *
+ * 마스킹된 클라이언트 프레임을 미리 만들어 두고, 기존 방식(InputStream 에서 바이트 단위로 읽고
+ * 프레임마다 byte[] 를 만든 뒤 한 바이트씩 마스크를 벗김)과 WebSocketFrameDecoder 로 반복 디코딩해
+ * MB/s, messages/s 를 출력한다. 입력은 read 한 번에 chunk 바이트씩 들어오는 것처럼 잘라서 넣는다.
+ * 기존 방식은 64비트 길이를 못 읽으므로 1MB 케이스는 새 디코더만 잰다.
+ *
+ * java FrameCodecBenchmark --seconds=3 --chunk=16384
+ */
+public class FrameCodecBenchmark {
+    public static void main(String[] args) throws IOException {
+        int seconds = 3;
+        int chunk = 16384;
+        for (String arg : args) {
+            if (arg.startsWith("--seconds=")) seconds = Integer.parseInt(arg.substring(10));
+            else if (arg.startsWith("--chunk=")) chunk = Integer.parseInt(arg.substring(8));
+        }
+
+        System.out.printf("%-24s %-8s %12s %14s%n", "case", "decoder", "MB/s", "messages/s");
+        run("64B x 1000", frames(64, 1000, 1), chunk, seconds, true);
+        run("4KB x 100", frames(4096, 100, 1), chunk, seconds, true);
+        run("60KB x 10", frames(60000, 10, 1), chunk, seconds, true);
+        run("1MB x 2", frames(1 << 20, 2, 1), chunk, seconds, false);
+        run("64KB in 16 fragments", frames(65536, 4, 16), chunk, seconds, false);
+    }
+
+    private static void run(String name, byte[] input, int chunk, int seconds, boolean withLegacy)
+            throws IOException {
+        if (withLegacy) {
+            report(name, "legacy", input.length, measure(seconds, () -> decodeLegacy(input)));
+        }
+        CountingListener listener = new CountingListener();
+        WebSocketFrameDecoder decoder = new WebSocketFrameDecoder(listener, 4 << 20, true);
+        report(name, "decoder", input.length, measure(seconds, () -> decodeChunked(decoder, listener, input, chunk)));
+    }
+
+    private static void report(String name, String decoder, int inputBytes, double[] result) {
+        double iterationsPerSecond = result[0];
+        double messagesPerIteration = result[1];
+        System.out.printf("%-24s %-8s %12.1f %14.0f%n", name, decoder,
+            iterationsPerSecond * inputBytes / (1024 * 1024), iterationsPerSecond * messagesPerIteration);
+    }
+
+    /**
+     * 1초 워밍업 후 seconds 동안 반복한다. [초당 반복 수, 반복당 메시지 수] 를 돌려준다.
+     */
+    private static double[] measure(int seconds, Task task) throws IOException {
+        long warmupEnd = System.nanoTime() + 1_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            task.run();
+        }
+
+        long iterations = 0;
+        long messages = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long now;
+        do {
+            messages = task.run();
+            iterations++;
+            now = System.nanoTime();
+        } while (now < end);
+        return new double[] {iterations * 1e9 / (now - start), messages};
+    }
+
+    private static long decodeChunked(WebSocketFrameDecoder decoder, CountingListener listener,
+                                      byte[] input, int chunk) throws IOException {
+        listener.messages = 0;
+        ByteBuffer buffer = ByteBuffer.wrap(input);
+        for (int position = 0; position < input.length; position += chunk) {
+            buffer.limit(Math.min(input.length, position + chunk));
+            decoder.decode(buffer);
+        }
+        return listener.messages;
+    }
+
+    // 기존 ClientHandler.readWebSocketFrame 과 같은 방식
+    private static long decodeLegacy(byte[] input) throws IOException {
+        InputStream in = new ByteArrayInputStream(input);
+        long messages = 0;
+        long checksum = 0;
+        while (true) {
+            int firstByte = in.read();
+            if (firstByte == -1) break;
+            int secondByte = in.read();
+            int payloadLength = secondByte & 0x7F;
+            if (payloadLength == 126) {
+                payloadLength = (in.read() << 8) | in.read();
+            }
+            byte[] maskKey = new byte[4];
+            in.read(maskKey);
+            byte[] payload = new byte[payloadLength];
+            int totalRead = 0;
+            while (totalRead < payloadLength) {
+                totalRead += in.read(payload, totalRead, payloadLength - totalRead);
+            }
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= maskKey[i % 4];
+            }
+            checksum += payload[payload.length - 1];
+            messages++;
+        }
+        return checksum != Long.MIN_VALUE ? messages : -1;
+    }
+
+    /**
+     * payloadSize 바이트짜리 텍스트 메시지 count 개를, 메시지마다 fragments 개 프레임으로 나눠 마스킹한다.
+     */
+    static byte[] frames(int payloadSize, int count, int fragments) {
+        Random random = new Random(42);
+        byte[] payload = new byte[payloadSize];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) ('a' + random.nextInt(26));
+        }
+
+        int fragmentSize = payloadSize / fragments;
+        ByteBuffer out = ByteBuffer.allocate(count * (payloadSize + fragments * 14));
+        byte[] mask = new byte[4];
+        for (int m = 0; m < count; m++) {
+            for (int f = 0; f < fragments; f++) {
+                int from = f * fragmentSize;
+                int to = f == fragments - 1 ? payloadSize : from + fragmentSize;
+                int length = to - from;
+                boolean fin = f == fragments - 1;
+                int opcode = f == 0 ? WebSocketFrameDecoder.OPCODE_TEXT : WebSocketFrameDecoder.OPCODE_CONTINUATION;
+
+                out.put((byte) ((fin ? 0x80 : 0) | opcode));
+                if (length < 126) {
+                    out.put((byte) (0x80 | length));
+                } else if (length < 65536) {
+                    out.put((byte) (0x80 | 126));
+                    out.putShort((short) length);
+                } else {
+                    out.put((byte) (0x80 | 127));
+                    out.putLong(length);
+                }
+                random.nextBytes(mask);
+                out.put(mask);
+                for (int i = 0; i < length; i++) {
+                    out.put((byte) (payload[from + i] ^ mask[i & 3]));
+                }
+            }
+        }
+
+        byte[] result = new byte[out.position()];
+        out.flip();
+        out.get(result);
+        return result;
+    }
+
+    private interface Task {
+        long run() throws IOException;
+    }
+
+    private static final class CountingListener implements WebSocketFrameDecoder.Listener {
+        long messages;
+        long checksum;
+
+        @Override
+        public void onText(ByteBuffer payload) {
+            messages++;
+            checksum += payload.get(payload.limit() - 1);
+        }
+
+        @Override
+        public void onBinary(ByteBuffer payload) {
+            messages++;
+        }
+
+        @Override
+        public void onPing(ByteBuffer payload) {
+        }
+
+        @Override
+        public void onPong(ByteBuffer payload) {
+        }
+
+        @Override
+        public void onClose(int code, String reason) {
+        }
+    }
+}
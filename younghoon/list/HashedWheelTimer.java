@@ -0,0 +1,162 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 스레드 하나로 도는 해시 휠 타이머.
+ *
+ * tick 마다 바퀴의 칸 하나를 돌며 만료된 작업을 실행한다. 칸은 이중 연결 리스트라 등록/취소/만료가 모두 O(1) 이고,
+ * 바퀴 한 바퀴보다 먼 작업은 남은 바퀴 수(rounds)를 세다가 실행한다. 정밀도는 tick 단위다.
+ *
+ * Task 는 재사용하는 노드다. 세션마다 하나를 만들어 두고 schedule() 로 다시 걸면 되므로 타임아웃마다 객체를 만들지 않는다.
+ * 어느 스레드에서든 schedule/cancel 할 수 있고, 요청은 대기열에 넣었다가 타이머 스레드가 다음 tick 에 칸에 반영한다.
+ * 마지막 schedule/cancel 이 이긴다. 작업은 타이머 스레드에서 실행되므로 I/O 없이 다른 스레드로 넘기기만 해야 한다.
+ */
+public class HashedWheelTimer {
+    // 0 은 "걸려 있지 않음" 표시로 쓴다
+    private static final long DISARMED = 0;
+
+    public abstract static class Task {
+        private final AtomicLong deadline = new AtomicLong(DISARMED);
+        // 아래는 타이머 스레드만 건드린다
+        private Task prev;
+        private Task next;
+        private Bucket bucket;
+        private long rounds;
+
+        /**
+         * 타이머 스레드에서 실행된다. 여기서 자기 자신을 다시 schedule 해도 된다.
+         */
+        protected abstract void run();
+
+        boolean isScheduled() {
+            return deadline.get() != DISARMED;
+        }
+    }
+
+    private static final class Bucket {
+        Task head;
+        Task tail;
+
+        void add(Task task) {
+            task.bucket = this;
+            task.prev = tail;
+            task.next = null;
+            if (tail == null) {
+                head = task;
+            } else {
+                tail.next = task;
+            }
+            tail = task;
+        }
+
+        void remove(Task task) {
+            if (task.prev == null) head = task.next; else task.prev.next = task.next;
+            if (task.next == null) tail = task.prev; else task.next.prev = task.prev;
+            task.prev = null;
+            task.next = null;
+            task.bucket = null;
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Task> changed = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startNanos = System.nanoTime();
+    private long tick;
+    private volatile boolean running = true;
+
+    /**
+     * @param tickMillis tick 간격. 타임아웃은 이 단위로 올림된다.
+     * @param wheelSize  칸 수 (2의 거듭제곱으로 올림)
+     */
+    public HashedWheelTimer(String name, long tickMillis, int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.worker = new Thread(this::workLoop, name);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * delayMillis 뒤에 task 를 실행한다. 이미 걸려 있으면 새 시각으로 옮긴다.
+     */
+    public void schedule(Task task, long delayMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        task.deadline.set(deadline == DISARMED ? 1 : deadline);
+        changed.add(task);
+    }
+
+    public void cancel(Task task) {
+        if (task.deadline.getAndSet(DISARMED) != DISARMED) {
+            changed.add(task);
+        }
+    }
+
+    private void workLoop() {
+        while (running) {
+            long tickDeadline = startNanos + (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = tickDeadline - System.nanoTime()) > 0 && running) {
+                LockSupport.parkNanos(this, sleep);
+            }
+            applyChanges();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    // schedule/cancel 요청을 칸에 반영한다. 같은 작업이 여러 번 들어와 있어도 현재 deadline 기준으로 한 번만 놓인다.
+    private void applyChanges() {
+        Task task;
+        while ((task = changed.poll()) != null) {
+            if (task.bucket != null) {
+                task.bucket.remove(task);
+            }
+            long deadline = task.deadline.get();
+            if (deadline == DISARMED) continue;
+
+            long ticks = Math.max((deadline - startNanos + tickNanos - 1) / tickNanos - 1, tick);
+            task.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(task);
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Task task = bucket.head;
+        while (task != null) {
+            Task next = task.next;
+            if (task.rounds > 0) {
+                task.rounds--;
+            } else {
+                bucket.remove(task);
+                long deadline = task.deadline.get();
+                // 그 사이 다른 스레드가 다시 걸었으면 CAS 가 실패하고, 대기열의 요청이 새 칸에 놓는다
+                if (deadline != DISARMED && task.deadline.compareAndSet(deadline, DISARMED)) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        AsyncLog.error("Timer task error: %s", e, e);
+                    }
+                }
+            }
+            task = next;
+        }
+    }
+}
@@ -0,0 +1,416 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 채팅 메시지 append-only 기록.
+ *
+ * 고정 크기 세그먼트 파일을 MappedByteBuffer 로 매핑해 레코드를 이어 쓰고, 가득 차면 새 세그먼트로 넘어간다.
+ * 레코드: [int 길이][long 시퀀스][short 방 이름 길이][방 이름][메시지] (길이는 자기 자신 4바이트를 뺀 값, 0 이면 끝)
+ *
+ * 방별로 (시퀀스, 세그먼트 위치) 인덱스를 메모리에 두고, 재생할 때는 해당 레코드만 매핑에서 읽어 프레임으로 만든다.
+ * 세그먼트 수가 maxSegments 를 넘으면 가장 오래된 세그먼트를 지우는데, 그 안에서 방별 최근 keepPerRoom 개에
+ * 드는 메시지는 현재 세그먼트로 옮겨 적는다(컴팩션). 그래서 조용한 방도 최근 기록은 남고 디스크 사용량은
+ * 대략 segmentSize * (maxSegments + 1) 을 넘지 않는다.
+ *
+ * 쓰기/읽기는 락 하나로 직렬화한다. 매핑은 페이지 캐시에 쓰므로 세그먼트를 넘길 때와 close() 에서만 force() 한다.
+ */
+public class HistoryLog implements Closeable {
+    private static final int RECORD_HEADER = 4 + 8 + 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final int keepPerRoom;
+    private final int maxReplay;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, RoomIndex> rooms = new HashMap<>();
+    private long nextSequence = 1;
+
+    /**
+     * 재생 결과. cursor 는 재생 시점의 마지막 시퀀스로, 다음 접속 때 ?since= 로 넘기면 그 뒤부터 받는다.
+     */
+    public static class Replay {
+        public final List<OutboundFrame> frames;
+        public final long cursor;
+        public final boolean truncated;
+
+        Replay(List<OutboundFrame> frames, long cursor, boolean truncated) {
+            this.frames = frames;
+            this.cursor = cursor;
+            this.truncated = truncated;
+        }
+    }
+
+    public HistoryLog(Path directory, int segmentSize, int maxSegments, int keepPerRoom, int maxReplay)
+            throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.keepPerRoom = keepPerRoom;
+        this.maxReplay = maxReplay;
+
+        Files.createDirectories(directory);
+        load();
+        if (segments.isEmpty()) {
+            segments.add(Segment.create(directory, 0, segmentSize));
+        }
+        while (segments.size() > maxSegments) {
+            compactOldest(0);
+        }
+    }
+
+    /**
+     * 메시지를 기록하고 시퀀스를 돌려준다. 한 세그먼트에 들어가지 않는 메시지는 기록하지 않고 -1.
+     */
+    public long append(String room, ByteBuffer payload) throws IOException {
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        int recordLength = RECORD_HEADER + roomBytes.length + payload.remaining();
+        if (recordLength > segmentSize) {
+            return -1;
+        }
+
+        lock.lock();
+        try {
+            Segment active = activeSegment();
+            if (active.remaining() < recordLength) {
+                active = rotate(recordLength);
+                if (active.remaining() < recordLength) {
+                    // 컴팩션이 reserve 를 남기므로 오지 않는다. 와도 세그먼트 밖에 쓰지 않게 기록만 건너뛴다.
+                    return -1;
+                }
+            }
+            long sequence = nextSequence++;
+            int offset = active.write(sequence, roomBytes, payload);
+            roomIndex(room).put(sequence, position(active.id, offset));
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * room 의 기록을 프레임으로 만든다. cursor 가 0 이상이면 그 뒤의 메시지를(최대 maxReplay 개, 넘치면 최근 것),
+     * 아니면 최근 keepPerRoom 개를 돌려준다. 페이로드는 레코드 단위로만 힙에 복사한다.
+     */
+    public Replay replay(String room, long cursor) {
+        lock.lock();
+        try {
+            RoomIndex index = rooms.get(room);
+            long lastSequence = nextSequence - 1;
+            if (index == null) {
+                return new Replay(new ArrayList<>(), lastSequence, false);
+            }
+
+            int from;
+            int limit;
+            if (cursor >= 0) {
+                from = index.indexAfter(cursor);
+                limit = maxReplay;
+            } else {
+                from = 0;
+                limit = keepPerRoom;
+            }
+            int end = index.size;
+            boolean truncated = end - from > limit;
+            from = Math.max(from, end - limit);
+
+            List<OutboundFrame> frames = new ArrayList<>(end - from);
+            for (int i = from; i < end; i++) {
+                frames.add(OutboundFrame.of(OutboundFrame.OPCODE_TEXT, readPayload(index.positions[i])));
+            }
+            return new Replay(frames, lastSequence, truncated);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Segment activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private Segment segment(int id) {
+        return segments.get(id - segments.get(0).id);
+    }
+
+    /**
+     * 새 세그먼트로 넘어간다. 컴팩션이 옮겨 적더라도 reserve 바이트(곧 쓸 레코드)는 남겨 둔다.
+     */
+    private Segment rotate(int reserve) throws IOException {
+        Segment previous = activeSegment();
+        previous.map.force();
+        Segment next = Segment.create(directory, previous.id + 1, segmentSize);
+        segments.add(next);
+        if (segments.size() > maxSegments) {
+            compactOldest(reserve);
+        }
+        return next;
+    }
+
+    /**
+     * 가장 오래된 세그먼트에서 방별 최근 keepPerRoom 개에 드는 레코드만 현재 세그먼트로 옮기고 파일을 지운다.
+     * 옮기는 양은 세그먼트 절반까지로 제한해 현재 세그먼트가 컴팩션만으로 차지 않게 하고,
+     * 그 안에서도 reserve 바이트는 이어서 쓸 레코드 몫으로 남긴다.
+     */
+    private void compactOldest(int reserve) throws IOException {
+        Segment oldest = segments.remove(0);
+        Segment active = activeSegment();
+        int budget = Math.min(segmentSize / 2, active.remaining() - reserve);
+
+        ByteBuffer records = oldest.map.duplicate();
+        int offset = 0;
+        while (offset < oldest.writePosition) {
+            int length = records.getInt(offset);
+            long sequence = records.getLong(offset + 4);
+            int roomLength = records.getShort(offset + 12);
+            String room = decode(records, offset + RECORD_HEADER, roomLength);
+            int recordLength = 4 + length;
+
+            RoomIndex index = rooms.get(room);
+            if (index != null && index.isRecent(sequence, position(oldest.id, offset), keepPerRoom)
+                    && recordLength <= budget && recordLength <= active.remaining()) {
+                ByteBuffer record = records.duplicate();
+                record.position(offset).limit(offset + recordLength);
+                int moved = active.writeRecord(record);
+                index.put(sequence, position(active.id, moved));
+                budget -= recordLength;
+            }
+            offset += recordLength;
+        }
+
+        Iterator<RoomIndex> it = rooms.values().iterator();
+        while (it.hasNext()) {
+            RoomIndex index = it.next();
+            index.removeSegment(oldest.id);
+            if (index.size == 0) {
+                it.remove();
+            }
+        }
+        active.map.force();
+        oldest.close();
+        Files.deleteIfExists(oldest.path);
+    }
+
+    private void load() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null);
+
+        for (Path file : files) {
+            Segment segment = Segment.open(file, segmentIdOf(file), segmentSize);
+            if (!segments.isEmpty() && segment.id != activeSegment().id + 1) {
+                // 번호가 빈 세그먼트는 쓰지 않는다
+                segment.close();
+                continue;
+            }
+            ByteBuffer records = segment.map;
+            int offset = 0;
+            while (offset + RECORD_HEADER <= records.limit()) {
+                int length = records.getInt(offset);
+                if (length < RECORD_HEADER - 4 || offset + 4 + length > records.limit()) break;
+                long sequence = records.getLong(offset + 4);
+                int roomLength = records.getShort(offset + 12);
+                String room = decode(records, offset + RECORD_HEADER, roomLength);
+                roomIndex(room).put(sequence, position(segment.id, offset));
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                offset += 4 + length;
+            }
+            segment.writePosition = offset;
+            segments.add(segment);
+        }
+    }
+
+    private ByteBuffer readPayload(long position) {
+        Segment segment = segment((int) (position >>> 32));
+        int offset = (int) position;
+        ByteBuffer record = segment.map.duplicate();
+        int length = record.getInt(offset);
+        int roomLength = record.getShort(offset + 12);
+        record.position(offset + RECORD_HEADER + roomLength).limit(offset + 4 + length);
+        return record;
+    }
+
+    private RoomIndex roomIndex(String room) {
+        RoomIndex index = rooms.get(room);
+        if (index == null) {
+            index = new RoomIndex();
+            rooms.put(room, index);
+        }
+        return index;
+    }
+
+    private static long position(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset).limit(offset + length);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    private static int segmentIdOf(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        int writePosition;
+
+        private Segment(int id, Path path, FileChannel channel, MappedByteBuffer map) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.map = map;
+        }
+
+        static Segment create(Path directory, int id, int size) throws IOException {
+            return open(directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX)), id, size);
+        }
+
+        static Segment open(Path path, int id, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+            return new Segment(id, path, channel, map);
+        }
+
+        int remaining() {
+            return map.capacity() - writePosition;
+        }
+
+        // 본문을 먼저 쓰고 길이를 마지막에 써서, 중간에 멈춰도 읽는 쪽은 길이 0 에서 멈춘다
+        int write(long sequence, byte[] room, ByteBuffer payload) {
+            int offset = writePosition;
+            map.putLong(offset + 4, sequence);
+            map.putShort(offset + 12, (short) room.length);
+            ByteBuffer body = map.duplicate();
+            body.position(offset + RECORD_HEADER);
+            body.put(room);
+            body.put(payload.duplicate());
+            map.putInt(offset, body.position() - offset - 4);
+            writePosition = body.position();
+            return offset;
+        }
+
+        int writeRecord(ByteBuffer record) {
+            int offset = writePosition;
+            int length = record.getInt(record.position());
+            ByteBuffer body = map.duplicate();
+            body.position(offset + 4);
+            record.position(record.position() + 4);
+            body.put(record);
+            map.putInt(offset, length);
+            writePosition = body.position();
+            return offset;
+        }
+
+        void close() throws IOException {
+            map.force();
+            channel.close();
+        }
+    }
+
+    /**
+     * 방 하나의 (시퀀스, 위치) 목록. 시퀀스 오름차순이다.
+     */
+    private static final class RoomIndex {
+        long[] sequences = new long[16];
+        long[] positions = new long[16];
+        int size;
+
+        void put(long sequence, long position) {
+            if (size == 0 || sequences[size - 1] < sequence) {
+                ensureCapacity();
+                sequences[size] = sequence;
+                positions[size] = position;
+                size++;
+                return;
+            }
+
+            // 컴팩션으로 옮긴 레코드이거나, 재시작 시 옮긴 쪽과 원래 쪽을 모두 읽은 경우
+            int index = Arrays.binarySearch(sequences, 0, size, sequence);
+            if (index >= 0) {
+                positions[index] = position;
+                return;
+            }
+            ensureCapacity();
+            int insert = -index - 1;
+            System.arraycopy(sequences, insert, sequences, insert + 1, size - insert);
+            System.arraycopy(positions, insert, positions, insert + 1, size - insert);
+            sequences[insert] = sequence;
+            positions[insert] = position;
+            size++;
+        }
+
+        int indexAfter(long cursor) {
+            int index = Arrays.binarySearch(sequences, 0, size, cursor);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        /**
+         * 이 위치의 레코드가 방의 최근 keep 개 안에 들면 true. 이미 다른 곳으로 옮겨진 사본이면 false.
+         */
+        boolean isRecent(long sequence, long position, int keep) {
+            int index = Arrays.binarySearch(sequences, 0, size, sequence);
+            return index >= 0 && index >= size - keep && positions[index] == position;
+        }
+
+        void removeSegment(int segmentId) {
+            int write = 0;
+            for (int read = 0; read < size; read++) {
+                if ((int) (positions[read] >>> 32) != segmentId) {
+                    sequences[write] = sequences[read];
+                    positions[write] = positions[read];
+                    write++;
+                }
+            }
+            size = write;
+        }
+
+        private void ensureCapacity() {
+            if (size < sequences.length) return;
+            sequences = Arrays.copyOf(sequences, sequences.length * 2);
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+    }
+}
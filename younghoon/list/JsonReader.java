@@ -0,0 +1,243 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 JSON 객체의 최상위 필드를 바이트 위에서 바로 훑는 풀(pull) 리더.
+ *
+ * 필드 이름과 문자열 값은 버퍼 안의 위치로만 기억하고, nameEquals/valueEquals 는 String 을 만들지 않고 비교한다.
+ * 값이 정말 필요할 때만 valueString() 으로 디코딩한다. 중첩 객체/배열 값은 건너뛴다.
+ * 인스턴스를 재사용하며 스레드 안전하지 않다. 형식이 잘못되면 IllegalArgumentException.
+ *
+ * JsonReader reader = new JsonReader();
+ * reader.reset(payload);
+ * while (reader.nextField()) {
+ *     if (reader.nameEquals("type") && reader.valueEquals("join")) { ... }
+ * }
+ */
+public class JsonReader {
+    private ByteBuffer json;
+    private int position;
+    private int limit;
+
+    private int nameStart;
+    private int nameEnd;
+    private int valueStart;
+    private int valueEnd;
+    private boolean stringValue;
+    private boolean valueEscaped;
+
+    public JsonReader reset(ByteBuffer json) {
+        this.json = json;
+        this.position = json.position();
+        this.limit = json.limit();
+        skipWhitespace();
+        expect('{');
+        return this;
+    }
+
+    /**
+     * 다음 필드로 이동한다. 객체 끝이면 false.
+     */
+    public boolean nextField() {
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return false;
+        }
+
+        expect('"');
+        nameStart = position;
+        nameEnd = skipString();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+
+        stringValue = peek() == '"';
+        if (stringValue) {
+            position++;
+            valueStart = position;
+            valueEscaped = false;
+            valueEnd = skipString();
+        } else {
+            valueStart = position;
+            skipValue();
+            valueEnd = position;
+        }
+
+        skipWhitespace();
+        if (peek() == ',') {
+            position++;
+        } else if (peek() != '}') {
+            throw malformed("',' or '}'");
+        }
+        return true;
+    }
+
+    /**
+     * 필드 이름 비교. 이름은 ASCII 라고 가정한다.
+     */
+    public boolean nameEquals(String name) {
+        if (nameEnd - nameStart != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (json.get(nameStart + i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public boolean isString() {
+        return stringValue;
+    }
+
+    /**
+     * 문자열 값이 text 와 같은지. 이스케이프가 없으면 text 를 한 글자씩 UTF-8 로 인코딩하며 바이트와 비교한다.
+     */
+    public boolean valueEquals(String text) {
+        if (!stringValue) return false;
+        if (valueEscaped) return text.equals(valueString());
+
+        int index = valueStart;
+        for (int i = 0; i < text.length(); i++) {
+            int c = text.charAt(i);
+            if (c < 0x80) {
+                if (index >= valueEnd || json.get(index++) != c) return false;
+                continue;
+            }
+            if (Character.isHighSurrogate((char) c) && i + 1 < text.length()) {
+                c = Character.toCodePoint((char) c, text.charAt(++i));
+            }
+            int length = c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (index + length > valueEnd) return false;
+            for (int k = 0; k < length; k++) {
+                if (json.get(index++) != JsonWriter.utf8Byte(c, length, k)) return false;
+            }
+        }
+        return index == valueEnd;
+    }
+
+    /**
+     * 값을 String 으로 디코딩한다. 문자열이 아니면 JSON 원문 그대로.
+     */
+    public String valueString() {
+        if (!stringValue || !valueEscaped) {
+            ByteBuffer slice = json.duplicate();
+            slice.position(valueStart).limit(valueEnd);
+            return StandardCharsets.UTF_8.decode(slice).toString();
+        }
+
+        StringBuilder text = new StringBuilder(valueEnd - valueStart);
+        int index = valueStart;
+        while (index < valueEnd) {
+            int start = index;
+            while (index < valueEnd && json.get(index) != '\\') index++;
+            if (index > start) {
+                ByteBuffer slice = json.duplicate();
+                slice.position(start).limit(index);
+                text.append(StandardCharsets.UTF_8.decode(slice));
+            }
+            if (index >= valueEnd) break;
+
+            byte escaped = json.get(index + 1);
+            index += 2;
+            switch (escaped) {
+                case 'b': text.append('\b'); break;
+                case 'f': text.append('\f'); break;
+                case 'n': text.append('\n'); break;
+                case 'r': text.append('\r'); break;
+                case 't': text.append('\t'); break;
+                case 'u':
+                    text.append((char) Integer.parseInt(ascii(index, index + 4), 16));
+                    index += 4;
+                    break;
+                default:
+                    text.append((char) escaped);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * 숫자 값. 문자열로 온 숫자("123")도 받는다. 숫자가 아니면 defaultValue.
+     */
+    public long valueLong(long defaultValue) {
+        long value = 0;
+        int index = valueStart;
+        boolean negative = index < valueEnd && json.get(index) == '-';
+        if (negative) index++;
+        if (index >= valueEnd) return defaultValue;
+        for (; index < valueEnd; index++) {
+            byte b = json.get(index);
+            if (b < '0' || b > '9') return defaultValue;
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    // 여는 따옴표 다음에서 시작해 닫는 따옴표 다음으로 이동하고, 닫는 따옴표 위치를 돌려준다
+    private int skipString() {
+        while (position < limit) {
+            byte b = json.get(position);
+            if (b == '"') {
+                return position++;
+            }
+            if (b == '\\') {
+                valueEscaped = true;
+                position++;
+            }
+            position++;
+        }
+        throw malformed("closing quote");
+    }
+
+    private void skipValue() {
+        int depth = 0;
+        while (position < limit) {
+            byte b = json.get(position);
+            if (b == '"') {
+                position++;
+                skipString();
+                continue;
+            }
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth == 0) return;
+                depth--;
+            } else if (b == ',' && depth == 0) {
+                return;
+            }
+            position++;
+        }
+        throw malformed("value");
+    }
+
+    private void skipWhitespace() {
+        while (position < limit) {
+            byte b = json.get(position);
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') return;
+            position++;
+        }
+    }
+
+    private byte peek() {
+        if (position >= limit) throw malformed("more input");
+        return json.get(position);
+    }
+
+    private void expect(char c) {
+        if (peek() != c) throw malformed("'" + c + "'");
+        position++;
+    }
+
+    private String ascii(int from, int to) {
+        StringBuilder text = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            text.append((char) json.get(i));
+        }
+        return text.toString();
+    }
+
+    private IllegalArgumentException malformed(String expected) {
+        return new IllegalArgumentException("Malformed JSON: expected " + expected + " at byte "
+            + (position - json.position()));
+    }
+}
@@ -0,0 +1,195 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 재사용 버퍼에 UTF-8 JSON 객체를 바로 쓰는 라이터.
+ *
+ * 문자열은 한 글자씩 이스케이프/UTF-8 인코딩해 버퍼에 넣으므로 중간 String 이나 byte[] 를 만들지 않는다.
+ * 버퍼는 필요할 때만 커지고 reset() 후 다시 쓴다. 스레드마다 local() 로 하나씩 쓴다.
+ *
+ * ByteBuffer json = JsonWriter.local().beginObject().field("type", "system").endObject().buffer();
+ */
+public class JsonWriter {
+    private static final ThreadLocal<JsonWriter> LOCAL = ThreadLocal.withInitial(JsonWriter::new);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private ByteBuffer buffer = ByteBuffer.allocate(512);
+    private boolean firstField;
+
+    /**
+     * 현재 스레드의 라이터를 비워서 돌려준다. 돌려받은 buffer() 는 같은 스레드가 다시 local() 을 부르기 전까지만 유효하다.
+     */
+    public static JsonWriter local() {
+        return LOCAL.get().reset();
+    }
+
+    public JsonWriter reset() {
+        buffer.clear();
+        return this;
+    }
+
+    public JsonWriter beginObject() {
+        put('{');
+        firstField = true;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        put('}');
+        return this;
+    }
+
+    public JsonWriter field(String name, String value) {
+        name(name);
+        string(value);
+        return this;
+    }
+
+    public JsonWriter field(String name, long value) {
+        name(name);
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        digits(value, 1);
+        return this;
+    }
+
+    public JsonWriter field(String name, boolean value) {
+        name(name);
+        ascii(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * epochMillis 를 ISO-8601 UTC 문자열("2024-01-01T00:00:00.000Z")로 쓴다. 클라이언트의 new Date(...) 로 읽힌다.
+     */
+    public JsonWriter timestampField(String name, long epochMillis) {
+        name(name);
+        long days = Math.floorDiv(epochMillis, 86_400_000L);
+        long millisOfDay = Math.floorMod(epochMillis, 86_400_000L);
+
+        // 1970-01-01 부터의 일수 → 그레고리력 날짜 (Howard Hinnant 의 civil_from_days)
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        put('"');
+        digits(year, 4);
+        put('-');
+        digits(month, 2);
+        put('-');
+        digits(day, 2);
+        put('T');
+        digits(millisOfDay / 3_600_000, 2);
+        put(':');
+        digits(millisOfDay / 60_000 % 60, 2);
+        put(':');
+        digits(millisOfDay / 1000 % 60, 2);
+        put('.');
+        digits(millisOfDay % 1000, 3);
+        put('Z');
+        put('"');
+        return this;
+    }
+
+    /**
+     * 지금까지 쓴 JSON 의 읽기용 뷰.
+     */
+    public ByteBuffer buffer() {
+        ByteBuffer view = buffer.duplicate();
+        view.flip();
+        return view;
+    }
+
+    private void name(String name) {
+        if (!firstField) {
+            put(',');
+        }
+        firstField = false;
+        string(name);
+        put(':');
+    }
+
+    private void string(String value) {
+        put('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                put('\\');
+                put(c);
+            } else if (c < 0x20) {
+                ascii("\\u00");
+                put(HEX[c >> 4]);
+                put(HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                put(c);
+            } else {
+                int codePoint = c;
+                if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    codePoint = Character.toCodePoint(c, value.charAt(++i));
+                }
+                int length = codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+                ensureCapacity(length);
+                for (int k = 0; k < length; k++) {
+                    buffer.put(utf8Byte(codePoint, length, k));
+                }
+            }
+        }
+        put('"');
+    }
+
+    /**
+     * codePoint 를 length 바이트 UTF-8 로 인코딩했을 때의 index 번째 바이트.
+     */
+    static byte utf8Byte(int codePoint, int length, int index) {
+        if (index == 0) {
+            int lead = length == 2 ? 0xC0 : length == 3 ? 0xE0 : 0xF0;
+            return (byte) (lead | (codePoint >> (6 * (length - 1))));
+        }
+        return (byte) (0x80 | ((codePoint >> (6 * (length - 1 - index))) & 0x3F));
+    }
+
+    private void digits(long value, int minDigits) {
+        int count = 1;
+        for (long v = value / 10; v > 0; v /= 10) count++;
+        count = Math.max(count, minDigits);
+        ensureCapacity(count);
+        int end = buffer.position() + count;
+        for (int i = end - 1; i >= end - count; i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    private void ascii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            put(text.charAt(i));
+        }
+    }
+
+    private void put(char c) {
+        put((byte) c);
+    }
+
+    private void put(byte b) {
+        ensureCapacity(1);
+        buffer.put(b);
+    }
+
+    private void ensureCapacity(int additional) {
+        if (buffer.remaining() >= additional) return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + additional));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+}
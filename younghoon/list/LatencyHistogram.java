@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 나노초 지연을 기록하는 HDR 방식(로그-선형 버킷) 히스토그램.
+ *
+ * 값의 최상위 비트 아래 6비트까지를 버킷으로 구분하므로 상대 오차가 1/64(약 1.6%) 이하이고,
+ * 1ns 부터 Long.MAX_VALUE 까지 3712 개 버킷 하나의 배열로 덮는다.
+ * record() 는 잠금 없이 배열 칸 하나를 올리므로 여러 스레드가 동시에 불러도 된다.
+ * 값은 시작 이후 누적이며, 읽는 쪽은 버킷을 순회하는 동안의 기록이 일부만 보일 수 있다.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(indexOf(nanos));
+        sum.add(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // 다른 스레드가 먼저 올렸으면 다시 비교한다
+        }
+    }
+
+    /**
+     * q 분위수(0~1)에 해당하는 값. 그 버킷의 상한을 돌려주므로 실제 값보다 최대 1.6% 크다.
+     */
+    public long percentile(double q) {
+        long total = count();
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * limitNanos 이하로 기록된 값의 수. 버킷 상한이 limitNanos 이하인 버킷만 센다.
+     */
+    public long countAtOrBelow(long limitNanos) {
+        long result = 0;
+        for (int i = 0; i < BUCKET_COUNT && upperBound(i) <= limitNanos; i++) {
+            result += counts.get(i);
+        }
+        return result;
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    // 128 미만은 값 그대로, 그 위로는 (지수, 상위 7비트) 로 버킷을 정한다
+    static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    static long upperBound(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long mantissa = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,463 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NIO 모드의 커넥션 하나.
+ * 모든 상태는 소유한 NioEventLoop 스레드에서만 읽고 쓴다. closed 만 다른 스레드의 sendFrame 이 읽는다.
+ */
+public class NioClientSession implements ChatSession, WebSocketFrameDecoder.Listener, SessionHeartbeat.Peer {
+    private static final int MAX_HANDSHAKE_SIZE = 8192;
+    private static final int MAX_GATHER = 64;
+    private static final OutboundFrame DIRECT = OutboundFrame.of(OutboundFrame.OPCODE_PONG, new byte[0]);
+
+    private final ChatServer server;
+    private final NioEventLoop eventLoop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final OutboundQueue outboundQueue;
+    private final Deque<ByteBuffer> writing = new ArrayDeque<>();
+    // writing 과 같은 순서로 버퍼의 원래 프레임을 둔다. 직접 쓴 버퍼 자리에는 DIRECT 를 넣는다.
+    private final Deque<OutboundFrame> writingFrames = new ArrayDeque<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final PooledBuffer inboundBuffer;
+    private final ByteBuffer inbound;
+    private final WebSocketFrameDecoder decoder;
+    private PerMessageDeflate deflate;
+    private volatile String username;
+    private volatile String room = RoomRegistry.DEFAULT_ROOM;
+    private long historyCursor = -1;
+    private boolean handshakeCompleted = false;
+    private volatile boolean closed = false;
+    // 디코딩 중에 close() 되면 수신 버퍼 반납을 handleRead 가 끝날 때로 미룬다
+    private boolean reading = false;
+    private final long acceptedNanos = System.nanoTime();
+    private final SessionHeartbeat heartbeat;
+    private final TokenBucket rateLimiter;
+    private final TokenBucket uploadLimiter;
+    // 업로드 속도 한도를 넘겨 읽기를 멈출 시간. 타이머가 이벤트 루프에서 다시 켠다.
+    private long readPauseNanos;
+    private final HashedWheelTimer.Task resumeReading = new HashedWheelTimer.Task() {
+        @Override
+        protected void run() {
+            eventLoop.execute(NioClientSession.this::resumeReading);
+        }
+    };
+    // 보내는 중인 첨부 파일과 그 프레임. 조각을 쓰다 만 동안에는 다른 버퍼를 쓰지 않는다.
+    private FileTransfer transfer;
+    private OutboundFrame transferFrame;
+    // wss 면 소켓 대신 이걸로 읽고 쓴다
+    private final TlsChannel tls;
+
+    public NioClientSession(ChatServer server, NioEventLoop eventLoop, SocketChannel channel, SelectionKey key)
+            throws IOException {
+        this.server = server;
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        this.key = key;
+        this.username = "User" + channel.socket().getPort();
+        this.outboundQueue = server.newOutboundQueue();
+        this.rateLimiter = server.newClientRateLimiter();
+        this.uploadLimiter = server.newUploadRateLimiter();
+        this.decoder = server.newFrameDecoder(this);
+        this.inboundBuffer = server.acquireInboundBuffer();
+        this.inbound = inboundBuffer.buffer();
+        this.tls = server.newTlsChannel(channel);
+        this.heartbeat = server.startHeartbeat(this);
+    }
+
+    void handleRead() throws IOException {
+        int read;
+        do {
+            read = tls != null ? tls.read(inbound) : channel.read(inbound);
+            if (read == -1) {
+                close();
+                return;
+            }
+            if (tls != null && tls.hasPendingWrites()) {
+                // TLS 핸드셰이크 메시지를 소켓에 다 못 썼다
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+            decodeInbound(read);
+            // TLS 는 소켓에서 한 번에 읽은 레코드 여러 개를 버퍼에 들고 있을 수 있다. 셀렉터는 모르므로 여기서 마저 꺼낸다.
+        } while (read > 0 && tls != null && !closed && isReading() && tls.hasBufferedInput());
+    }
+
+    private void decodeInbound(int read) throws IOException {
+        server.metrics().bytesIn(read);
+        heartbeat.onRead();
+
+        inbound.flip();
+        reading = true;
+        try {
+            if (!handshakeCompleted && !readHandshake()) {
+                return;
+            }
+            decoder.decode(inbound);
+            if (readPauseNanos > 0 && !closed) {
+                pauseReading();
+            }
+        } catch (WebSocketFrameDecoder.ProtocolException e) {
+            server.protocolError(this, e);
+            writeDirect(OutboundFrame.close(e.getCloseCode(), e.getMessage()).buffer());
+            close();
+        } finally {
+            reading = false;
+            if (!closed) {
+                inbound.compact();
+            } else {
+                releaseBuffers();
+            }
+        }
+    }
+
+    private boolean readHandshake() throws IOException {
+        int end = WebSocketHandshake.indexOfHeaderEnd(inbound);
+        if (end < 0) {
+            if (inbound.remaining() >= MAX_HANDSHAKE_SIZE) {
+                close();
+            }
+            return false;
+        }
+
+        WebSocketHandshake handshake = WebSocketHandshake.parse(inbound, end);
+        if (!handshake.isValid()) {
+            writeDirect(ByteBuffer.wrap(WebSocketHandshake.badRequestResponse().getBytes(StandardCharsets.ISO_8859_1)));
+            close();
+            return false;
+        }
+
+        if (ChatServer.isValidRoomName(handshake.getRoom())) {
+            room = handshake.getRoom();
+        }
+        historyCursor = handshake.getSince();
+
+        deflate = server.negotiateDeflate(handshake);
+        decoder.setPerMessageDeflate(deflate);
+        String extensions = deflate != null ? deflate.responseHeaderValue() : null;
+        writeDirect(ByteBuffer.wrap(handshake.response(extensions).getBytes(StandardCharsets.ISO_8859_1)));
+        handshakeCompleted = true;
+        heartbeat.onHandshakeCompleted();
+        server.metrics().recordHandshake(System.nanoTime() - acceptedNanos);
+        AsyncLog.info("WebSocket handshake completed for %s", username);
+        server.addClient(this);
+        return true;
+    }
+
+    @Override
+    public void onText(ByteBuffer payload) {
+        // 같은 read 로 들어온 나머지 프레임은 처리 도중 연결이 닫혔으면 버린다
+        if (closed) return;
+        heartbeat.onMessage();
+        server.handleMessage(this, payload);
+    }
+
+    @Override
+    public void onBinary(ByteBuffer payload) {
+        // 첨부 파일을 쓰지 않으면 바이너리 메시지는 버린다
+        heartbeat.onMessage();
+    }
+
+    @Override
+    public void onBinaryFragment(ByteBuffer chunk, boolean last) {
+        if (closed) return;
+        heartbeat.onMessage();
+        int length = chunk.remaining();
+        server.receiveAttachment(this, chunk, last);
+        if (uploadLimiter != null && length > 0) {
+            readPauseNanos = Math.max(readPauseNanos, uploadLimiter.acquire(length, System.nanoTime()));
+        }
+    }
+
+    // 업로드 속도 한도를 넘었다. OP_READ 를 끄면 TCP 수신 창이 차서 보내는 쪽이 멈추고,
+    // 이 이벤트 루프는 그동안 다른 연결의 채팅을 처리한다.
+    private void pauseReading() {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        server.resumeReadingLater(resumeReading, readPauseNanos);
+        readPauseNanos = 0;
+    }
+
+    private void resumeReading() {
+        if (!closed && key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            if (tls != null && tls.hasBufferedInput()) {
+                // 소켓에 새로 올 데이터가 없으면 셀렉터가 깨우지 않는다
+                try {
+                    handleRead();
+                } catch (IOException e) {
+                    AsyncLog.info("Client disconnected: %s", e.getMessage());
+                    close();
+                }
+            }
+        }
+    }
+
+    private boolean isReading() {
+        return key.isValid() && (key.interestOps() & SelectionKey.OP_READ) != 0;
+    }
+
+    @Override
+    public void onPing(ByteBuffer payload) {
+        writeDirect(OutboundFrame.pong(payload).buffer());
+    }
+
+    @Override
+    public void onPong(ByteBuffer payload) {
+    }
+
+    @Override
+    public void onClose(int code, String reason) {
+        writeDirect(OutboundFrame.close(code, "").buffer());
+        close();
+    }
+
+    @Override
+    public void sendFrame(OutboundFrame frame) {
+        if (closed) return;
+
+        OutboundQueue.OfferResult result = outboundQueue.offer(frame);
+        if (result == OutboundQueue.OfferResult.ACCEPTED && closed) {
+            // close() 의 clear() 와 엇갈렸다. 남은 프레임의 참조를 놓는다.
+            outboundQueue.clear();
+        } else if (result == OutboundQueue.OfferResult.DISCONNECT) {
+            server.disconnectSlowConsumer(this);
+        } else if (result == OutboundQueue.OfferResult.ACCEPTED && flushScheduled.compareAndSet(false, true)) {
+            if (eventLoop.inEventLoop()) {
+                flush();
+            } else {
+                eventLoop.execute(this::flush);
+            }
+        }
+    }
+
+    // 타이머 스레드에서 불린다. 쓰기와 닫기는 이벤트 루프로 넘긴다.
+    @Override
+    public void sendPing() {
+        if (closed) return;
+        server.metrics().pingSent();
+        eventLoop.execute(() -> writeDirect(SessionHeartbeat.PING.buffer()));
+    }
+
+    @Override
+    public void expire(SessionHeartbeat.Reason reason) {
+        if (closed) return;
+        server.evicted(this, reason);
+        eventLoop.execute(() -> {
+            if (reason == SessionHeartbeat.Reason.IDLE) {
+                writeDirect(OutboundFrame.close(1001, "Idle timeout").buffer());
+            }
+            close();
+        });
+    }
+
+    // 핸드셰이크 응답, pong 같은 제어 프레임은 대기열 정책을 거치지 않고 바로 내보낸다.
+    private void writeDirect(ByteBuffer buffer) {
+        if (closed) return;
+
+        writing.add(buffer);
+        writingFrames.add(DIRECT);
+        flush();
+    }
+
+    private void flush() {
+        if (closed) return;
+
+        try {
+            handleWrite();
+        } catch (IOException e) {
+            AsyncLog.warn("Error sending message: %s", e.getMessage());
+            close();
+        }
+    }
+
+    void handleWrite() throws IOException {
+        do {
+            if (!writeOut()) {
+                // 소켓 송신 버퍼가 찼다. flushScheduled 를 유지해 OP_WRITE 이벤트가 이어서 보내게 한다.
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            flushScheduled.set(false);
+        } while (!outboundQueue.isEmpty() && flushScheduled.compareAndSet(false, true));
+
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+    }
+
+    // 대기열의 프레임들을 gathering write 한 번씩으로 내보낸다. 다 보냈으면 true.
+    // 첨부 파일은 조각 하나를 보낼 때마다 false 로 돌아가 OP_WRITE 로 이어 간다. 그 사이 이벤트 루프가
+    // 다른 연결의 읽기/쓰기를 한 바퀴 돌리므로 큰 파일 하나가 루프를 붙잡지 않는다.
+    private boolean writeOut() throws IOException {
+        while (true) {
+            if (tls != null && !tls.flush()) {
+                return false;
+            }
+            if (transfer != null && transfer.inFragment() && !continueTransfer()) {
+                return false;
+            }
+            OutboundFrame frame;
+            while (transfer == null && writing.size() < MAX_GATHER && (frame = outboundQueue.poll()) != null) {
+                if (frame.attachment() != null) {
+                    startTransfer(frame);
+                } else {
+                    writing.add(deflate != null ? deflate.encode(frame) : frame.buffer());
+                    writingFrames.add(frame);
+                }
+            }
+            if (writing.isEmpty()) {
+                if (transfer == null) {
+                    return true;
+                }
+                if (!continueTransfer() || transfer != null) {
+                    return false;
+                }
+                continue;
+            }
+
+            ByteBuffer[] buffers = writing.toArray(new ByteBuffer[0]);
+            server.metrics().bytesOut(tls != null ? tls.write(buffers) : channel.write(buffers));
+            int written = 0;
+            while (!writing.isEmpty() && !writing.peek().hasRemaining()) {
+                writing.poll();
+                OutboundFrame done = writingFrames.poll();
+                if (done != DIRECT) {
+                    done.release();
+                    written++;
+                }
+            }
+            server.metrics().framesOut(written);
+            if (!writing.isEmpty()) {
+                return false;
+            }
+        }
+    }
+
+    private void startTransfer(OutboundFrame frame) {
+        transfer = server.openTransfer(frame.attachment());
+        if (transfer != null) {
+            transferFrame = frame;
+        } else {
+            frame.release();
+        }
+    }
+
+    // 조각 하나를 (이어서) 보낸다. 소켓이 차서 조각을 다 못 보냈으면 false.
+    private boolean continueTransfer() throws IOException {
+        // wss 면 transferTo 가 커널 안에서 넘기지 못하고 작은 버퍼로 읽어 암호화한다
+        server.metrics().bytesOut(transfer.writeFragment(tls != null ? tls : channel));
+        if (transfer.inFragment()) {
+            return false;
+        }
+        if (transfer.isDone()) {
+            closeTransfer();
+            server.metrics().framesOut(1);
+        }
+        return true;
+    }
+
+    private void closeTransfer() {
+        try {
+            transfer.close();
+        } catch (IOException e) {
+            AsyncLog.warn("Attachment close error: %s", e.getMessage());
+        }
+        transferFrame.release();
+        transfer = null;
+        transferFrame = null;
+    }
+
+    @Override
+    public int getOutboundQueueDepth() {
+        return outboundQueue.depth();
+    }
+
+    @Override
+    public TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return outboundQueue.droppedFrames();
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    @Override
+    public String getRoom() {
+        return room;
+    }
+
+    @Override
+    public void setRoom(String room) {
+        this.room = room;
+    }
+
+    @Override
+    public long getHistoryCursor() {
+        return historyCursor;
+    }
+
+    @Override
+    public void close() {
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(this::close);
+            return;
+        }
+        if (closed) return;
+
+        closed = true;
+        heartbeat.stop();
+        outboundQueue.clear();
+        writing.clear();
+        OutboundFrame pending;
+        while ((pending = writingFrames.poll()) != null) {
+            pending.release();
+        }
+        if (transfer != null) {
+            closeTransfer();
+        }
+        if (deflate != null) {
+            deflate.release();
+        }
+        key.cancel();
+        try {
+            // TLS 면 close_notify 를 보내 본 뒤 닫으므로 버퍼 반납보다 먼저 한다
+            if (tls != null) {
+                tls.close();
+            } else {
+                channel.close();
+            }
+        } catch (IOException e) {
+            AsyncLog.warn("Cleanup error: %s", e.getMessage());
+        }
+        if (!reading) {
+            releaseBuffers();
+        }
+        if (handshakeCompleted) {
+            server.removeClient(this);
+        }
+    }
+
+    private void releaseBuffers() {
+        decoder.release();
+        inboundBuffer.release();
+        if (tls != null) {
+            tls.release();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Selector 하나를 소유하는 이벤트 루프 스레드.
+ * 등록된 커넥션의 핸드셰이크, 프레임 디코딩, 쓰기는 모두 이 스레드에서만 처리한다.
+ * 다른 스레드는 execute() 로 작업을 넘긴다.
+ */
+public class NioEventLoop implements Runnable {
+    private final ChatServer server;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public NioEventLoop(ChatServer server, String name) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    public void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new NioClientSession(server, this, channel, key));
+            } catch (IOException e) {
+                AsyncLog.warn("Register error: %s", e.getMessage());
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    processKey(key);
+                }
+            } catch (IOException e) {
+                AsyncLog.error("Event loop error: %s", e.getMessage());
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            ((NioClientSession) key.attachment()).close();
+        }
+        closeQuietly(selector);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                AsyncLog.error("Event loop task error: %s", e.getMessage());
+            }
+        }
+    }
+
+    private void processKey(SelectionKey key) {
+        NioClientSession session = (NioClientSession) key.attachment();
+        try {
+            if (key.isReadable()) {
+                session.handleRead();
+            }
+            if (key.isValid() && key.isWritable()) {
+                session.handleWrite();
+            }
+        } catch (CancelledKeyException e) {
+            session.close();
+        } catch (IOException e) {
+            AsyncLog.info("Client disconnected: %s", e.getMessage());
+            session.close();
+        } catch (RuntimeException e) {
+            // 세션 하나의 버그로 이 루프의 다른 연결까지 멈추지 않게 그 세션만 닫는다
+            AsyncLog.error("Session error, closing %s: %s", session.getUsername(), e);
+            session.close();
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,211 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * 헤더와 페이로드를 한 버퍼에 담은, 인코딩이 끝난 서버→클라이언트 WebSocket 프레임.
+ * 불변이므로 브로드캐스트 시 한 번 만들어 모든 수신자가 공유하고,
+ * 각 수신자는 buffer() 로 자기 위치(position)를 가진 읽기 전용 뷰를 받아 쓴다.
+ *
+ * BufferPool 로 만든 프레임은 참조 카운트를 가진다. 만든 쪽이 참조 하나를 쥐고 시작해 대기열에 다 넣은 뒤 release() 하고,
+ * 대기열이 넣을 때 retain, 쓰거나 버릴 때 release 해서 마지막 참조가 놓이면 버퍼가 풀로 돌아간다.
+ *
+ * attachment() 가 있는 프레임은 인코딩된 바이트 대신 저장된 첨부 파일을 가리킨다. 쓰는 쪽이 FileTransfer 로 조각내 보낸다.
+ */
+public final class OutboundFrame {
+    public static final int OPCODE_TEXT = 0x1;
+    public static final int OPCODE_BINARY = 0x2;
+    public static final int OPCODE_CLOSE = 0x8;
+    public static final int OPCODE_PING = 0x9;
+    public static final int OPCODE_PONG = 0xA;
+
+    static final int FIN = 0x80;
+    static final int RSV1 = 0x40;
+    static final int MAX_HEADER_LENGTH = 10;
+
+    private final ByteBuffer frame;
+    private final int opcode;
+    private final int headerLength;
+    // server_no_context_takeover 로 압축한 같은 메시지. 그 파라미터를 협상한 수신자끼리 공유한다.
+    private volatile OutboundFrame deflated;
+    // 브로드캐스트 지연을 잴 때만 붙는다. 대기열에 들어갈 때 retain, 쓰기가 끝나거나 버려질 때 release.
+    private ChatMetrics.FanOut fanOut;
+    private final PooledBuffer pooled;
+    private final AttachmentStore.Attachment attachment;
+
+    private OutboundFrame(ByteBuffer frame, int opcode, int headerLength) {
+        this(frame, opcode, headerLength, null);
+    }
+
+    private OutboundFrame(ByteBuffer frame, int opcode, int headerLength, PooledBuffer pooled) {
+        this(frame, opcode, headerLength, pooled, null);
+    }
+
+    private OutboundFrame(ByteBuffer frame, int opcode, int headerLength, PooledBuffer pooled,
+                          AttachmentStore.Attachment attachment) {
+        this.frame = frame.asReadOnlyBuffer();
+        this.opcode = opcode;
+        this.headerLength = headerLength;
+        this.pooled = pooled;
+        this.attachment = attachment;
+    }
+
+    public static OutboundFrame text(String message) {
+        return of(OPCODE_TEXT, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static OutboundFrame close(int code, String reason) {
+        byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(2 + Math.min(reasonBytes.length, 123));
+        payload.putShort((short) code);
+        payload.put(reasonBytes, 0, payload.remaining());
+        return of(OPCODE_CLOSE, payload.array());
+    }
+
+    public static OutboundFrame pong(ByteBuffer pingPayload) {
+        byte[] payload = new byte[pingPayload.remaining()];
+        pingPayload.get(payload);
+        return of(OPCODE_PONG, payload);
+    }
+
+    public static OutboundFrame of(int opcode, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(headerLength(payload.length) + payload.length);
+        putHeader(frame, FIN | opcode, payload.length);
+        frame.put(payload);
+        frame.flip();
+        return new OutboundFrame(frame, opcode, frame.limit() - payload.length);
+    }
+
+    public static OutboundFrame of(int opcode, ByteBuffer payload) {
+        int length = payload.remaining();
+        ByteBuffer frame = ByteBuffer.allocate(headerLength(length) + length);
+        putHeader(frame, FIN | opcode, length);
+        frame.put(payload);
+        frame.flip();
+        return new OutboundFrame(frame, opcode, frame.limit() - length);
+    }
+
+    /**
+     * 첨부 파일 하나를 보내는 바이너리 메시지. 버퍼는 비어 있고, 파일은 쓰는 시점에 연다.
+     */
+    public static OutboundFrame attachment(AttachmentStore.Attachment attachment) {
+        return new OutboundFrame(ByteBuffer.allocate(0), OPCODE_BINARY, 0, null, attachment);
+    }
+
+    /**
+     * 풀에서 꺼낸 버퍼에 인코딩한다. 만든 쪽이 다 쓰고 나면 release() 해야 버퍼가 풀로 돌아간다.
+     */
+    public static OutboundFrame of(int opcode, ByteBuffer payload, BufferPool pool) {
+        int length = payload.remaining();
+        PooledBuffer pooled = pool.acquire(headerLength(length) + length);
+        ByteBuffer frame = pooled.buffer();
+        putHeader(frame, FIN | opcode, length);
+        frame.put(payload);
+        frame.flip();
+        return new OutboundFrame(frame, opcode, frame.limit() - length, pooled);
+    }
+
+    /**
+     * buffer 의 [MAX_HEADER_LENGTH, payloadEnd) 에 이미 채워진 페이로드 앞에 헤더를 써서 프레임으로 만든다.
+     * 페이로드를 한 번 더 복사하지 않으려고 압축 출력 버퍼를 그대로 쓴다.
+     */
+    static OutboundFrame wrap(int firstByte, ByteBuffer buffer, int payloadEnd) {
+        int length = payloadEnd - MAX_HEADER_LENGTH;
+        int headerLength = headerLength(length);
+        ByteBuffer frame = buffer.duplicate();
+        frame.position(MAX_HEADER_LENGTH - headerLength);
+        putHeader(frame, firstByte, length);
+        frame.position(MAX_HEADER_LENGTH - headerLength).limit(payloadEnd);
+        return new OutboundFrame(frame.slice(), firstByte & 0x0F, headerLength);
+    }
+
+    private static int headerLength(int length) {
+        return length < 126 ? 2 : length < 65536 ? 4 : 10;
+    }
+
+    static void putHeader(ByteBuffer frame, int firstByte, int length) {
+        frame.put((byte) firstByte);
+        if (length < 126) {
+            frame.put((byte) length);
+        } else if (length < 65536) {
+            frame.put((byte) 126);
+            frame.putShort((short) length);
+        } else {
+            frame.put((byte) 127);
+            frame.putLong(length);
+        }
+    }
+
+    public ByteBuffer buffer() {
+        return frame.duplicate();
+    }
+
+    public int length() {
+        return frame.remaining();
+    }
+
+    public int opcode() {
+        return opcode;
+    }
+
+    public AttachmentStore.Attachment attachment() {
+        return attachment;
+    }
+
+    public boolean isControl() {
+        return (opcode & 0x8) != 0;
+    }
+
+    public ByteBuffer payload() {
+        ByteBuffer payload = frame.duplicate();
+        payload.position(headerLength);
+        return payload;
+    }
+
+    public int payloadLength() {
+        return frame.remaining() - headerLength;
+    }
+
+    /**
+     * 수신자들의 대기열에 넣기 전에 한 번 붙인다. 대기열이 happens-before 를 보장하므로 volatile 이 필요 없다.
+     */
+    void trackFanOut(ChatMetrics.FanOut fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    void retain() {
+        if (pooled != null) pooled.retain();
+        if (fanOut != null) fanOut.retain();
+    }
+
+    void release() {
+        if (fanOut != null) fanOut.release();
+        if (pooled != null) pooled.release();
+    }
+
+    /**
+     * 컨텍스트 없이(server_no_context_takeover) 압축한 프레임. 처음 요청한 수신자가 한 번 압축하고 이후엔 재사용한다.
+     * 압축해도 작아지지 않으면 원래 프레임을 돌려준다.
+     */
+    OutboundFrame deflated(DeflatePool pool) {
+        OutboundFrame result = deflated;
+        if (result == null) {
+            synchronized (this) {
+                result = deflated;
+                if (result == null) {
+                    Deflater deflater = pool.borrowDeflater();
+                    try {
+                        result = PerMessageDeflate.compress(deflater, this);
+                    } finally {
+                        pool.release(deflater);
+                    }
+                    if (result.length() >= length()) {
+                        result = this;
+                    }
+                    deflated = result;
+                }
+            }
+        }
+        return result;
+    }
+}
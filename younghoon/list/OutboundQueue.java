@@ -0,0 +1,72 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 세션별 송신 대기열. 브로드캐스트 스레드는 offer() 만 하고 블록되지 않으며,
+ * 실제 소켓 쓰기는 세션의 writer 가 poll() 로 꺼내서 한다.
+ * 대기열이 가득 차면(high-water mark) 설정된 정책에 따라 처리한다.
+ * 들어간 프레임은 retain 하고, 정책으로 버리거나 clear() 로 비울 때 release 한다. 꺼낸 쪽은 쓰고 나서 release 한다.
+ */
+public class OutboundQueue {
+    public enum Policy { DROP_OLDEST, DROP_NEWEST, DISCONNECT }
+
+    public enum OfferResult { ACCEPTED, DROPPED, DISCONNECT }
+
+    private final ArrayBlockingQueue<OutboundFrame> frames;
+    private final Policy policy;
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    public OutboundQueue(int capacity, Policy policy) {
+        this.frames = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+    }
+
+    public OfferResult offer(OutboundFrame frame) {
+        frame.retain();
+        if (frames.offer(frame)) {
+            return OfferResult.ACCEPTED;
+        }
+
+        switch (policy) {
+            case DROP_OLDEST:
+                while (!frames.offer(frame)) {
+                    OutboundFrame oldest = frames.poll();
+                    if (oldest != null) {
+                        droppedFrames.incrementAndGet();
+                        oldest.release();
+                    }
+                }
+                return OfferResult.ACCEPTED;
+            case DROP_NEWEST:
+                droppedFrames.incrementAndGet();
+                frame.release();
+                return OfferResult.DROPPED;
+            default:
+                frame.release();
+                return OfferResult.DISCONNECT;
+        }
+    }
+
+    public OutboundFrame poll() {
+        return frames.poll();
+    }
+
+    public boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    public int depth() {
+        return frames.size();
+    }
+
+    public long droppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public void clear() {
+        OutboundFrame frame;
+        while ((frame = frames.poll()) != null) {
+            frame.release();
+        }
+    }
+}
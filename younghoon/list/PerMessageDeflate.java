@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 커넥션 하나에 대해 협상된 permessage-deflate (RFC 7692).
+ *
+ * server_no_context_takeover 면 메시지마다 독립적으로 압축하므로 결과가 수신자와 무관하다.
+ * 그래서 브로드캐스트 프레임은 OutboundFrame.deflated() 로 한 번만 압축해 같은 파라미터의 수신자가 공유한다.
+ * 컨텍스트를 유지하는 커넥션은 이전 메시지를 참조해 더 잘 압축되지만, 커넥션마다 Deflater 를 붙잡고 따로 압축한다.
+ * 수신 쪽도 client_no_context_takeover 면 메시지마다 풀에서 Inflater 를 빌리고, 아니면 커넥션이 하나를 가진다.
+ *
+ * java.util.zip 은 윈도 크기를 못 바꾸므로 server_max_window_bits 가 15 미만인 제안은 받지 않는다.
+ */
+public class PerMessageDeflate {
+    public static final String EXTENSION_NAME = "permessage-deflate";
+
+    private static final byte[] TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+    private final DeflatePool pool;
+    private final boolean serverNoContextTakeover;
+    private final boolean clientNoContextTakeover;
+    // 제안에 server_max_window_bits 가 있었으면 받아들인 값, 없었으면 0
+    private final int serverMaxWindowBits;
+    private final int minSize;
+    private final int maxMessageSize;
+
+    private final Object deflateLock = new Object();
+    private final Object inflateLock = new Object();
+    private Deflater deflater;
+    private Inflater inflater;
+    private ByteBuffer inflated;
+    private boolean released;
+
+    PerMessageDeflate(DeflatePool pool, boolean serverNoContextTakeover, boolean clientNoContextTakeover,
+                      int serverMaxWindowBits, int minSize, int maxMessageSize) {
+        this.pool = pool;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        this.serverMaxWindowBits = serverMaxWindowBits;
+        this.minSize = minSize;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Sec-WebSocket-Extensions 제안 중 처리할 수 있는 첫 permessage-deflate 를 받아들인다. 없으면 null.
+     */
+    public static PerMessageDeflate negotiate(String offers, ChatServerConfig config, DeflatePool pool) {
+        if (offers == null) return null;
+
+        for (String offer : offers.split(",")) {
+            String[] parts = offer.split(";");
+            if (!EXTENSION_NAME.equalsIgnoreCase(parts[0].trim())) continue;
+
+            boolean serverNoContextTakeover = !config.isDeflateServerContextTakeover();
+            boolean clientNoContextTakeover = !config.isDeflateClientContextTakeover();
+            int serverMaxWindowBits = 0;
+            boolean acceptable = true;
+            for (int i = 1; i < parts.length && acceptable; i++) {
+                String param = parts[i].trim();
+                int eq = param.indexOf('=');
+                String name = eq < 0 ? param : param.substring(0, eq).trim();
+                String value = eq < 0 ? null : param.substring(eq + 1).trim().replace("\"", "");
+                switch (name) {
+                    case "server_no_context_takeover":
+                        serverNoContextTakeover = true;
+                        break;
+                    case "client_no_context_takeover":
+                        clientNoContextTakeover = true;
+                        break;
+                    case "server_max_window_bits":
+                        acceptable = "15".equals(value);
+                        serverMaxWindowBits = 15;
+                        break;
+                    case "client_max_window_bits":
+                        // Inflater 는 어떤 윈도 크기의 입력도 풀 수 있으므로 응답에 넣지 않는다
+                        break;
+                    default:
+                        acceptable = false;
+                }
+            }
+            if (acceptable) {
+                return new PerMessageDeflate(pool, serverNoContextTakeover, clientNoContextTakeover,
+                    serverMaxWindowBits, config.getDeflateMinSize(), config.getMaxMessageSize());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 핸드셰이크 응답의 Sec-WebSocket-Extensions 값.
+     * 제안에 server_max_window_bits 가 있었으면 받아들인 값을 그대로 돌려준다 (RFC 7692 7.1.2.2).
+     */
+    public String responseHeaderValue() {
+        StringBuilder value = new StringBuilder(EXTENSION_NAME);
+        if (serverNoContextTakeover) value.append("; server_no_context_takeover");
+        if (clientNoContextTakeover) value.append("; client_no_context_takeover");
+        if (serverMaxWindowBits > 0) value.append("; server_max_window_bits=").append(serverMaxWindowBits);
+        return value.toString();
+    }
+
+    /**
+     * 송신할 프레임 버퍼. 제어 프레임과 minSize 미만의 메시지는 압축하지 않는다.
+     * 컨텍스트를 유지하는 커넥션에서는 보내는 순서대로 호출해야 하므로 세션의 writer 만 부른다.
+     */
+    public ByteBuffer encode(OutboundFrame frame) throws IOException {
+        if (frame.isControl() || frame.payloadLength() < minSize) {
+            return frame.buffer();
+        }
+        if (serverNoContextTakeover) {
+            return frame.deflated(pool).buffer();
+        }
+
+        synchronized (deflateLock) {
+            if (released) throw new IOException("Session already closed");
+            if (deflater == null) {
+                deflater = pool.borrowDeflater();
+            }
+            return compress(deflater, frame).buffer();
+        }
+    }
+
+    /**
+     * RSV1 이 켜진 메시지의 압축을 푼다. 반환 버퍼는 다음 호출 전까지만 유효하다.
+     */
+    public ByteBuffer inflate(ByteBuffer compressed) throws IOException {
+        synchronized (inflateLock) {
+            if (released) throw new IOException("Session already closed");
+
+            Inflater current;
+            if (clientNoContextTakeover) {
+                current = pool.borrowInflater();
+            } else {
+                if (inflater == null) {
+                    inflater = pool.borrowInflater();
+                }
+                current = inflater;
+            }
+
+            try {
+                if (inflated == null) {
+                    inflated = ByteBuffer.allocate(Math.min(4096, maxMessageSize));
+                }
+                inflated.clear();
+                current.setInput(compressed);
+                inflated = inflateAll(current, inflated);
+                current.setInput(TAIL);
+                inflated = inflateAll(current, inflated);
+                if (current.finished()) {
+                    // BFINAL 로 끝난 메시지 뒤에는 이어 쓸 컨텍스트가 없다
+                    current.reset();
+                }
+                inflated.flip();
+                return inflated;
+            } catch (DataFormatException e) {
+                throw new WebSocketFrameDecoder.ProtocolException(
+                    WebSocketFrameDecoder.CLOSE_INVALID_DATA, "Invalid deflate data: " + e.getMessage());
+            } finally {
+                if (clientNoContextTakeover) {
+                    pool.release(current);
+                }
+            }
+        }
+    }
+
+    private ByteBuffer inflateAll(Inflater inflater, ByteBuffer out) throws IOException, DataFormatException {
+        while (!inflater.finished()) {
+            if (!out.hasRemaining()) {
+                if (out.capacity() >= maxMessageSize) {
+                    throw new WebSocketFrameDecoder.ProtocolException(
+                        WebSocketFrameDecoder.CLOSE_TOO_BIG, "Inflated message exceeds " + maxMessageSize + " bytes");
+                }
+                ByteBuffer larger = ByteBuffer.allocate((int) Math.min((long) out.capacity() * 2, maxMessageSize));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            if (inflater.inflate(out) == 0) {
+                if (inflater.needsDictionary()) {
+                    throw new DataFormatException("preset dictionary is not allowed");
+                }
+                break;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 커넥션이 잡고 있던 Deflater/Inflater 를 풀에 돌려준다. 이후 encode/inflate 는 IOException.
+     */
+    public void release() {
+        synchronized (deflateLock) {
+            synchronized (inflateLock) {
+                if (released) return;
+                released = true;
+                if (deflater != null) {
+                    pool.release(deflater);
+                    deflater = null;
+                }
+                if (inflater != null) {
+                    pool.release(inflater);
+                    inflater = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 페이로드를 SYNC_FLUSH 로 압축하고 끝의 00 00 FF FF 를 떼어 RSV1 프레임으로 만든다.
+     * deflater 를 reset 하지 않으므로 컨텍스트를 유지할지는 호출하는 쪽이 정한다.
+     */
+    static OutboundFrame compress(Deflater deflater, OutboundFrame frame) {
+        ByteBuffer payload = frame.payload();
+        ByteBuffer out = ByteBuffer.allocate(OutboundFrame.MAX_HEADER_LENGTH + payload.remaining() / 2 + 64);
+        out.position(OutboundFrame.MAX_HEADER_LENGTH);
+
+        deflater.setInput(payload);
+        while (true) {
+            deflater.deflate(out, Deflater.SYNC_FLUSH);
+            // 출력 공간이 남았으면 입력을 다 소비하고 flush 까지 끝난 것
+            if (out.hasRemaining()) break;
+            ByteBuffer larger = ByteBuffer.allocate(out.capacity() * 2);
+            out.flip();
+            larger.put(out);
+            out = larger;
+        }
+        return OutboundFrame.wrap(OutboundFrame.FIN | OutboundFrame.RSV1 | frame.opcode(), out,
+            out.position() - TAIL.length);
+    }
+}
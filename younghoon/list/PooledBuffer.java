@@ -0,0 +1,64 @@
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BufferPool 에서 꺼낸 참조 카운트 버퍼. 참조 1 로 시작하고, 마지막 release() 에서 풀로 돌아간다.
+ * 돌아간 뒤에는 buffer() 로 받은 뷰를 포함해 더 쓰면 안 된다.
+ */
+public final class PooledBuffer {
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    private final BufferPool.SizeClass sizeClass;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private BufferPool.LeakReport leakReport;
+    private Cleaner.Cleanable leak;
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, BufferPool.SizeClass sizeClass) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.sizeClass = sizeClass;
+    }
+
+    void trackLeak(Cleaner cleaner, BufferPool.LeakReport report) {
+        leakReport = report;
+        leak = cleaner.register(this, report);
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public PooledBuffer retain() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("retain() after the buffer was released");
+            }
+            if (refCount.compareAndSet(count, count + 1)) return this;
+        }
+    }
+
+    /**
+     * 참조 하나를 놓는다. 마지막 참조였으면 풀에 돌려주고 true.
+     */
+    public boolean release() {
+        int count = refCount.decrementAndGet();
+        if (count > 0) return false;
+        if (count < 0) {
+            throw new IllegalStateException("release() called more times than retain()");
+        }
+
+        if (leak != null) {
+            // clean() 은 등록을 풀면서 보고 동작을 한 번 실행하므로, 먼저 해제됐다고 표시해 둔다
+            leakReport.released = true;
+            leak.clean();
+        }
+        pool.recycle(buffer, sizeClass);
+        return true;
+    }
+
+    public int refCount() {
+        return refCount.get();
+    }
+}
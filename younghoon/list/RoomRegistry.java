@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 방 이름 → 참여 세션 목록.
+ *
+ * 방들은 이름 해시로 샤드에 나뉘고, 입장/퇴장은 해당 샤드의 락만 잡는다.
+ * 참여자 목록은 copy-on-write 배열이라 브로드캐스트는 락 없이 그 방의 멤버만 순회한다.
+ * 작은 방이 많은 구성을 전제로 하므로 입장/퇴장 시 배열 복사 비용은 방 크기에 비례한다.
+ * 방마다 브로드캐스트 토큰 버킷을 둘 수 있다. 방이 비어 지워지면 버킷도 함께 사라진다.
+ */
+public class RoomRegistry {
+    public static final String DEFAULT_ROOM = "lobby";
+    private static final ChatSession[] NO_MEMBERS = new ChatSession[0];
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final double broadcastRate;
+    private final int broadcastBurst;
+
+    public RoomRegistry(int shardCount) {
+        this(shardCount, 0, 0);
+    }
+
+    /**
+     * @param broadcastRate  방 하나의 초당 브로드캐스트 수 (0 이면 제한 없음)
+     * @param broadcastBurst 몰아서 허용하는 브로드캐스트 수
+     */
+    public RoomRegistry(int shardCount, double broadcastRate, int broadcastBurst) {
+        this.broadcastRate = broadcastRate;
+        this.broadcastBurst = broadcastBurst;
+        int size = Integer.highestOneBit(Math.max(1, shardCount - 1)) << 1;
+        this.shards = new Shard[size];
+        this.shardMask = size - 1;
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    public void join(String roomName, ChatSession session) {
+        Shard shard = shardFor(roomName);
+        shard.lock.lock();
+        try {
+            Room room = shard.rooms.get(roomName);
+            if (room == null) {
+                room = new Room(broadcastRate > 0 ? new TokenBucket(broadcastRate, broadcastBurst) : null);
+                shard.rooms.put(roomName, room);
+            }
+            ChatSession[] members = room.members;
+            for (ChatSession member : members) {
+                if (member == session) return;
+            }
+            ChatSession[] updated = new ChatSession[members.length + 1];
+            System.arraycopy(members, 0, updated, 0, members.length);
+            updated[members.length] = session;
+            room.members = updated;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public void leave(String roomName, ChatSession session) {
+        Shard shard = shardFor(roomName);
+        shard.lock.lock();
+        try {
+            Room room = shard.rooms.get(roomName);
+            if (room == null) return;
+
+            ChatSession[] members = room.members;
+            int index = -1;
+            for (int i = 0; i < members.length; i++) {
+                if (members[i] == session) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) return;
+
+            if (members.length == 1) {
+                room.members = NO_MEMBERS;
+                shard.rooms.remove(roomName);
+                return;
+            }
+            ChatSession[] updated = new ChatSession[members.length - 1];
+            System.arraycopy(members, 0, updated, 0, index);
+            System.arraycopy(members, index + 1, updated, index, members.length - index - 1);
+            room.members = updated;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * 방의 현재 멤버 스냅샷. 반환된 배열은 수정하지 않는다.
+     */
+    public ChatSession[] members(String roomName) {
+        Room room = shardFor(roomName).rooms.get(roomName);
+        return room != null ? room.members : NO_MEMBERS;
+    }
+
+    /**
+     * 방의 브로드캐스트 토큰을 하나 쓴다. 제한이 없거나 방이 없으면 true.
+     */
+    public boolean tryBroadcast(String roomName, long nowNanos) {
+        Room room = shardFor(roomName).rooms.get(roomName);
+        return room == null || room.broadcastLimit == null || room.broadcastLimit.tryAcquire(nowNanos);
+    }
+
+    public int roomCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.rooms.size();
+        }
+        return count;
+    }
+
+    public List<String> roomNames() {
+        List<String> names = new ArrayList<>();
+        for (Shard shard : shards) {
+            names.addAll(shard.rooms.keySet());
+        }
+        return names;
+    }
+
+    private Shard shardFor(String roomName) {
+        int hash = roomName.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & shardMask];
+    }
+
+    private static final class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    }
+
+    private static final class Room {
+        volatile ChatSession[] members = NO_MEMBERS;
+        final TokenBucket broadcastLimit;
+
+        Room(TokenBucket broadcastLimit) {
+            this.broadcastLimit = broadcastLimit;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 세션 하나의 핸드셰이크/하트비트/유휴 타임아웃.
+ *
+ * 세션마다 하나를 만들어 HashedWheelTimer 에 계속 다시 건다. 읽을 때마다 타이머를 옮기지 않고
+ * 마지막 수신 시각만 적어 두었다가, 울렸을 때 그 시각을 보고 다음 시각을 정한다.
+ * - 핸드셰이크를 handshakeTimeout 안에 마치지 못하면 끊는다.
+ * - pingInterval 동안 아무것도 읽지 못했으면 ping 을 보내고, pongTimeout 안에 무엇이든 읽히지 않으면 끊는다.
+ * - idleTimeout 동안 텍스트/바이너리 메시지가 없으면 close 1001 로 끊는다. pong 만 오가는 연결도 포함된다.
+ */
+final class SessionHeartbeat extends HashedWheelTimer.Task {
+    enum Reason { HANDSHAKE, PONG, IDLE }
+
+    /**
+     * 타이머 스레드에서 호출된다. 소켓 I/O 는 세션의 이벤트 루프나 writer 로 넘겨야 한다.
+     */
+    interface Peer {
+        void sendPing();
+
+        void expire(Reason reason);
+    }
+
+    static final OutboundFrame PING = OutboundFrame.of(OutboundFrame.OPCODE_PING, new byte[0]);
+
+    private final HashedWheelTimer timer;
+    private final Peer peer;
+    private final long pingIntervalNanos;
+    private final long pongTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private volatile long lastReadNanos;
+    private volatile long lastMessageNanos;
+    private volatile boolean handshakeCompleted;
+    private volatile boolean stopped;
+    // 아래는 타이머 스레드만 건드린다
+    private boolean awaitingPong;
+    private long pingSentNanos;
+
+    SessionHeartbeat(HashedWheelTimer timer, Peer peer, long pingIntervalMillis, long pongTimeoutMillis,
+                     long idleTimeoutMillis) {
+        this.timer = timer;
+        this.peer = peer;
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis);
+        this.pongTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(pongTimeoutMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    void start(long handshakeTimeoutMillis) {
+        if (handshakeTimeoutMillis > 0) {
+            timer.schedule(this, handshakeTimeoutMillis);
+        }
+    }
+
+    void onRead() {
+        lastReadNanos = System.nanoTime();
+    }
+
+    void onMessage() {
+        lastMessageNanos = lastReadNanos;
+    }
+
+    void onHandshakeCompleted() {
+        long now = System.nanoTime();
+        lastReadNanos = now;
+        lastMessageNanos = now;
+        handshakeCompleted = true;
+        if (pingIntervalNanos > 0 || idleTimeoutNanos > 0) {
+            scheduleNext(now);
+        } else {
+            timer.cancel(this);
+        }
+    }
+
+    void stop() {
+        stopped = true;
+        timer.cancel(this);
+    }
+
+    @Override
+    protected void run() {
+        if (stopped) return;
+        long now = System.nanoTime();
+        if (!handshakeCompleted) {
+            peer.expire(Reason.HANDSHAKE);
+            return;
+        }
+        if (idleTimeoutNanos > 0 && now - lastMessageNanos >= idleTimeoutNanos) {
+            peer.expire(Reason.IDLE);
+            return;
+        }
+        if (pingIntervalNanos > 0) {
+            if (awaitingPong && lastReadNanos - pingSentNanos >= 0) {
+                // pong 이 아니어도 ping 이후에 읽힌 게 있으면 살아 있다
+                awaitingPong = false;
+            }
+            if (awaitingPong && now - pingSentNanos >= pongTimeoutNanos) {
+                peer.expire(Reason.PONG);
+                return;
+            }
+            if (!awaitingPong && now - lastReadNanos >= pingIntervalNanos) {
+                awaitingPong = true;
+                pingSentNanos = now;
+                peer.sendPing();
+            }
+        }
+        scheduleNext(now);
+    }
+
+    private void scheduleNext(long now) {
+        long next = Long.MAX_VALUE;
+        if (idleTimeoutNanos > 0) {
+            next = lastMessageNanos + idleTimeoutNanos - now;
+        }
+        if (pingIntervalNanos > 0) {
+            next = Math.min(next, awaitingPong
+                ? pingSentNanos + pongTimeoutNanos - now
+                : lastReadNanos + pingIntervalNanos - now);
+        }
+        if (!stopped) {
+            timer.schedule(this, Math.max(1, TimeUnit.NANOSECONDS.toMillis(next)));
+        }
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * ws:// 와 wss:// 비교 벤치마크.
+ *
+ * 같은 JVM 에 평문 서버와 TLS 서버를 하나씩 띄우고 (키스토어는 keytool 로 임시 디렉터리에 자체 서명 인증서를 만든다),
+ * 블로킹 소켓 클라이언트로 잰다.
+ *
+ * - handshake: 접속부터 WebSocket 101 응답까지. ws, TLS 전체 핸드셰이크(접속마다 새 클라이언트 SSLContext),
+ *   TLS 세션 재개(SSLContext 를 같이 써서 서버가 준 세션/티켓으로 다시 접속) 세 가지를 ChatServerBenchmark 와 같은 표로 출력한다.
+ * - throughput: 같은 방의 두 클라이언트 중 하나가 size 바이트 메시지를 계속 보내고, 다른 하나가 받은 바이트로 MB/s 를 잰다.
+ *
+ * java TlsBenchmark --mode=nio --seconds=3 --size=4096 --protocols=TLSv1.3,TLSv1.2
+ */
+public class TlsBenchmark {
+    private static final String PASSWORD = "changeit";
+
+    public static void main(String[] args) throws Exception {
+        ChatServerConfig.Mode mode = ChatServerConfig.Mode.NIO;
+        int seconds = 3;
+        int size = 4096;
+        String protocols = "TLSv1.3,TLSv1.2";
+        for (String arg : args) {
+            if (arg.startsWith("--mode=")) mode = ChatServerConfig.Mode.valueOf(arg.substring(7).toUpperCase(Locale.ROOT));
+            else if (arg.startsWith("--seconds=")) seconds = Integer.parseInt(arg.substring(10));
+            else if (arg.startsWith("--size=")) size = Integer.parseInt(arg.substring(7));
+            else if (arg.startsWith("--protocols=")) protocols = arg.substring(12);
+        }
+
+        Path directory = Files.createTempDirectory("chat-tls-bench");
+        Path keystore = directory.resolve("server.p12");
+        generateKeystore(keystore);
+
+        int wsPort = freePort();
+        int wssPort = freePort();
+        startServer(config(mode, wsPort));
+        startServer(config(mode, wssPort)
+            .setTlsKeystore(keystore.toString())
+            .setTlsKeystorePassword(PASSWORD)
+            .setTlsProtocols(Arrays.asList(protocols.split(","))));
+        waitForPort(wsPort);
+        waitForPort(wssPort);
+
+        System.out.printf("%s mode, TLS protocols %s%n", mode.name().toLowerCase(Locale.ROOT), protocols);
+        System.out.printf("%-28s %-12s %14s %12s %12s%n", "case", "variant", "ops/s", "p50 us", "p99 us");
+        benchmarkHandshake("ws", seconds, () -> plainSocket(wsPort));
+        benchmarkHandshake("wss full", seconds, () -> tlsSocket(clientContext(keystore), wssPort));
+        SSLContext shared = clientContext(keystore);
+        benchmarkHandshake("wss resumed", seconds, () -> tlsSocket(shared, wssPort));
+
+        System.out.printf("%n%-28s %-12s %14s%n", "case", "variant", "MB/s");
+        benchmarkThroughput("ws", seconds, size, () -> plainSocket(wsPort));
+        benchmarkThroughput("wss", seconds, size, () -> tlsSocket(shared, wssPort));
+
+        Files.delete(keystore);
+        Files.delete(directory);
+        System.exit(0);
+    }
+
+    private static ChatServerConfig config(ChatServerConfig.Mode mode, int port) {
+        // 전송량 제한, 기록, 첨부 파일을 끄고 소켓과 TLS 비용만 남긴다
+        return new ChatServerConfig()
+            .setPort(port)
+            .setMode(mode)
+            .setHistory(false)
+            .setAttachmentMaxSize(0)
+            .setClientRate(0)
+            .setRoomRate(0)
+            .setOutboundQueueCapacity(4096)
+            .setLogLevel(AsyncLog.Level.WARN);
+    }
+
+    private static void startServer(ChatServerConfig config) {
+        Thread thread = new Thread(() -> new ChatServer(config).start(), "bench-server-" + config.getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void generateKeystore(Path keystore) throws IOException, InterruptedException {
+        Process keytool = new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "keytool").toString(),
+            "-genkeypair", "-alias", "chat", "-keyalg", "EC", "-groupname", "secp256r1",
+            "-dname", "CN=localhost", "-validity", "1",
+            "-storetype", "PKCS12", "-keystore", keystore.toString(),
+            "-storepass", PASSWORD, "-keypass", PASSWORD)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        if (keytool.waitFor() != 0) {
+            throw new IOException("keytool failed with exit code " + keytool.exitValue());
+        }
+    }
+
+    // 자체 서명 인증서라 서버 키스토어를 그대로 신뢰 저장소로 쓴다
+    private static SSLContext clientContext(Path keystore) throws Exception {
+        KeyStore trusted = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keystore)) {
+            trusted.load(in, PASSWORD.toCharArray());
+        }
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(trusted);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    private static Socket plainSocket(int port) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    private static Socket tlsSocket(SSLContext context, int port) throws IOException {
+        SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket("127.0.0.1", port);
+        socket.setTcpNoDelay(true);
+        socket.startHandshake();
+        return socket;
+    }
+
+    private static void benchmarkHandshake(String variant, int seconds, Connector connector) throws Exception {
+        long warmupEnd = System.nanoTime() + 1_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            try (Socket socket = connector.connect()) {
+                upgrade(socket, "/websocket?room=handshake");
+            }
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        long iterations = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long now = start;
+        while (now < end) {
+            try (Socket socket = connector.connect()) {
+                upgrade(socket, "/websocket?room=handshake");
+            }
+            long finished = System.nanoTime();
+            histogram.record(finished - now);
+            now = finished;
+            iterations++;
+        }
+        System.out.printf("%-28s %-12s %14.0f %12.2f %12.2f%n", "handshake", variant,
+            iterations * 1e9 / (now - start), histogram.percentile(0.5) / 1e3, histogram.percentile(0.99) / 1e3);
+    }
+
+    /**
+     * 보내는 쪽은 자기 방송도 돌려받으므로 따로 읽어 버린다. 서버 송신 대기열이 넘쳐 버린 메시지는 받은 바이트에 들어가지 않는다.
+     */
+    private static void benchmarkThroughput(String variant, int seconds, int size, Connector connector)
+            throws Exception {
+        String path = "/websocket?room=throughput-" + variant;
+        try (Socket sender = connector.connect(); Socket receiver = connector.connect()) {
+            InputStream senderIn = upgrade(sender, path);
+            InputStream receiverIn = upgrade(receiver, path);
+            AtomicLong received = new AtomicLong();
+            startDrain(senderIn, new AtomicLong());
+            startDrain(receiverIn, received);
+
+            byte[] frame = textFrame(size);
+            OutputStream out = sender.getOutputStream();
+            // 암복호화 경로가 JIT 컴파일될 때까지 기다린다. 1초로는 wss 가 절반 이하로 나온다.
+            long warmupEnd = System.nanoTime() + 3_000_000_000L;
+            while (System.nanoTime() < warmupEnd) {
+                out.write(frame);
+            }
+            long startBytes = received.get();
+            long start = System.nanoTime();
+            long end = start + seconds * 1_000_000_000L;
+            while (System.nanoTime() < end) {
+                out.write(frame);
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-28s %-12s %14.1f%n", "throughput " + size + "B", variant,
+                (received.get() - startBytes) / elapsed / (1 << 20));
+        }
+    }
+
+    private static void startDrain(InputStream in, AtomicLong counter) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    counter.addAndGet(read);
+                }
+            } catch (IOException ignored) {
+                // 끝날 때 소켓을 닫는다
+            }
+        }, "bench-drain");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 업그레이드 요청을 보내고 응답 헤더까지 읽는다. 헤더 뒤에 붙어 온 바이트는 없다고 보고 소켓 입력을 그대로 돌려준다.
+     */
+    private static InputStream upgrade(Socket socket, String path) throws IOException {
+        String key = Base64.getEncoder().encodeToString(new byte[16]);
+        String request = "GET " + path + " HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+            + "Sec-WebSocket-Key: " + key + "\r\nSec-WebSocket-Version: 13\r\n\r\n";
+        OutputStream out = socket.getOutputStream();
+        out.write(request.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+        int matched = 0;
+        while (matched < 4) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed during WebSocket handshake");
+            }
+            matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+        return in;
+    }
+
+    // 마스킹 키를 0 으로 두면 본문을 그대로 보낼 수 있어 클라이언트 비용이 측정에 덜 섞인다
+    private static byte[] textFrame(int size) {
+        StringBuilder json = new StringBuilder("{\"type\":\"message\",\"username\":\"bench\",\"content\":\"");
+        while (json.length() < size - 2) {
+            json.append('x');
+        }
+        byte[] payload = json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+        int headerLength = payload.length < 126 ? 2 : payload.length < 65536 ? 4 : 10;
+        byte[] frame = new byte[headerLength + 4 + payload.length];
+        frame[0] = (byte) (OutboundFrame.FIN | OutboundFrame.OPCODE_TEXT);
+        if (payload.length < 126) {
+            frame[1] = (byte) (0x80 | payload.length);
+        } else if (payload.length < 65536) {
+            frame[1] = (byte) (0x80 | 126);
+            frame[2] = (byte) (payload.length >>> 8);
+            frame[3] = (byte) payload.length;
+        } else {
+            frame[1] = (byte) (0x80 | 127);
+            for (int i = 0; i < 8; i++) {
+                frame[2 + i] = (byte) ((long) payload.length >>> (56 - 8 * i));
+            }
+        }
+        System.arraycopy(payload, 0, frame, headerLength + 4, payload.length);
+        return frame;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void waitForPort(int port) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) throw e;
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private interface Connector {
+        Socket connect() throws Exception;
+    }
+}
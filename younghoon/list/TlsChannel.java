@@ -0,0 +1,330 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * SocketChannel 위의 TLS 연결 (SSLEngine).
+ *
+ * 세션 코드는 평문으로 read/write 하고, 이 채널이 소켓과의 사이에서 암호화/복호화한다. 블로킹/논블로킹 채널 모두에서 쓸 수 있다.
+ * 핸드셰이크는 첫 read 가 시작해 진행하며 위임 작업(delegated task)도 그 자리에서 실행한다. 핸드셰이크가 끝나기 전의 write 는
+ * SSLException 이다 (보낼 평문이 생기는 건 첫 요청을 읽은 뒤다).
+ * 암호문 수신/송신 버퍼와 복호화한 평문 버퍼는 BufferPool 에서 빌리고 release() 로 돌려준다.
+ *
+ * 논블로킹 채널에서 write 는 평문을 다 암호화하고도 암호문을 소켓에 덜 썼을 수 있다. hasPendingWrites() 가 true 면
+ * OP_WRITE 를 기다렸다가 flush() 한다. read 와 write 는 서로 다른 스레드에서 동시에 불러도 되지만 각각은 한 스레드만 부른다.
+ */
+final class TlsChannel implements ByteChannel, GatheringByteChannel {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    // wrap 과 netOut 은 write 와 read 의 핸드셰이크가 같이 쓴다
+    private final ReentrantLock wrapLock = new ReentrantLock();
+    private final PooledBuffer netInBuffer;
+    private final PooledBuffer appInBuffer;
+    private final PooledBuffer netOutBuffer;
+    // 셋 다 쓰기 모드로 둔다. position 까지가 각각 아직 unwrap 하지 않은 암호문, 아직 넘기지 않은 평문,
+    // 아직 소켓에 쓰지 못한 암호문이다.
+    private final ByteBuffer netIn;
+    private final ByteBuffer appIn;
+    private final ByteBuffer netOut;
+    private boolean released;
+
+    TlsChannel(SocketChannel channel, SSLEngine engine, BufferPool pool) {
+        this.channel = channel;
+        this.engine = engine;
+        int packetSize = engine.getSession().getPacketBufferSize();
+        this.netInBuffer = pool.acquire(packetSize);
+        this.appInBuffer = pool.acquire(engine.getSession().getApplicationBufferSize());
+        this.netOutBuffer = pool.acquire(packetSize);
+        this.netIn = netInBuffer.buffer();
+        this.appIn = appInBuffer.buffer();
+        this.netOut = netOutBuffer.buffer();
+        netIn.clear();
+        appIn.clear();
+        netOut.clear();
+    }
+
+    /**
+     * 키스토어로 서버용 SSLContext 를 만든다. 세션 캐시에 남은 세션은 같은 클라이언트가 다시 접속할 때
+     * 전체 핸드셰이크 없이 재개(resumption)하는 데 쓴다.
+     */
+    static SSLContext serverContext(Path keystore, char[] password, String type, int sessionCacheSize,
+                                    int sessionTimeoutSeconds) throws IOException, GeneralSecurityException {
+        KeyStore keys = KeyStore.getInstance(type);
+        try (InputStream in = Files.newInputStream(keystore)) {
+            keys.load(in, password);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keys, password);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        SSLSessionContext sessions = context.getServerSessionContext();
+        sessions.setSessionCacheSize(sessionCacheSize);
+        sessions.setSessionTimeout(sessionTimeoutSeconds);
+        return context;
+    }
+
+    /**
+     * 평문을 dst 에 넣는다. 상대가 연결을 닫았으면 -1, 논블로킹 채널에 아직 읽을 게 없으면 0.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        while (true) {
+            if (appIn.position() > 0) {
+                return drainAppIn(dst);
+            }
+            if (engine.isInboundDone()) {
+                return -1;
+            }
+
+            netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+            switch (result.getStatus()) {
+                case BUFFER_UNDERFLOW:
+                    int read = channel.read(netIn);
+                    if (read < 0) {
+                        closeInbound();
+                        return -1;
+                    }
+                    if (read == 0) {
+                        return 0;
+                    }
+                    continue;
+                case BUFFER_OVERFLOW:
+                    // appIn 을 비운 뒤에만 unwrap 하고 크기는 세션의 최대 평문 크기 이상이다
+                    throw new SSLException("TLS record larger than the application buffer");
+                case CLOSED:
+                    // 상대가 close_notify 를 보냈다
+                    return -1;
+                default:
+                    runHandshake(result.getHandshakeStatus());
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[] {src}, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * 평문을 암호화해 소켓에 쓰고, 받아 간 평문 바이트 수를 돌려준다.
+     * 논블로킹 채널에서 소켓이 차면 거기서 멈추며, 남은 암호문은 다음 write/flush 가 먼저 보낸다.
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        wrapLock.lock();
+        try {
+            checkOpen();
+            long consumed = 0;
+            while (flushNetOut() && hasRemaining(srcs, offset, length)) {
+                SSLEngineResult result = engine.wrap(srcs, offset, length, netOut);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    throw new ClosedChannelException();
+                }
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                }
+                consumed += result.bytesConsumed();
+                if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                    // 상대의 핸드셰이크 메시지를 기다리는 중이라 보낼 수 없다. 0 을 돌려주면 호출자가 재시도만 반복한다.
+                    throw new SSLException("TLS handshake not finished");
+                }
+            }
+            return consumed;
+        } finally {
+            wrapLock.unlock();
+        }
+    }
+
+    /**
+     * 소켓에 덜 쓴 암호문을 마저 쓴다. 다 썼으면 true.
+     */
+    boolean flush() throws IOException {
+        wrapLock.lock();
+        try {
+            checkOpen();
+            return flushNetOut();
+        } finally {
+            wrapLock.unlock();
+        }
+    }
+
+    /**
+     * 소켓에 덜 쓴 암호문이 있다. 쓰는 스레드만 본다.
+     */
+    boolean hasPendingWrites() {
+        return netOut.position() > 0;
+    }
+
+    /**
+     * 소켓을 더 읽지 않아도 read 로 꺼낼 수 있는 데이터가 남았을 수 있다. 읽는 스레드만 본다.
+     */
+    boolean hasBufferedInput() {
+        return appIn.position() > 0 || netIn.position() > 0;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * 소켓을 닫는다. 논블로킹 채널이면 그 전에 close_notify 를 한 번 보내 본다.
+     * 블로킹 채널에서는 상대가 읽지 않으면 쓰기가 막히므로 보내지 않는다.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isBlocking() && wrapLock.tryLock()) {
+            try {
+                if (!released) {
+                    engine.closeOutbound();
+                    engine.wrap(EMPTY, netOut);
+                    flushNetOut();
+                }
+            } catch (IOException e) {
+                // 어차피 닫는다
+            } finally {
+                wrapLock.unlock();
+            }
+        }
+        channel.close();
+    }
+
+    /**
+     * 버퍼를 풀에 돌려준다. 읽는 스레드가 더 이상 read 하지 않을 때 부른다. 이후 write 는 ClosedChannelException.
+     */
+    void release() {
+        wrapLock.lock();
+        try {
+            if (released) return;
+            released = true;
+            netInBuffer.release();
+            appInBuffer.release();
+            netOutBuffer.release();
+        } finally {
+            wrapLock.unlock();
+        }
+    }
+
+    private void runHandshake(SSLEngineResult.HandshakeStatus status) throws IOException {
+        while (true) {
+            switch (status) {
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    status = engine.getHandshakeStatus();
+                    break;
+                case NEED_WRAP:
+                    status = wrapHandshake();
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    // 이어서 보낼 핸드셰이크 메시지(ServerHello, 인증서, Finished ...)를 netOut 에 모아 한 번에 쓴다.
+    // 레코드마다 따로 쓰면 Nagle 과 지연 ACK 가 맞물려 왕복마다 수십 ms 씩 늦어진다.
+    private SSLEngineResult.HandshakeStatus wrapHandshake() throws IOException {
+        wrapLock.lock();
+        try {
+            checkOpen();
+            SSLEngineResult.HandshakeStatus status;
+            do {
+                SSLEngineResult result = engine.wrap(EMPTY, netOut);
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW && !flushNetOut()) {
+                    throw new SSLException("TLS handshake output did not fit the send buffer");
+                }
+                status = result.getHandshakeStatus();
+                if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                    status = engine.getHandshakeStatus();
+                }
+            } while (status == SSLEngineResult.HandshakeStatus.NEED_WRAP);
+            // 논블로킹이면 덜 나갈 수 있다. 쓰는 쪽이 hasPendingWrites() 를 보고 이어서 보낸다.
+            flushNetOut();
+            return status;
+        } finally {
+            wrapLock.unlock();
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private boolean flushNetOut() throws IOException {
+        if (netOut.position() == 0) return true;
+        netOut.flip();
+        try {
+            while (netOut.hasRemaining() && channel.write(netOut) > 0) {
+                // 블로킹 채널은 다 쓸 때까지, 논블로킹 채널은 소켓이 찰 때까지
+            }
+            return !netOut.hasRemaining();
+        } finally {
+            netOut.compact();
+        }
+    }
+
+    private int drainAppIn(ByteBuffer dst) {
+        appIn.flip();
+        int count = Math.min(appIn.remaining(), dst.remaining());
+        ByteBuffer slice = appIn.duplicate();
+        slice.limit(slice.position() + count);
+        dst.put(slice);
+        appIn.position(appIn.position() + count);
+        appIn.compact();
+        return count;
+    }
+
+    // close_notify 없이 끊겼다. 잘린 공격(truncation)일 수 있다는 예외는 로그로만 남긴다.
+    private void closeInbound() {
+        try {
+            engine.closeInbound();
+        } catch (SSLException e) {
+            AsyncLog.debug("TLS peer closed without close_notify: %s", e.getMessage());
+        }
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (released) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (buffers[i].hasRemaining()) return true;
+        }
+        return false;
+    }
+}
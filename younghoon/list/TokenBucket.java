@@ -0,0 +1,57 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 락 없는 토큰 버킷.
+ *
+ * GCRA(가상 스케줄) 방식이라 상태는 "버킷이 다시 가득 차는 시각" long 하나뿐이고, 판정은 CAS 한 번이다.
+ * 초당 ratePerSecond 개씩 채워지고 burst 개까지 몰아 쓸 수 있다. 여러 스레드가 같은 버킷을 써도 된다.
+ * 메시지 수는 tryAcquire 로 넘치면 버리고, 바이트 수는 acquire 로 일단 쓰고 돌려받은 시간만큼 쉬는 식으로 쓴다.
+ */
+public final class TokenBucket {
+    private final double nanosPerPermit;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    // 토큰을 하나 쓸 때마다 interval 씩 미래로 민다. now 보다 과거면 버킷이 가득 찬 상태다.
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("rate and burst must be positive");
+        }
+        this.nanosPerPermit = 1e9 / ratePerSecond;
+        this.intervalNanos = Math.max(1, (long) nanosPerPermit);
+        this.toleranceNanos = (long) (nanosPerPermit * burst);
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = (current - nowNanos > 0 ? current : nowNanos) + intervalNanos;
+            if (next - nowNanos > toleranceNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * permits 개를 한도를 넘더라도 가져가고, 다시 한도 안으로 돌아올 때까지 쉬어야 할 나노초를 돌려준다 (0 이면 바로 계속).
+     * 이미 읽은 바이트처럼 되돌릴 수 없는 양을 잴 때 쓴다.
+     */
+    public long acquire(long permits, long nowNanos) {
+        long cost = (long) Math.ceil(permits * nanosPerPermit);
+        while (true) {
+            long current = fullAt.get();
+            long next = (current - nowNanos > 0 ? current : nowNanos) + cost;
+            if (fullAt.compareAndSet(current, next)) {
+                return Math.max(0, next - nowNanos - toleranceNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 사용자 이름 → 세션 색인.
+ *
+ * 입장, 이름 변경, 퇴장 때 갱신하고 DM 과 접속 확인(presence)은 방을 순회하지 않고 여기서 바로 찾는다.
+ * 이름은 노드 안에서 유일하다. 다른 세션이 쓰는 이름으로는 바꿀 수 없고, 입장할 때 기본 이름이 겹치면 뒤에 번호를 붙인다.
+ */
+public class UserDirectory {
+    private final ConcurrentHashMap<String, ChatSession> sessions = new ConcurrentHashMap<>();
+
+    public void register(ChatSession session) {
+        String base = session.getUsername();
+        String name = base;
+        for (int suffix = 2; sessions.putIfAbsent(name, session) != null; suffix++) {
+            name = base + "#" + suffix;
+        }
+        session.setUsername(name);
+    }
+
+    /**
+     * 세션 이름을 바꾼다. 이미 다른 세션이 쓰는 이름이면 false.
+     * 새 이름을 먼저 차지한 뒤 옛 이름을 놓으므로 바꾸는 사이에도 세션은 어느 한 이름으로는 찾아진다.
+     */
+    public boolean rename(ChatSession session, String newName) {
+        ChatSession owner = sessions.putIfAbsent(newName, session);
+        if (owner != null) {
+            return owner == session;
+        }
+        String oldName = session.getUsername();
+        session.setUsername(newName);
+        sessions.remove(oldName, session);
+        return true;
+    }
+
+    public void unregister(ChatSession session) {
+        sessions.remove(session.getUsername(), session);
+    }
+
+    public ChatSession find(String username) {
+        return username != null ? sessions.get(username) : null;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
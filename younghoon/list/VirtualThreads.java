@@ -0,0 +1,32 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JDK 21 의 가상 스레드 실행기를 리플렉션으로 생성한다.
+ * 소스는 JDK 11 이상에서 컴파일되고, 가상 스레드 지원 여부는 실행 JDK 로 판단한다.
+ */
+public final class VirtualThreads {
+    private VirtualThreads() {}
+
+    public static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(
+                "Virtual threads require JDK 21+ (running " + System.getProperty("java.version") + ")");
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+}
@@ -0,0 +1,474 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RFC 6455 프레임 디코더 (서버 측).
+ *
+ * 입력 ByteBuffer 를 받은 만큼만 소비하는 상태 기계라서 프레임이 여러 read 에 걸쳐 와도 된다.
+ * 조각난(fragmented) 메시지는 재사용 버퍼 하나에 이어 붙이고, 마스크는 8바이트 단위로 벗긴다.
+ * 제어 프레임(ping/pong/close)은 데이터 메시지 조각 사이에 끼어 와도 바로 전달한다.
+ * permessage-deflate 가 협상되면 RSV1 이 켜진 메시지를 다 모은 뒤 압축을 풀어 전달한다.
+ * 텍스트 메시지와 close 사유는 전달하기 전에 UTF-8 인지 확인하고, 아니면 1007 로 닫는다 (RFC 6455 8.1).
+ *
+ * Listener 에 넘기는 payload 버퍼는 콜백이 끝날 때까지만 유효하다.
+ * BufferPool 을 주면 메시지 버퍼를 풀에서 빌리고, 큰 메시지가 끝나면 기본 크기로 돌려놓는다. 다 쓰면 release().
+ *
+ * setBinaryStreaming 을 켜면 압축되지 않은 바이너리 메시지는 모으지 않고 입력 버퍼에서 마스크만 벗겨 도착한 만큼씩 넘긴다.
+ * 이때는 입력 버퍼를 제자리에서 고쳐 쓰므로 쓰기 가능한 버퍼를 넘겨야 한다.
+ */
+public class WebSocketFrameDecoder {
+    public static final int OPCODE_CONTINUATION = 0x0;
+    public static final int OPCODE_TEXT = 0x1;
+    public static final int OPCODE_BINARY = 0x2;
+    public static final int OPCODE_CLOSE = 0x8;
+    public static final int OPCODE_PING = 0x9;
+    public static final int OPCODE_PONG = 0xA;
+
+    public static final int CLOSE_NORMAL = 1000;
+    public static final int CLOSE_PROTOCOL_ERROR = 1002;
+    public static final int CLOSE_INVALID_DATA = 1007;
+    public static final int CLOSE_TOO_BIG = 1009;
+
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    public interface Listener {
+        void onText(ByteBuffer payload) throws IOException;
+
+        void onBinary(ByteBuffer payload) throws IOException;
+
+        /**
+         * 바이너리 스트리밍을 켰을 때 onBinary 대신 불린다. 메시지가 끝나면 빈 chunk 와 last=true 로 한 번 더 불린다.
+         */
+        default void onBinaryFragment(ByteBuffer chunk, boolean last) throws IOException {
+        }
+
+        void onPing(ByteBuffer payload) throws IOException;
+
+        void onPong(ByteBuffer payload) throws IOException;
+
+        void onClose(int code, String reason) throws IOException;
+    }
+
+    /**
+     * 프로토콜 위반. closeCode 로 close 프레임을 보내고 연결을 끊으면 된다.
+     */
+    public static class ProtocolException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int closeCode;
+
+        public ProtocolException(int closeCode, String message) {
+            super(message);
+            this.closeCode = closeCode;
+        }
+
+        public int getCloseCode() {
+            return closeCode;
+        }
+    }
+
+    private enum State { HEADER, EXTENDED_LENGTH, MASK, PAYLOAD }
+
+    private final Listener listener;
+    private final int maxMessageSize;
+    private final boolean requireMask;
+
+    private State state = State.HEADER;
+    private boolean fin;
+    private boolean rsv1;
+    private int opcode;
+    private boolean masked;
+    private int extendedLengthBytes;
+    private long payloadLength;
+    private long payloadRemaining;
+    private final byte[] maskKey = new byte[4];
+    private int maskKeyRead;
+    private int maskIndex;
+    private final ByteBuffer scratch = ByteBuffer.allocate(8);
+
+    private int messageOpcode = -1;
+    private boolean messageCompressed;
+    private PerMessageDeflate deflate;
+    private final BufferPool pool;
+    private final int initialMessageCapacity;
+    private PooledBuffer messageBuffer;
+    private ByteBuffer message;
+    private final ByteBuffer control = ByteBuffer.allocate(MAX_CONTROL_PAYLOAD);
+    // UTF-8 검사용. 잘못된 바이트를 만나면 바꾸지 않고 알려 주며, 디코딩한 글자는 scratchChars 에 덮어쓰고 버린다.
+    // 유휴 커넥션이 메모리를 쓰지 않도록 첫 텍스트 메시지에서 만든다.
+    private CharsetDecoder utf8;
+    private CharBuffer scratchChars;
+    // 0 이면 바이너리도 모아서 onBinary 로 넘긴다
+    private long maxStreamedSize;
+    private boolean streaming;
+    private long streamedLength;
+
+    public WebSocketFrameDecoder(Listener listener, int maxMessageSize, boolean requireMask) {
+        this(listener, maxMessageSize, requireMask, null);
+    }
+
+    public WebSocketFrameDecoder(Listener listener, int maxMessageSize, boolean requireMask, BufferPool pool) {
+        this.listener = listener;
+        this.maxMessageSize = maxMessageSize;
+        this.requireMask = requireMask;
+        this.pool = pool;
+        this.initialMessageCapacity = Math.min(4096, maxMessageSize);
+        this.message = allocateMessage(initialMessageCapacity);
+    }
+
+    /**
+     * 풀에서 빌린 메시지 버퍼를 돌려준다. 이후에는 decode 하면 안 된다.
+     */
+    public void release() {
+        if (messageBuffer != null) {
+            messageBuffer.release();
+            messageBuffer = null;
+        }
+    }
+
+    private ByteBuffer allocateMessage(int capacity) {
+        if (pool == null) {
+            return ByteBuffer.allocate(capacity);
+        }
+        messageBuffer = pool.acquire(capacity);
+        // 등급 크기만큼 다 쓴다. ensureMessageCapacity 는 capacity() 를 기준으로 키운다.
+        ByteBuffer buffer = messageBuffer.buffer();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 핸드셰이크에서 permessage-deflate 가 협상됐을 때 설정한다. 이후 RSV1 메시지를 받을 수 있다.
+     */
+    public void setPerMessageDeflate(PerMessageDeflate deflate) {
+        this.deflate = deflate;
+    }
+
+    /**
+     * 압축되지 않은 바이너리 메시지를 maxSize 바이트까지 조각 단위로 넘긴다. 0 이면 끈다.
+     */
+    public void setBinaryStreaming(long maxSize) {
+        this.maxStreamedSize = maxSize;
+    }
+
+    /**
+     * in 에서 읽을 수 있는 만큼 디코딩한다. 덜 온 프레임은 상태로 기억하고 다음 호출에서 이어 간다.
+     */
+    public void decode(ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            switch (state) {
+                case HEADER:
+                    if (in.remaining() < 2) {
+                        return;
+                    }
+                    readHeader(in.get() & 0xFF, in.get() & 0xFF);
+                    break;
+                case EXTENDED_LENGTH:
+                    if (!readExtendedLength(in)) {
+                        return;
+                    }
+                    break;
+                case MASK:
+                    while (maskKeyRead < 4 && in.hasRemaining()) {
+                        maskKey[maskKeyRead++] = in.get();
+                    }
+                    if (maskKeyRead < 4) {
+                        return;
+                    }
+                    beginPayload();
+                    break;
+                case PAYLOAD:
+                    readPayload(in);
+                    break;
+            }
+        }
+        if (state == State.PAYLOAD && payloadRemaining == 0) {
+            // 길이 0 프레임은 입력이 없어도 완료된다
+            completeFrame();
+        }
+    }
+
+    private void readHeader(int firstByte, int secondByte) throws IOException {
+        fin = (firstByte & 0x80) != 0;
+        rsv1 = (firstByte & 0x40) != 0;
+        opcode = firstByte & 0x0F;
+        if ((firstByte & 0x30) != 0) {
+            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "RSV2/RSV3 bits set");
+        }
+        // RSV1 은 permessage-deflate 메시지의 첫 프레임에만 켤 수 있다
+        if (rsv1 && (deflate == null || (opcode != OPCODE_TEXT && opcode != OPCODE_BINARY))) {
+            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "RSV1 bit set without permessage-deflate");
+        }
+        masked = (secondByte & 0x80) != 0;
+        if (requireMask && !masked) {
+            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Client frames must be masked");
+        }
+
+        boolean isControl = (opcode & 0x8) != 0;
+        if (isControl) {
+            if (opcode != OPCODE_CLOSE && opcode != OPCODE_PING && opcode != OPCODE_PONG) {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Unknown control opcode " + opcode);
+            }
+            if (!fin) {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Fragmented control frame");
+            }
+        } else if (opcode == OPCODE_CONTINUATION) {
+            if (messageOpcode < 0) {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Continuation frame without a message");
+            }
+        } else if (opcode == OPCODE_TEXT || opcode == OPCODE_BINARY) {
+            if (messageOpcode >= 0) {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "New message before previous one finished");
+            }
+        } else {
+            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Unknown data opcode " + opcode);
+        }
+
+        int length = secondByte & 0x7F;
+        if (length == 126) {
+            extendedLengthBytes = 2;
+            scratch.clear();
+            state = State.EXTENDED_LENGTH;
+        } else if (length == 127) {
+            extendedLengthBytes = 8;
+            scratch.clear();
+            state = State.EXTENDED_LENGTH;
+        } else {
+            setPayloadLength(length);
+        }
+    }
+
+    private boolean readExtendedLength(ByteBuffer in) throws IOException {
+        while (scratch.position() < extendedLengthBytes && in.hasRemaining()) {
+            scratch.put(in.get());
+        }
+        if (scratch.position() < extendedLengthBytes) {
+            return false;
+        }
+
+        long length = extendedLengthBytes == 2 ? scratch.getShort(0) & 0xFFFF : scratch.getLong(0);
+        if (length < 0) {
+            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Payload length has the most significant bit set");
+        }
+        setPayloadLength(length);
+        return true;
+    }
+
+    private void setPayloadLength(long length) throws IOException {
+        boolean isControl = (opcode & 0x8) != 0;
+        if (isControl && length > MAX_CONTROL_PAYLOAD) {
+            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Control frame payload too large");
+        }
+        // 크기 제한은 페이로드 버퍼를 늘리기 전에, 헤더만 보고 판단한다
+        boolean streamed = opcode == OPCODE_CONTINUATION ? streaming : isStreamed(opcode, rsv1);
+        long limit = streamed ? maxStreamedSize : maxMessageSize;
+        long buffered = opcode != OPCODE_CONTINUATION ? 0 : streamed ? streamedLength : message.position();
+        if (!isControl && buffered + length > limit) {
+            throw new ProtocolException(CLOSE_TOO_BIG, "Message exceeds " + limit + " bytes");
+        }
+
+        payloadLength = length;
+        if (masked) {
+            maskKeyRead = 0;
+            state = State.MASK;
+        } else {
+            beginPayload();
+        }
+    }
+
+    private void beginPayload() {
+        payloadRemaining = payloadLength;
+        maskIndex = 0;
+        boolean isControl = (opcode & 0x8) != 0;
+        if (isControl) {
+            control.clear();
+        } else {
+            if (opcode != OPCODE_CONTINUATION) {
+                messageOpcode = opcode;
+                messageCompressed = rsv1;
+                streaming = isStreamed(opcode, rsv1);
+                streamedLength = 0;
+                message.clear();
+            }
+        }
+        state = State.PAYLOAD;
+    }
+
+    private boolean isStreamed(int dataOpcode, boolean compressed) {
+        return maxStreamedSize > 0 && dataOpcode == OPCODE_BINARY && !compressed;
+    }
+
+    private void ensureMessageCapacity(long additional) {
+        long required = message.position() + additional;
+        if (required <= message.capacity()) return;
+
+        int capacity = message.capacity();
+        while (capacity < required) {
+            capacity = (int) Math.min((long) capacity * 2, maxMessageSize);
+        }
+        PooledBuffer previous = messageBuffer;
+        ByteBuffer larger = allocateMessage(capacity);
+        message.flip();
+        larger.put(message);
+        message = larger;
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    private void readPayload(ByteBuffer in) throws IOException {
+        int chunk = (int) Math.min(payloadRemaining, in.remaining());
+        if (streaming && (opcode & 0x8) == 0) {
+            streamPayload(in, chunk);
+            return;
+        }
+        if ((opcode & 0x8) == 0) {
+            // 헤더의 길이만큼 미리 잡지 않고 실제로 도착한 만큼만 키운다.
+            // 큰 길이를 선언만 하고 보내지 않는 연결이 메모리를 잡아 두지 못하게 한다.
+            ensureMessageCapacity(chunk);
+        }
+        ByteBuffer target = (opcode & 0x8) != 0 ? control : message;
+        int start = target.position();
+
+        ByteBuffer slice = in.duplicate();
+        slice.limit(slice.position() + chunk);
+        target.put(slice);
+        in.position(in.position() + chunk);
+
+        if (masked) {
+            unmask(target, start, start + chunk, maskKey, maskIndex);
+            maskIndex = (maskIndex + chunk) & 3;
+        }
+        payloadRemaining -= chunk;
+        if (payloadRemaining == 0) {
+            completeFrame();
+        }
+    }
+
+    // 메시지 버퍼를 거치지 않고 입력 버퍼의 해당 구간을 그대로 넘긴다
+    private void streamPayload(ByteBuffer in, int chunk) throws IOException {
+        int start = in.position();
+        if (masked) {
+            unmask(in, start, start + chunk, maskKey, maskIndex);
+            maskIndex = (maskIndex + chunk) & 3;
+        }
+        ByteBuffer slice = in.duplicate();
+        slice.limit(start + chunk);
+        in.position(start + chunk);
+        streamedLength += chunk;
+        payloadRemaining -= chunk;
+        listener.onBinaryFragment(slice, false);
+        if (payloadRemaining == 0) {
+            completeFrame();
+        }
+    }
+
+    /**
+     * buffer[from, to) 구간의 마스크를 벗긴다. maskOffset 은 구간 첫 바이트에 대응하는 마스크 위치.
+     * 8바이트씩 long XOR 하고 나머지만 바이트 단위로 처리한다.
+     */
+    static void unmask(ByteBuffer buffer, int from, int to, byte[] mask, int maskOffset) {
+        long mask64 = 0;
+        for (int i = 0; i < 8; i++) {
+            mask64 = (mask64 << 8) | (mask[(maskOffset + i) & 3] & 0xFF);
+        }
+
+        int index = from;
+        for (; index + 8 <= to; index += 8) {
+            buffer.putLong(index, buffer.getLong(index) ^ mask64);
+        }
+        for (int i = index - from; index < to; index++, i++) {
+            buffer.put(index, (byte) (buffer.get(index) ^ mask[(maskOffset + i) & 3]));
+        }
+    }
+
+    private void completeFrame() throws IOException {
+        state = State.HEADER;
+        switch (opcode) {
+            case OPCODE_PING:
+                control.flip();
+                listener.onPing(control);
+                return;
+            case OPCODE_PONG:
+                control.flip();
+                listener.onPong(control);
+                return;
+            case OPCODE_CLOSE:
+                control.flip();
+                completeClose();
+                return;
+            default:
+                if (!fin) return;
+
+                int completedOpcode = messageOpcode;
+                messageOpcode = -1;
+                if (streaming) {
+                    streaming = false;
+                    listener.onBinaryFragment(EMPTY, true);
+                    return;
+                }
+                message.flip();
+                ByteBuffer payload = messageCompressed ? deflate.inflate(message) : message;
+                if (completedOpcode == OPCODE_TEXT) {
+                    requireUtf8(payload, "Invalid UTF-8 in text message");
+                    listener.onText(payload);
+                } else if (maxStreamedSize > 0) {
+                    // 압축된 바이너리는 다 모아서 풀어야 하므로 max-message-size 안에서 한 조각으로 넘긴다
+                    listener.onBinaryFragment(payload, false);
+                    listener.onBinaryFragment(EMPTY, true);
+                } else {
+                    listener.onBinary(payload);
+                }
+                if (message.capacity() > initialMessageCapacity && messageBuffer != null) {
+                    // 큰 메시지용으로 키운 버퍼는 풀에 돌려주고 기본 크기로 돌아간다
+                    messageBuffer.release();
+                    message = allocateMessage(initialMessageCapacity);
+                }
+                message.clear();
+        }
+    }
+
+    /**
+     * bytes 의 남은 부분이 온전한 UTF-8 인지 확인한다. 위치는 움직이지 않는다.
+     */
+    private void requireUtf8(ByteBuffer bytes, String message) throws ProtocolException {
+        if (utf8 == null) {
+            utf8 = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+            scratchChars = CharBuffer.allocate(1024);
+        }
+        ByteBuffer in = bytes.duplicate();
+        utf8.reset();
+        while (true) {
+            scratchChars.clear();
+            CoderResult result = utf8.decode(in, scratchChars, true);
+            if (result.isError()) {
+                throw new ProtocolException(CLOSE_INVALID_DATA, message);
+            }
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        scratchChars.clear();
+        if (utf8.flush(scratchChars).isError()) {
+            throw new ProtocolException(CLOSE_INVALID_DATA, message);
+        }
+    }
+
+    private void completeClose() throws IOException {
+        if (control.remaining() == 1) {
+            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Close frame with a one-byte payload");
+        }
+        int code = control.remaining() >= 2 ? control.getShort() & 0xFFFF : CLOSE_NORMAL;
+        requireUtf8(control, "Invalid UTF-8 in close reason");
+        String reason = StandardCharsets.UTF_8.decode(control).toString();
+        listener.onClose(code, reason);
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * HTTP Upgrade 요청 헤더를 한 줄씩 받아 WebSocket 핸드셰이크 응답을 만든다.
+ * 블로킹/NIO 모드가 같은 규칙으로 핸드셰이크하도록 공유한다.
+ */
+public class WebSocketHandshake {
+    private static final String WEBSOCKET_MAGIC = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private boolean isWebSocketRequest = false;
+    private String webSocketKey;
+    private String room;
+    private String extensions;
+    private long since = -1;
+
+    public void acceptHeaderLine(String line) {
+        AsyncLog.debug("Header: %s", line);
+
+        if (line.startsWith("GET") && line.contains("/websocket")) {
+            isWebSocketRequest = true;
+            room = queryParameter(line, "room");
+            String sinceParameter = queryParameter(line, "since");
+            if (sinceParameter != null) {
+                try {
+                    since = Long.parseLong(sinceParameter);
+                } catch (NumberFormatException e) {
+                    since = -1;
+                }
+            }
+            return;
+        }
+
+        // 헤더 이름은 대소문자를 가리지 않고, 콜론 뒤 공백은 있어도 없어도 된다
+        int colon = line.indexOf(':');
+        if (colon <= 0) return;
+        String name = line.substring(0, colon).trim();
+        String value = line.substring(colon + 1).trim();
+        if (name.equalsIgnoreCase("Sec-WebSocket-Key")) {
+            webSocketKey = value.isEmpty() ? null : value;
+        } else if (name.equalsIgnoreCase("Sec-WebSocket-Extensions")) {
+            // 헤더가 여러 줄로 오면 콤마로 이어 붙인 것과 같다
+            extensions = extensions == null ? value : extensions + ", " + value;
+        }
+    }
+
+    /**
+     * buffer 의 position 부터 headerEnd(빈 줄의 \r\n\r\n 위치)까지를 헤더로 읽고,
+     * position 을 빈 줄 뒤(첫 프레임 시작)로 옮긴다.
+     */
+    public static WebSocketHandshake parse(ByteBuffer buffer, int headerEnd) {
+        byte[] header = new byte[headerEnd - buffer.position()];
+        buffer.get(header);
+        buffer.position(headerEnd + 4);
+
+        WebSocketHandshake handshake = new WebSocketHandshake();
+        for (String line : new String(header, StandardCharsets.ISO_8859_1).split("\r\n")) {
+            handshake.acceptHeaderLine(line);
+        }
+        return handshake;
+    }
+
+    /**
+     * 헤더 끝(\r\n\r\n)의 시작 인덱스. 아직 다 오지 않았으면 -1.
+     */
+    public static int indexOfHeaderEnd(ByteBuffer buffer) {
+        for (int i = buffer.position(); i + 3 < buffer.limit(); i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n'
+                    && buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isValid() {
+        return isWebSocketRequest && webSocketKey != null;
+    }
+
+    /**
+     * 요청 경로의 ?room= 값. 없으면 null.
+     */
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * 요청 경로의 ?since= 값(채팅 기록 커서). 없으면 -1.
+     */
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * 클라이언트가 제안한 Sec-WebSocket-Extensions. 없으면 null.
+     */
+    public String getExtensions() {
+        return extensions;
+    }
+
+    private static String queryParameter(String requestLine, String name) {
+        String[] parts = requestLine.split(" ");
+        int query = parts.length > 1 ? parts[1].indexOf('?') : -1;
+        if (query < 0) return null;
+
+        for (String pair : parts[1].substring(query + 1).split("&")) {
+            if (pair.startsWith(name + "=")) {
+                try {
+                    return URLDecoder.decode(pair.substring(name.length() + 1), "UTF-8");
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 핸드셰이크 요청이 잘못됐을 때(키가 없는 등) 보내고 연결을 닫는다.
+     */
+    public static String badRequestResponse() {
+        return "HTTP/1.1 400 Bad Request\r\n"
+            + "Connection: close\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+    }
+
+    public String response() {
+        return response(null);
+    }
+
+    /**
+     * acceptedExtensions 가 있으면 Sec-WebSocket-Extensions 응답 헤더로 넣는다.
+     */
+    public String response(String acceptedExtensions) {
+        return "HTTP/1.1 101 Switching Protocols\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Accept: " + generateWebSocketAcceptKey(webSocketKey) + "\r\n"
+            + (acceptedExtensions != null ? "Sec-WebSocket-Extensions: " + acceptedExtensions + "\r\n" : "")
+            + "\r\n";
+    }
+
+    public static String generateWebSocketAcceptKey(String webSocketKey) {
+        try {
+            String concat = webSocketKey + WEBSOCKET_MAGIC;
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] hash = md.digest(concat.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 algorithm not available", e);
+        }
+    }
+}
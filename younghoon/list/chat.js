@@ -40,7 +40,9 @@ class ChatClient {
 
     connectToServer() {
         try {
-            this.socket = new WebSocket('ws://localhost:8080/websocket');
+            const room = new URLSearchParams(window.location.search).get('room');
+            const query = room ? '?room=' + encodeURIComponent(room) : '';
+            this.socket = new WebSocket('ws://localhost:8080/websocket' + query);
 
             this.socket.onopen = (event) => {
                 console.log('서버에 연결되었습니다.');